@@ -0,0 +1,84 @@
+package com.matburt.mobileorg.orgdata;
+
+import android.content.Context;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The query plans of {@link OrgDatabase#HOT_QUERIES} must use an index, on a new
+ * database as well as on one upgraded from the oldest version that keeps its content.
+ */
+@RunWith(AndroidJUnit4.class)
+public class OrgDatabaseTest {
+
+	@After
+	public void tearDown() {
+		TestDatabase.stop();
+	}
+
+	@Test
+	public void hotQueriesUseIndexesOnNewDatabase() {
+		TestDatabase.start();
+		SQLiteDatabase db = OrgDatabase.getInstance().getWritableDatabase();
+		assertEquals(new ArrayList<String>(), OrgDatabase.getUnindexedQueries(db));
+	}
+
+	@Test
+	public void hotQueriesUseIndexesAfterUpgrade() {
+		Context context = TestDatabase.getEmptyContext();
+		createVersion5(context);
+
+		OrgDatabase.startDB(context);
+		SQLiteDatabase db = OrgDatabase.getInstance().getWritableDatabase();
+		assertEquals(new ArrayList<String>(), OrgDatabase.getUnindexedQueries(db));
+
+		// The content is kept and the derived tables are filled
+		assertEquals(2, DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM orgdata", null));
+		assertEquals(3, DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM orgdata_tree", null));
+		assertEquals(1, DatabaseUtils.longForQuery(db,
+				"SELECT COUNT(*) FROM orgdata_fts WHERE orgdata_fts MATCH 'meeting'", null));
+		assertEquals(1, DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM agenda WHERE node_id=2", null));
+		assertEquals(1, DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM agenda_repeats WHERE node_id=2", null));
+	}
+
+	/**
+	 * The schema of version 5, with a file node and a scheduled heading
+	 */
+	private static void createVersion5(Context context) {
+		SQLiteDatabase db = context.openOrCreateDatabase(OrgDatabase.DATABASE_NAME, Context.MODE_PRIVATE, null);
+		db.execSQL("CREATE TABLE files (_id integer primary key autoincrement, node_id integer,"
+				+ " filename text, name text, comment text)");
+		db.execSQL("CREATE TABLE todos(_id integer primary key autoincrement, todogroup integer,"
+				+ " name text, isdone integer default 0, UNIQUE(todogroup, name) ON CONFLICT IGNORE)");
+		db.execSQL("CREATE TABLE priorities(_id integer primary key autoincrement, name text)");
+		db.execSQL("CREATE TABLE tags(_id integer primary key autoincrement, taggroup integer, name text)");
+		db.execSQL("CREATE TABLE orgdata (_id integer primary key autoincrement,"
+				+ " parent_id integer default -1, file_id integer, level integer default 0,"
+				+ " priority text, todo text, tags text, tags_inherited text, payload text, name text,"
+				+ " position integer, scheduled integer default -1, scheduled_date_only integer default 0,"
+				+ " deadline integer default -1, deadline_date_only integer default 0)");
+		db.execSQL("CREATE TABLE timestamps (file_id integer, timestamp , type integer,"
+				+ " node_id integer, all_day integer)");
+
+		String payload = "SCHEDULED: <2016-07-01 Fri +1w>\n";
+		long scheduled = new OrgNodeTimeDate(OrgNodeTimeDate.TYPE.Scheduled, payload).getEpochTime();
+		db.execSQL("INSERT INTO files VALUES (1, 1, 'notes.org', 'notes.org', '')");
+		db.execSQL("INSERT INTO orgdata (_id, parent_id, file_id, level, name, position, payload)"
+				+ " VALUES (1, -1, 1, 0, 'notes.org', 0, '')");
+		db.execSQL("INSERT INTO orgdata (_id, parent_id, file_id, level, name, position, payload, todo)"
+				+ " VALUES (2, 1, 1, 1, 'Weekly meeting', 0, ?, 'TODO')", new Object[]{payload});
+		db.execSQL("INSERT INTO timestamps VALUES (1, ?, ?, 2, 1)",
+				new Object[]{scheduled, OrgNodeTimeDate.TYPE.Scheduled.ordinal()});
+		db.setVersion(5);
+		db.close();
+	}
+}
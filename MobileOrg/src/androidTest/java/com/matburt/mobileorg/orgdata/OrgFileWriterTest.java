@@ -0,0 +1,116 @@
+package com.matburt.mobileorg.orgdata;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.HashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Parsing a file again only writes the nodes that changed, the others keep their id.
+ */
+@RunWith(AndroidJUnit4.class)
+public class OrgFileWriterTest {
+	private static final String FILENAME = "writer.org";
+	private static final String CONTENT = "* TODO First\n"
+			+ "  SCHEDULED: <2016-07-01 Fri>\n"
+			+ "** Child\n"
+			+ "child text\n"
+			+ "* Second :work:\n"
+			+ "* Third\n";
+	private Context context;
+
+	@Before
+	public void setUp() {
+		context = TestDatabase.start();
+	}
+
+	@After
+	public void tearDown() {
+		TestDatabase.stop();
+	}
+
+	private OrgFileWriter parse(String content) {
+		OrgFile orgFile = new OrgFile(FILENAME, FILENAME);
+		OrgFileWriter writer = new OrgFileWriter(context);
+		new OrgFileParser(context).parse(orgFile, new BufferedReader(new StringReader(content)), writer);
+		assertTrue(writer.isComplete());
+		return writer;
+	}
+
+	/**
+	 * @return the ids of the headings of the file, by name
+	 */
+	private static HashMap<String, Long> getIds() {
+		HashMap<String, Long> result = new HashMap<>();
+		Cursor cursor = OrgDatabase.getInstance().getReadableDatabase().rawQuery(
+				"SELECT name, _id FROM orgdata WHERE level>0 AND file_id="
+						+ "(SELECT _id FROM files WHERE filename=?)", new String[]{FILENAME});
+		while (cursor.moveToNext())
+			result.put(cursor.getString(0), cursor.getLong(1));
+		cursor.close();
+		return result;
+	}
+
+	private static String getTodo(long id) {
+		Cursor cursor = OrgDatabase.getInstance().getReadableDatabase().rawQuery(
+				"SELECT todo FROM orgdata WHERE _id=?", new String[]{Long.toString(id)});
+		assertTrue(cursor.moveToFirst());
+		String result = cursor.getString(0);
+		cursor.close();
+		return result;
+	}
+
+	@Test
+	public void sameFileWritesNothing() {
+		parse(CONTENT);
+		HashMap<String, Long> ids = getIds();
+		assertEquals(4, ids.size());
+
+		OrgFileWriter writer = parse(CONTENT);
+		assertEquals(0, writer.getRowCount());
+		assertEquals(ids, getIds());
+	}
+
+	@Test
+	public void editedHeadingsKeepTheirIds() {
+		parse(CONTENT);
+		HashMap<String, Long> ids = getIds();
+
+		OrgFileWriter writer = parse(CONTENT
+				.replace("* TODO First", "* DONE First")
+				.replace("child text", "edited text"));
+		// First and Child are updated, their timestamps and the other nodes are untouched
+		assertEquals(2, writer.getRowCount());
+		assertEquals(ids, getIds());
+		assertEquals("DONE", getTodo(ids.get("First")));
+	}
+
+	@Test
+	public void onlyAddedAndRemovedHeadingsChangeIds() {
+		parse(CONTENT);
+		HashMap<String, Long> ids = getIds();
+
+		OrgFileWriter writer = parse(CONTENT.replace("* Third\n", "* Fourth\n"));
+		// Fourth is inserted and Third deleted
+		assertEquals(2, writer.getRowCount());
+
+		HashMap<String, Long> newIds = getIds();
+		assertEquals(4, newIds.size());
+		assertFalse(newIds.containsKey("Third"));
+		assertFalse(ids.containsValue(newIds.get("Fourth")));
+		for (String name : new String[]{"First", "Child", "Second"})
+			assertEquals(name, ids.get(name), newIds.get(name));
+	}
+}
@@ -0,0 +1,92 @@
+package com.matburt.mobileorg.orgdata;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Ranking of the matches of a small file.
+ */
+@RunWith(AndroidJUnit4.class)
+public class OrgFullTextSearchDatabaseTest {
+	private static final String FILENAME = "search.org";
+	private static final String CONTENT = "* Lunch\n"
+			+ "We talked about the meeting of the team, then about the holidays and the weather.\n"
+			+ "* Plan :meeting:\n"
+			+ "* Weekly meeting\n"
+			+ "Agenda\n"
+			+ "* Groceries\n"
+			+ "* Holidays\n"
+			+ "* Weather\n"
+			+ "* Books\n";
+	private SQLiteDatabase db;
+
+	@Before
+	public void setUp() {
+		Context context = TestDatabase.start();
+		OrgFile orgFile = new OrgFile(FILENAME, FILENAME);
+		new OrgFileParser(context).parse(orgFile, new BufferedReader(new StringReader(CONTENT)),
+				new OrgFileWriter(context));
+		db = OrgDatabase.getInstance().getReadableDatabase();
+	}
+
+	@After
+	public void tearDown() {
+		TestDatabase.stop();
+	}
+
+	private ArrayList<String> getNames(long[] ids) {
+		ArrayList<String> result = new ArrayList<>();
+		for (long id : ids) {
+			Cursor cursor = db.rawQuery("SELECT name FROM orgdata WHERE _id=?",
+					new String[]{Long.toString(id)});
+			cursor.moveToFirst();
+			result.add(cursor.getString(0));
+			cursor.close();
+		}
+		return result;
+	}
+
+	@Test
+	public void headingThenTagsThenPayload() {
+		long[] ids = OrgFullTextSearch.rank(db, "meeting", OrgFullTextSearch.MAX_RANKED_RESULTS, null);
+		assertEquals(Arrays.asList("Weekly meeting", "Plan", "Lunch"), getNames(ids));
+
+		assertEquals(2, OrgFullTextSearch.rank(db, "meeting", 2, null).length);
+		assertEquals(Arrays.asList("Weekly meeting"), getNames(OrgFullTextSearch.rank(db, "week", 10, null)));
+	}
+
+	@Test
+	public void queryKeepsTheRankOrder() {
+		long[] ids = OrgFullTextSearch.rank(db, "meeting", OrgFullTextSearch.MAX_RANKED_RESULTS, null);
+		Cursor cursor = OrgFullTextSearch.query(db, "meeting", ids, null);
+		int index = 0;
+		while (cursor.moveToNext())
+			assertEquals(ids[index++], cursor.getLong(cursor.getColumnIndexOrThrow(OrgContract.OrgData.ID)));
+		cursor.close();
+		assertEquals(ids.length, index);
+	}
+
+	@Test
+	public void operatorsAndQuotesAreWords() {
+		// Unescaped, the quote would be a syntax error and the operators would match
+		// the three nodes, or the ones without the second word
+		assertEquals(3, OrgFullTextSearch.rank(db, "\"meeting", 10, null).length);
+		assertEquals(0, OrgFullTextSearch.rank(db, "meeting NOT agenda", 10, null).length);
+		assertEquals(0, OrgFullTextSearch.rank(db, "meeting OR agenda", 10, null).length);
+		assertEquals(0, OrgFullTextSearch.rank(db, "\"", 10, null).length);
+	}
+}
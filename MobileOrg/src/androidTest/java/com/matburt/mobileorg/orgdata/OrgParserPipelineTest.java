@@ -0,0 +1,139 @@
+package com.matburt.mobileorg.orgdata;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+public class OrgParserPipelineTest {
+	private final ArrayList<File> files = new ArrayList<>();
+	private Context context;
+
+	@Before
+	public void setUp() {
+		context = TestDatabase.start();
+	}
+
+	@After
+	public void tearDown() {
+		for (File file : files)
+			file.delete();
+		TestDatabase.stop();
+	}
+
+	/**
+	 * Queue a file of the given number of headings
+	 */
+	private void add(OrgParserPipeline pipeline, String name, int headings) throws IOException {
+		File file = new File(context.getCacheDir(), name);
+		FileWriter writer = new FileWriter(file);
+		for (int i = 0; i < headings; i++)
+			writer.write("* Heading " + i + "\ntext of " + name + "\n");
+		writer.close();
+		files.add(file);
+		pipeline.add(new OrgFile(name, name), file);
+	}
+
+	private static int countParserThreads() {
+		int result = 0;
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if (thread.isAlive() && thread.getName().startsWith(OrgParserPipeline.THREAD_NAME))
+				result++;
+		}
+		return result;
+	}
+
+	private static int countHeadings(String filename) {
+		Cursor cursor = OrgDatabase.getInstance().getReadableDatabase().rawQuery(
+				"SELECT count(*) FROM orgdata WHERE level>0 AND file_id="
+						+ "(SELECT _id FROM files WHERE filename=?)", new String[]{filename});
+		cursor.moveToFirst();
+		int result = cursor.getInt(0);
+		cursor.close();
+		return result;
+	}
+
+	@Test
+	public void filesAreWrittenInOrderWithProgress() throws Exception {
+		OrgParserPipeline pipeline = new OrgParserPipeline(context);
+		final ArrayList<String> expected = new ArrayList<>();
+		long total = 0;
+		// Files of different sizes, so that the later ones can be parsed first
+		for (int i = 0; i < 6; i++) {
+			String name = "file" + i + ".org";
+			add(pipeline, name, (6 - i) * 1000);
+			expected.add(name);
+			total += files.get(i).length();
+		}
+
+		final ArrayList<String> written = new ArrayList<>();
+		final ArrayList<Long> progress = new ArrayList<>();
+		pipeline.setListener(new OrgParserPipeline.Listener() {
+			@Override
+			public void onProgress(OrgFile orgFile, long bytes, long totalBytes) {
+				progress.add(bytes);
+				progress.add(totalBytes);
+			}
+
+			@Override
+			public void onFileWritten(OrgFile orgFile) {
+				written.add(orgFile.filename);
+			}
+		});
+		pipeline.run();
+
+		assertEquals(expected, written);
+		long last = 0;
+		for (int i = 0; i < progress.size(); i += 2) {
+			assertTrue(progress.get(i) >= last);
+			assertEquals(total, (long) progress.get(i + 1));
+			last = progress.get(i);
+		}
+		assertEquals(total, last);
+		for (int i = 0; i < 6; i++)
+			assertEquals((6 - i) * 1000, countHeadings(expected.get(i)));
+	}
+
+	@Test
+	public void parsersStopWhenTheWriterFails() throws Exception {
+		OrgParserPipeline pipeline = new OrgParserPipeline(context);
+		// Large enough for the parsers to fill the queues of their files
+		for (int i = 0; i < 3; i++)
+			add(pipeline, "large" + i + ".org", 20000);
+		pipeline.setListener(new OrgParserPipeline.Listener() {
+			@Override
+			public void onProgress(OrgFile orgFile, long bytes, long totalBytes) {
+			}
+
+			@Override
+			public void onFileWritten(OrgFile orgFile) {
+				throw new IllegalStateException("Writer failure");
+			}
+		});
+
+		try {
+			pipeline.run();
+			fail();
+		} catch (IllegalStateException e) {
+			assertEquals("Writer failure", e.getMessage());
+		}
+
+		for (int i = 0; i < 100 && countParserThreads() > 0; i++)
+			Thread.sleep(100);
+		assertEquals(0, countParserThreads());
+	}
+}
@@ -0,0 +1,40 @@
+package com.matburt.mobileorg.orgdata;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.test.RenamingDelegatingContext;
+
+/**
+ * Start {@link OrgDatabase} on a database of its own, so that the tests never touch the
+ * synchronized files of the installed app.
+ */
+public class TestDatabase {
+	/**
+	 * @return a context whose database is removed, {@link OrgDatabase} is not started
+	 */
+	public static Context getEmptyContext() {
+		Context context = new RenamingDelegatingContext(InstrumentationRegistry.getTargetContext(), "test_");
+		context.deleteDatabase(OrgDatabase.DATABASE_NAME);
+		return context;
+	}
+
+	/**
+	 * Start {@link OrgDatabase} on an empty database
+	 */
+	public static Context start() {
+		Context context = getEmptyContext();
+		OrgDatabase.startDB(context);
+		return context;
+	}
+
+	/**
+	 * Close the test database and start the one of the app again, which
+	 * {@link OrgProvider} uses in the same process
+	 */
+	public static void stop() {
+		OrgDatabase db = OrgDatabase.getInstance();
+		if (db != null)
+			db.close();
+		OrgDatabase.startDB(InstrumentationRegistry.getTargetContext().getApplicationContext());
+	}
+}
@@ -1,9 +1,7 @@
 package com.matburt.mobileorg;
 
-import android.content.ContentResolver;
 import android.content.Context;
 import android.content.res.TypedArray;
-import android.database.Cursor;
 import android.graphics.Canvas;
 import android.graphics.drawable.Drawable;
 import android.os.Bundle;
@@ -18,16 +16,8 @@ import android.widget.LinearLayout;
 import android.widget.RelativeLayout;
 import android.widget.TextView;
 
-import com.matburt.mobileorg.orgdata.OrgContract.Timestamps;
-import com.matburt.mobileorg.orgdata.OrgNode;
+import com.matburt.mobileorg.orgdata.OrgContract.Agenda;
 import com.matburt.mobileorg.orgdata.OrgNodeTimeDate;
-import com.matburt.mobileorg.util.OrgNodeNotFoundException;
-
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashSet;
-import java.util.TreeMap;
 
 
 /**
@@ -36,35 +26,28 @@ import java.util.TreeMap;
  * in two-pane mode (on tablets) or a {@link OrgNodeDetailActivity}
  * on handsets.
  */
-public class AgendaFragment extends Fragment {
-
-    class AgendaItem {
-        public OrgNodeTimeDate.TYPE type;
-        public OrgNode node;
-        public String text;
-        long time;
-        public AgendaItem(OrgNode node, OrgNodeTimeDate.TYPE type, long time){
-            this.node = node;
-            this.type = type;
-            this.time = time;
-
-            OrgNodeTimeDate date = new OrgNodeTimeDate(time);
-
-            if(time < 0 || (node.getRangeInSec() > 86400 && date.isBetween(node.getScheduled(), node.getDeadline()))){
-                text = getActivity().getResources().getString(R.string.all_day);
-            } else {
-                text = date.toString(false);
-            }
+public class AgendaFragment extends Fragment implements AgendaLoader.Listener {
 
-        }
-    }
+    // Items left before an end of the list when the next days are read
+    private static final int PAGE_THRESHOLD = 10;
 
     RecyclerViewAdapter adapter;
     RecyclerView recyclerView;
-    ArrayList<AgendaItem> nodesList;
-    ArrayList<OrgNodeTimeDate>  daysList;
-    ArrayList<PositionHelper> items;
-    private ContentResolver resolver;
+    LinearLayoutManager layoutManager;
+    private AgendaLoader loader;
+    // What the list shows, null until the agenda is read
+    private AgendaLoader.Snapshot snapshot;
+
+    private final Runnable readVisibleDays = new Runnable() {
+        @Override
+        public void run() {
+            if (snapshot == null) return;
+            if (layoutManager.findLastVisibleItemPosition() >= snapshot.items.size() - PAGE_THRESHOLD)
+                loader.readLaterDays();
+            if (layoutManager.findFirstVisibleItemPosition() <= PAGE_THRESHOLD)
+                loader.readEarlierDays();
+        }
+    };
 
     /**
      * Mandatory empty constructor for the fragment manager to instantiate the
@@ -81,125 +64,11 @@ public class AgendaFragment extends Fragment {
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        this.resolver = getActivity().getContentResolver();
-
-
-        Cursor cursor = resolver.query(Timestamps.CONTENT_URI,
-                new String[]{Timestamps.NODE_ID, Timestamps.TIMESTAMP, Timestamps.TYPE},
-                null, null, Timestamps.TIMESTAMP);
-
-        nodesList = new ArrayList<>();
-        items = new ArrayList<>();
-        daysList = new ArrayList<>();
-
-        // Nodes with only a deadline or a scheduled but not both
-        HashSet<Long> orphanTimestampsNodes = new HashSet<>();
-
-        // Nodes with a deadline AND a scheduled date
-        HashSet<Long> rangedTimestampsNodes = new HashSet<>();
-
-        if (cursor != null) {
-
-            while (cursor.moveToNext()) {
-                long nodeId = cursor.getLong(cursor.getColumnIndexOrThrow(Timestamps.NODE_ID));
-
-                if (orphanTimestampsNodes.contains(nodeId)) {
-                    orphanTimestampsNodes.remove(nodeId);
-                    rangedTimestampsNodes.add(nodeId);
-                } else {
-                    orphanTimestampsNodes.add(nodeId);
-                }
-            }
-            cursor.close();
-        }
-
-
-        TreeMap<Long, ArrayList<AgendaItem>> nodeIdsForEachDay = new TreeMap<>();
-
-        for (Long nodeId : orphanTimestampsNodes) {
-            try {
-                OrgNode node = new OrgNode(nodeId, resolver);
-                Long day, time;
-                OrgNodeTimeDate.TYPE type;
-                if (node.getScheduled().getEpochTime() < 0) {
-                    type = OrgNodeTimeDate.TYPE.Deadline;
-                    time = node.getDeadline().getEpochTime();
-                } else {
-                    time = node.getScheduled().getEpochTime();
-                    type = OrgNodeTimeDate.TYPE.Scheduled;
-                }
-
-                day = time / (24*3600);
-
-                if (!nodeIdsForEachDay.containsKey(day))
-                    nodeIdsForEachDay.put(day, new ArrayList<AgendaItem>());
-                nodeIdsForEachDay.get(day).add(new AgendaItem(node, type, time));
-            } catch (OrgNodeNotFoundException e) {
-                // If we are here, it means an OrgNode has been deleted but not the corresponding
-                // timestamps from the Timestamp database. So we do the cleanup.
-                OrgNodeTimeDate.deleteTimestamp(getActivity(), nodeId, null);
-                e.printStackTrace();
-            }
-        }
-
-        for (Long nodeId : rangedTimestampsNodes) {
-            try {
-                OrgNode node = new OrgNode(nodeId, resolver);
-                boolean scheduledBeforeDeadline = node.getScheduled().getEpochTime() < node.getDeadline().getEpochTime();
-
-                long firstTime = scheduledBeforeDeadline ? node.getScheduled().getEpochTime() : node.getDeadline().getEpochTime();
-                long lastTime  = scheduledBeforeDeadline ? node.getDeadline().getEpochTime()  : node.getScheduled().getEpochTime();
-                long firstDay = firstTime / (24 * 3600);
-                long lastDay = lastTime / (24 * 3600);
-                OrgNodeTimeDate.TYPE type;
-                long time;
-                for (long day = firstDay; day <= lastDay; day++) {
-                    if(firstDay == lastDay){
-                        if (!nodeIdsForEachDay.containsKey(day))
-                            nodeIdsForEachDay.put(day, new ArrayList<AgendaItem>());
-                        nodeIdsForEachDay.get(day).add(new AgendaItem(node, scheduledBeforeDeadline ? OrgNodeTimeDate.TYPE.Scheduled : OrgNodeTimeDate.TYPE.Deadline, firstTime));
-                        nodeIdsForEachDay.get(day).add(new AgendaItem(node, scheduledBeforeDeadline ? OrgNodeTimeDate.TYPE.Deadline : OrgNodeTimeDate.TYPE.Scheduled, lastTime));
-                    } else {
-                        if (day == firstDay) {
-                            type = scheduledBeforeDeadline ? OrgNodeTimeDate.TYPE.Scheduled : OrgNodeTimeDate.TYPE.Deadline;
-                            time = firstTime;
-                        } else if (day == lastDay) {
-                            type = scheduledBeforeDeadline ? OrgNodeTimeDate.TYPE.Deadline : OrgNodeTimeDate.TYPE.Scheduled;
-                            time = lastTime;
-                        } else {
-                            type = OrgNodeTimeDate.TYPE.Timestamp;
-                            time = -1;
-                        }
-                        if (!nodeIdsForEachDay.containsKey(day))
-                            nodeIdsForEachDay.put(day, new ArrayList<AgendaItem>());
-                        nodeIdsForEachDay.get(day).add(new AgendaItem(node, type, time));
-                    }
-                }
-            } catch (OrgNodeNotFoundException e) {
-                e.printStackTrace();
-            }
-        }
-
-        int dayCursor = 0, nodeCursor = 0;
-        for (long day : nodeIdsForEachDay.keySet()) {
-            daysList.add(new OrgNodeTimeDate(day * 3600 * 24));
-            items.add(new PositionHelper(dayCursor++, Type.kDate));
-            Collections.sort(nodeIdsForEachDay.get(day), new TimeComparator());
-            for (AgendaItem item: nodeIdsForEachDay.get(day)) {
-                nodesList.add(item);
-                items.add(new PositionHelper(nodeCursor++, Type.kNode));
-            }
-        }
 
         adapter = new RecyclerViewAdapter();
+        loader = AgendaLoader.getInstance(getContext());
     }
 
-    class TimeComparator implements Comparator<AgendaItem> {
-        @Override
-        public int compare(AgendaItem a, AgendaItem b) {
-            return a.time < b.time ? -1 : a.time == b.time ? 0 : 1;
-        }
-    }
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container,
                              Bundle savedInstanceState) {
@@ -209,33 +78,63 @@ public class AgendaFragment extends Fragment {
         assert recyclerView != null;
         recyclerView.addItemDecoration(new DividerItemDecoration(getContext()));
 
-        recyclerView.setLayoutManager(new LinearLayoutManager(getActivity()));
+        layoutManager = new LinearLayoutManager(getActivity());
+        recyclerView.setLayoutManager(layoutManager);
         recyclerView.setAdapter(adapter);
 
+        // The agenda read before, the list keeps its position on rotation
+        loader.setListener(this);
+        snapshot = loader.getSnapshot();
+        adapter.notifyDataSetChanged();
+        if (snapshot != null && savedInstanceState == null) scrollToToday();
+
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                // The adapter can't change during a scroll callback
+                recyclerView.post(readVisibleDays);
+            }
+        });
+
         return rootView;
     }
 
     @Override
     public void onResume(){
         super.onResume();
+        // Read again if a sync or an edit happened meanwhile
+        loader.load();
     }
 
-    enum Type {
-        kNode,
-        kDate
+    @Override
+    public void onDestroyView() {
+        loader.setListener(null);
+        recyclerView.removeCallbacks(readVisibleDays);
+        super.onDestroyView();
     }
 
-    class PositionHelper {
-        int position;
-        Type type;
+    @Override
+    public void onLoaded(AgendaLoader.Snapshot snapshot) {
+        this.snapshot = snapshot;
+        adapter.notifyDataSetChanged();
+        scrollToToday();
+    }
 
-        PositionHelper(int position, Type type) {
-            this.position = position;
-            this.type = type;
-        }
+    @Override
+    public void onItemsInserted(int position, int count) {
+        adapter.notifyItemRangeInserted(position, count);
     }
 
+    private void scrollToToday() {
+        int count = snapshot.items.size();
+        if (snapshot.todayPosition < count) layoutManager.scrollToPositionWithOffset(snapshot.todayPosition, 0);
+        else if (count > 0) layoutManager.scrollToPosition(count - 1);
+    }
 
+    enum Type {
+        kNode,
+        kDate
+    }
 
     public class RecyclerViewAdapter
             extends RecyclerView.Adapter<ItemViewHolder> {
@@ -267,19 +166,24 @@ public class AgendaFragment extends Fragment {
         }
 
         private void onBindOrgItemHolder(final OrgItemViewHolder holder, int position){
-            final AgendaItem item = nodesList.get(items.get(position).position);
-            final OrgNode node = item.node;
-
-            // The day associated with this item
-            int dayPosition = position;
-            while(items.get(dayPosition).type != Type.kDate && dayPosition > 0) dayPosition--;
+            final AgendaModel items = snapshot.items;
+            final long nodeId = items.getNodeId(position);
+            AgendaLoader.Row row = snapshot.getRow(nodeId);
 
             TextView title = (TextView) holder.itemView.findViewById(R.id.title);
             TextView details = (TextView) holder.itemView.findViewById(R.id.details);
 
-            title.setText(node.name);
+            if (row == null) {
+                // Deleted while its page was read, the next snapshot drops it
+                title.setText("");
+                details.setVisibility(View.GONE);
+                holder.itemView.setOnClickListener(null);
+                return;
+            }
 
-            String textDetails = node.getPayload();
+            title.setText(row.name);
+
+            String textDetails = row.details;
 
             if (textDetails.equals("")) {
                 RelativeLayout.LayoutParams layoutParams =
@@ -289,18 +193,27 @@ public class AgendaFragment extends Fragment {
 
                 details.setVisibility(View.GONE);
             } else {
+                details.setVisibility(View.VISIBLE);
                 details.setText(textDetails);
             }
 
             TextView content = (TextView) holder.itemView.findViewById(R.id.date);
 
-            // If event spans on more than one day (=86499 sec), tag the enclosed days as 'all days'
-            content.setText(item.text);
+            long day = items.getDay(position);
+            long time = items.getTime(position);
+            if (time >= 0 && Agenda.getDay(time) != day) {
+                // The warning of a deadline to come
+                content.setText(new OrgNodeTimeDate(time).toString(true));
+            } else if (items.isAllDay(position)) {
+                content.setText(R.string.all_day);
+            } else {
+                content.setText(new OrgNodeTimeDate(time).toString(false));
+            }
 
             holder.itemView.setOnClickListener(new View.OnClickListener() {
                 @Override
                 public void onClick(View v) {
-                    EditNodeFragment.createEditNodeFragment((int)node.id, -1, -1, getContext());
+                    EditNodeFragment.createEditNodeFragment((int)nodeId, -1, -1, getContext());
                 }
             });
 
@@ -313,10 +226,10 @@ public class AgendaFragment extends Fragment {
         }
 
         private void onBindDateHolder(final DateViewHolder holder, int position){
-            final OrgNodeTimeDate date = daysList.get(items.get(position).position);
+            long day = snapshot.items.getDay(position);
 
             TextView title = (TextView) holder.itemView.findViewById(R.id.outline_item_title);
-            title.setText(date.toString(true));
+            title.setText(new OrgNodeTimeDate(day * Agenda.SECONDS_PER_DAY).toString(true));
 
             holder.itemView.setOnClickListener(new View.OnClickListener() {
                 @Override
@@ -335,12 +248,12 @@ public class AgendaFragment extends Fragment {
 
         @Override
         public int getItemCount() {
-            return items.size();
+            return snapshot == null ? 0 : snapshot.items.size();
         }
 
         @Override
         public int getItemViewType(int position){
-           return items.get(position).type.ordinal();
+           return (snapshot.items.isHeader(position) ? Type.kDate : Type.kNode).ordinal();
         }
 
         /**
@@ -0,0 +1,494 @@
+package com.matburt.mobileorg;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.matburt.mobileorg.orgdata.OrgChangeNotifier;
+import com.matburt.mobileorg.orgdata.OrgContract.Agenda;
+import com.matburt.mobileorg.orgdata.OrgContract.AgendaRepeats;
+import com.matburt.mobileorg.orgdata.OrgContract.OrgData;
+import com.matburt.mobileorg.orgdata.OrgDatabase;
+import com.matburt.mobileorg.orgdata.OrgNodePayload;
+import com.matburt.mobileorg.orgdata.OrgNodeTimeDate;
+import com.matburt.mobileorg.orgdata.OrgProviderUtils;
+import com.matburt.mobileorg.orgdata.OrgRepeater;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Reads the agenda on a background thread and keeps what it read in memory, tagged with
+ * the generation of the database (see {@link OrgChangeNotifier#getGeneration()}). An agenda
+ * that is created again, after a rotation or when coming back to it, shows the same
+ * {@link Snapshot} unless a sync or an edit was committed since, or the day changed.
+ *
+ * Days are read by pages of {@link #PAGE_DAYS}: the ones around today first, the others as
+ * the list scrolls to them. The snapshot is only changed on the UI thread.
+ *
+ * Repeated timestamps are read once per snapshot, and their {@link OrgRepeater} is kept
+ * from one snapshot to the next unless the timestamp was edited. Each page only expands
+ * the repetitions of its own days.
+ *
+ * The items are kept in an {@link AgendaModel}. The nodes of a page are read with it, in one
+ * query, so that the list binds its rows without reading the database on the UI thread. Only
+ * their name and a line of details are kept, at most {@link #MAX_DETAILS} characters.
+ */
+class AgendaLoader {
+    // Days read at once, starting from the next day with entries
+    static final int PAGE_DAYS = 14;
+    // The details of an entry are one line of the list
+    private static final int MAX_DETAILS = 80;
+
+    private static AgendaLoader instance = null;
+
+    private final ContentResolver resolver;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    // Reads run one after the other
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private Snapshot snapshot = null;
+    private Listener listener = null;
+    // A new snapshot is being read
+    private boolean loading = false;
+    // A page is being read, the pages asked for meanwhile are dropped
+    private boolean readingPage = false;
+    // The repeaters of the last snapshot by node id and type, only used by the reading thread
+    private HashMap<String, OrgRepeater> repeaters = new HashMap<>();
+
+    interface Listener {
+        /**
+         * A new snapshot was read, the list shows its items from now on
+         */
+        void onLoaded(Snapshot snapshot);
+
+        /**
+         * The items of a page were inserted in the list of the current snapshot
+         */
+        void onItemsInserted(int position, int count);
+    }
+
+    /**
+     * The days read so far
+     */
+    static class Snapshot {
+        final AgendaModel items;
+        final long generation;
+        final long today;
+        // The timestamps with other entries than the one on their day, read once
+        final ArrayList<Repeat> repeats;
+        // The nodes of the items, by id
+        private final HashMap<Long, Row> rows = new HashMap<>();
+        // Days read so far, firstDay > lastDay until some are read
+        long firstDay, lastDay;
+        boolean hasEarlierDays = true, hasLaterDays = true;
+        // Position of the first day from today on
+        int todayPosition = 0;
+        // A page was read at another generation, the items may not agree with each other
+        boolean mixed = false;
+
+        Snapshot(long generation, long today, ArrayList<Repeat> repeats) {
+            this.generation = generation;
+            this.today = today;
+            this.repeats = repeats;
+            this.items = new AgendaModel(today);
+            this.firstDay = today;
+            this.lastDay = today - 1;
+        }
+
+        void addLaterPage(Page page, long generation) {
+            mixed |= generation != this.generation;
+            if (page == null) {
+                hasLaterDays = false;
+                return;
+            }
+            lastDay = page.lastDay;
+            items.append(page.items);
+            rows.putAll(page.rows);
+        }
+
+        void addEarlierPage(Page page, long generation) {
+            mixed |= generation != this.generation;
+            if (page == null) {
+                hasEarlierDays = false;
+                return;
+            }
+            firstDay = page.firstDay;
+            items.prepend(page.items);
+            rows.putAll(page.rows);
+            todayPosition += page.items.size();
+        }
+
+        /**
+         * @return the node of an entry, null if it was deleted when its page was read
+         */
+        Row getRow(long nodeId) {
+            return rows.get(nodeId);
+        }
+    }
+
+    /**
+     * What the list shows of the node of an entry
+     */
+    static class Row {
+        final String name;
+        // The first line of the cleaned payload, empty if there is none
+        final String details;
+
+        Row(String name, String details) {
+            this.name = name;
+            this.details = details;
+        }
+    }
+
+    /**
+     * A repeated timestamp of a node
+     */
+    static class Repeat {
+        final long nodeId;
+        final boolean allDay;
+        final OrgRepeater repeater;
+
+        Repeat(long nodeId, boolean allDay, OrgRepeater repeater) {
+            this.nodeId = nodeId;
+            this.allDay = allDay;
+            this.repeater = repeater;
+        }
+    }
+
+    /**
+     * An entry of the agenda before it is sorted
+     */
+    private static class Entry {
+        final long day, time;
+        final OrgNodeTimeDate.TYPE type;
+        final boolean allDay;
+        final long nodeId;
+
+        Entry(long day, long time, OrgNodeTimeDate.TYPE type, boolean allDay, long nodeId) {
+            this.day = day;
+            this.time = time;
+            this.type = type;
+            this.allDay = allDay;
+            this.nodeId = nodeId;
+        }
+    }
+
+    private static final Comparator<Entry> byDayAndTime = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry a, Entry b) {
+            if (a.day != b.day)
+                return a.day < b.day ? -1 : 1;
+            return a.time < b.time ? -1 : (a.time == b.time ? 0 : 1);
+        }
+    };
+
+    /**
+     * The items of consecutive days
+     */
+    private static class Page {
+        final long firstDay, lastDay;
+        final AgendaModel items;
+        final HashMap<Long, Row> rows = new HashMap<>();
+
+        Page(long firstDay, long lastDay, long baseDay) {
+            this.firstDay = firstDay;
+            this.lastDay = lastDay;
+            this.items = new AgendaModel(baseDay);
+        }
+    }
+
+    static AgendaLoader getInstance(Context context) {
+        if (instance == null)
+            instance = new AgendaLoader(context.getApplicationContext());
+        return instance;
+    }
+
+    private AgendaLoader(Context context) {
+        this.resolver = context.getContentResolver();
+    }
+
+    void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @return the snapshot in memory, null until the first one is read. It may be out of
+     * date, {@link #load()} reads a new one then.
+     */
+    Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Read a new snapshot in the background, unless the one in memory is up to date
+     */
+    void load() {
+        if (loading || (snapshot != null && isUpToDate(snapshot)))
+            return;
+
+        loading = true;
+        final long today = getToday();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                long generation = getGeneration();
+                final Snapshot result = new Snapshot(generation, today, readRepeats());
+                result.addLaterPage(readLaterPage(result, result.lastDay), generation);
+                result.addEarlierPage(readEarlierPage(result, result.firstDay), generation);
+
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        loading = false;
+                        snapshot = result;
+                        if (listener != null)
+                            listener.onLoaded(result);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Read the days following the ones of the snapshot in the background
+     */
+    void readLaterDays() {
+        final Snapshot target = snapshot;
+        if (target == null || !target.hasLaterDays || loading || readingPage)
+            return;
+
+        readingPage = true;
+        final long lastDay = target.lastDay;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final long generation = getGeneration();
+                final Page page = readLaterPage(target, lastDay);
+
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        readingPage = false;
+                        if (target != snapshot)
+                            return;
+                        int position = target.items.size();
+                        target.addLaterPage(page, generation);
+                        if (page != null && listener != null)
+                            listener.onItemsInserted(position, page.items.size());
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Read the days preceding the ones of the snapshot in the background
+     */
+    void readEarlierDays() {
+        final Snapshot target = snapshot;
+        if (target == null || !target.hasEarlierDays || loading || readingPage)
+            return;
+
+        readingPage = true;
+        final long firstDay = target.firstDay;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final long generation = getGeneration();
+                final Page page = readEarlierPage(target, firstDay);
+
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        readingPage = false;
+                        if (target != snapshot)
+                            return;
+                        target.addEarlierPage(page, generation);
+                        if (page != null && listener != null)
+                            listener.onItemsInserted(0, page.items.size());
+                    }
+                });
+            }
+        });
+    }
+
+    private boolean isUpToDate(Snapshot snapshot) {
+        return !snapshot.mixed && snapshot.generation == getGeneration()
+                && snapshot.today == getToday();
+    }
+
+    private static long getGeneration() {
+        return OrgDatabase.getInstance().getChangeNotifier().getGeneration();
+    }
+
+    private static long getToday() {
+        return OrgRepeater.getLocalDay(System.currentTimeMillis(), TimeZone.getDefault());
+    }
+
+    /**
+     * @return the timestamps with other entries than the one on their day, and their node
+     */
+    private ArrayList<Repeat> readRepeats() {
+        ArrayList<Repeat> result = new ArrayList<>();
+        HashMap<String, OrgRepeater> readRepeaters = new HashMap<>();
+        Cursor cursor = OrgProviderUtils.getAgendaRepeats(resolver);
+        if (cursor == null)
+            return result;
+
+        int typeColumn = cursor.getColumnIndexOrThrow(AgendaRepeats.TYPE);
+        int timeColumn = cursor.getColumnIndexOrThrow(AgendaRepeats.TIME);
+        int repeaterColumn = cursor.getColumnIndexOrThrow(AgendaRepeats.REPEATER);
+        int warningColumn = cursor.getColumnIndexOrThrow(AgendaRepeats.WARNING);
+        int habitColumn = cursor.getColumnIndexOrThrow(AgendaRepeats.HABIT);
+        int nodeIdColumn = cursor.getColumnIndexOrThrow(AgendaRepeats.NODE_ID);
+        int scheduledDateOnlyColumn = cursor.getColumnIndexOrThrow(OrgData.SCHEDULED_DATE_ONLY);
+        int deadlineDateOnlyColumn = cursor.getColumnIndexOrThrow(OrgData.DEADLINE_DATE_ONLY);
+        while (cursor.moveToNext()) {
+            long nodeId = cursor.getLong(nodeIdColumn);
+            OrgNodeTimeDate.TYPE type = OrgNodeTimeDate.TYPE.values()[cursor.getInt(typeColumn)];
+            long time = cursor.getLong(timeColumn);
+            String repeaterText = cursor.getString(repeaterColumn);
+            String warning = cursor.getString(warningColumn);
+            boolean habit = cursor.getInt(habitColumn) != 0;
+            boolean allDay = cursor.getInt(type == OrgNodeTimeDate.TYPE.Deadline
+                    ? deadlineDateOnlyColumn : scheduledDateOnlyColumn) != 0;
+
+            String key = nodeId + "/" + type.ordinal();
+            OrgRepeater repeater = repeaters.get(key);
+            if (repeater == null || !repeater.isSame(type, time, repeaterText, warning, habit))
+                repeater = new OrgRepeater(type, time, repeaterText, warning, habit);
+            readRepeaters.put(key, repeater);
+            if (repeater.hasEntries())
+                result.add(new Repeat(nodeId, allDay, repeater));
+        }
+        cursor.close();
+        repeaters = readRepeaters;
+        return result;
+    }
+
+    /**
+     * @return the {@link #PAGE_DAYS} days from the next day with entries after lastDay,
+     * null if there is none
+     */
+    private Page readLaterPage(Snapshot snapshot, long lastDay) {
+        long first = OrgProviderUtils.getNextAgendaDay(lastDay + 1, resolver);
+        for (Repeat repeat : snapshot.repeats) {
+            long day = repeat.repeater.getNextDay(lastDay + 1, snapshot.today);
+            if (day >= 0 && (first < 0 || day < first))
+                first = day;
+        }
+        if (first < 0)
+            return null;
+        return readPage(snapshot, first, first + PAGE_DAYS - 1);
+    }
+
+    /**
+     * @return the {@link #PAGE_DAYS} days up to the previous day with entries before
+     * firstDay, null if there is none
+     */
+    private Page readEarlierPage(Snapshot snapshot, long firstDay) {
+        long last = OrgProviderUtils.getPreviousAgendaDay(firstDay - 1, resolver);
+        for (Repeat repeat : snapshot.repeats)
+            last = Math.max(last, repeat.repeater.getPreviousDay(firstDay - 1, snapshot.today));
+        if (last < 0)
+            return null;
+        return readPage(snapshot, last - PAGE_DAYS + 1, last);
+    }
+
+    /**
+     * @return a date item for each day with entries, followed by its entries sorted by time
+     */
+    private Page readPage(Snapshot snapshot, long first, long last) {
+        ArrayList<Entry> entries = new ArrayList<>();
+        Cursor cursor = OrgProviderUtils.getAgenda(first, last, resolver);
+        if (cursor != null) {
+            int dayColumn = cursor.getColumnIndexOrThrow(Agenda.DAY);
+            int timeColumn = cursor.getColumnIndexOrThrow(Agenda.TIME);
+            int typeColumn = cursor.getColumnIndexOrThrow(Agenda.TYPE);
+            int nodeIdColumn = cursor.getColumnIndexOrThrow(Agenda.NODE_ID);
+            int scheduledDateOnlyColumn = cursor.getColumnIndexOrThrow(OrgData.SCHEDULED_DATE_ONLY);
+            int deadlineDateOnlyColumn = cursor.getColumnIndexOrThrow(OrgData.DEADLINE_DATE_ONLY);
+            while (cursor.moveToNext()) {
+                long time = cursor.getLong(timeColumn);
+                OrgNodeTimeDate.TYPE type = OrgNodeTimeDate.TYPE.values()[cursor.getInt(typeColumn)];
+                // The days between the scheduled and deadline days have no time
+                boolean allDay = time < 0 || cursor.getInt(type == OrgNodeTimeDate.TYPE.Deadline
+                        ? deadlineDateOnlyColumn : scheduledDateOnlyColumn) != 0;
+                entries.add(new Entry(cursor.getLong(dayColumn), time, type, allDay,
+                        cursor.getLong(nodeIdColumn)));
+            }
+            cursor.close();
+        }
+
+        if (!snapshot.repeats.isEmpty()) {
+            ArrayList<OrgRepeater.Occurrence> occurrences = new ArrayList<>();
+            for (Repeat repeat : snapshot.repeats) {
+                occurrences.clear();
+                repeat.repeater.addOccurrences(first, last, snapshot.today, occurrences);
+                for (OrgRepeater.Occurrence occurrence : occurrences)
+                    entries.add(new Entry(occurrence.day, occurrence.time, repeat.repeater.type,
+                            repeat.allDay, repeat.nodeId));
+            }
+            // The sort is stable, entries of the same time keep the order of the table
+            Collections.sort(entries, byDayAndTime);
+        }
+
+        Page page = new Page(first, last, snapshot.today);
+        long currentDay = -1;
+        for (Entry entry : entries) {
+            if (entry.day != currentDay) {
+                page.items.addHeader(entry.day);
+                currentDay = entry.day;
+            }
+            page.items.addEntry(entry.day, entry.time, entry.type, entry.allDay, entry.nodeId);
+        }
+        readRows(page.rows, entries);
+        return page;
+    }
+
+    /**
+     * Read the name and details of the nodes of the entries into rows
+     */
+    private void readRows(HashMap<Long, Row> rows, ArrayList<Entry> entries) {
+        HashSet<Long> ids = new HashSet<>();
+        for (Entry entry : entries)
+            ids.add(entry.nodeId);
+        if (ids.isEmpty())
+            return;
+
+        Cursor cursor = OrgProviderUtils.getNamesAndPayloads(ids, resolver);
+        if (cursor == null)
+            return;
+        int idColumn = cursor.getColumnIndexOrThrow(OrgData.ID);
+        int nameColumn = cursor.getColumnIndexOrThrow(OrgData.NAME);
+        int payloadColumn = cursor.getColumnIndexOrThrow(OrgData.PAYLOAD);
+        while (cursor.moveToNext()) {
+            rows.put(cursor.getLong(idColumn), new Row(cursor.getString(nameColumn),
+                    getDetails(cursor.getString(payloadColumn))));
+        }
+        cursor.close();
+    }
+
+    /**
+     * @return the first line of the payload without its timestamps and drawers, cut at
+     * {@link #MAX_DETAILS} characters
+     */
+    private static String getDetails(String payload) {
+        String cleaned = new OrgNodePayload(payload).getCleanedPayload().trim();
+        int end = cleaned.indexOf('\n');
+        if (end < 0) end = cleaned.length();
+        if (end <= MAX_DETAILS) return cleaned.substring(0, end);
+
+        int cut = MAX_DETAILS - 1;
+        if (Character.isHighSurrogate(cleaned.charAt(cut - 1))) cut--;
+        return cleaned.substring(0, cut) + "\u2026";
+    }
+}
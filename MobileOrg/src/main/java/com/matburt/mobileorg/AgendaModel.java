@@ -0,0 +1,136 @@
+package com.matburt.mobileorg;
+
+import com.matburt.mobileorg.orgdata.OrgContract.Agenda;
+import com.matburt.mobileorg.orgdata.OrgNodeTimeDate;
+
+/**
+ * The items of the agenda, day headers and entries, in primitive arrays with one slot per
+ * item. An entry only keeps the id of its node, whose name and details are read by
+ * {@link AgendaLoader} with the page of the entry.
+ * Days are stored as offsets from {@link #baseDay} and times as seconds from the start of
+ * the day of the item, so that an item takes 17 bytes.
+ */
+class AgendaModel {
+    // Flags of an item: the ordinal of its OrgNodeTimeDate.TYPE in the low bits
+    private static final int TYPE_MASK = 0x3;
+    private static final int ALL_DAY = 0x4;
+    private static final int HEADER = 0x8;
+    // The time of an entry without one
+    private static final int NO_TIME = Integer.MIN_VALUE;
+    private static final OrgNodeTimeDate.TYPE[] types = OrgNodeTimeDate.TYPE.values();
+
+    final long baseDay;
+    private long[] nodeIds;
+    private int[] days;
+    private int[] times;
+    private byte[] flags;
+    private int size = 0;
+
+    AgendaModel(long baseDay) {
+        this(baseDay, 16);
+    }
+
+    private AgendaModel(long baseDay, int capacity) {
+        this.baseDay = baseDay;
+        nodeIds = new long[capacity];
+        days = new int[capacity];
+        times = new int[capacity];
+        flags = new byte[capacity];
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isHeader(int position) {
+        return (flags[position] & HEADER) != 0;
+    }
+
+    boolean isAllDay(int position) {
+        return (flags[position] & ALL_DAY) != 0;
+    }
+
+    OrgNodeTimeDate.TYPE getType(int position) {
+        return types[flags[position] & TYPE_MASK];
+    }
+
+    long getNodeId(int position) {
+        return nodeIds[position];
+    }
+
+    long getDay(int position) {
+        return baseDay + days[position];
+    }
+
+    /**
+     * @return the epoch time of the entry, -1 if it has none
+     */
+    long getTime(int position) {
+        if (times[position] == NO_TIME)
+            return -1;
+        return getDay(position) * Agenda.SECONDS_PER_DAY + times[position];
+    }
+
+    void addHeader(long day) {
+        add(day, NO_TIME, HEADER, -1);
+    }
+
+    /**
+     * @param time epoch time of the entry, -1 if it has none
+     */
+    void addEntry(long day, long time, OrgNodeTimeDate.TYPE type, boolean allDay, long nodeId) {
+        int relativeTime = time < 0 ? NO_TIME : (int) (time - day * Agenda.SECONDS_PER_DAY);
+        add(day, relativeTime, type.ordinal() | (allDay ? ALL_DAY : 0), nodeId);
+    }
+
+    private void add(long day, int time, int flag, long nodeId) {
+        if (size == nodeIds.length)
+            grow(size * 2);
+        nodeIds[size] = nodeId;
+        days[size] = (int) (day - baseDay);
+        times[size] = time;
+        flags[size] = (byte) flag;
+        size++;
+    }
+
+    /**
+     * Add the items of a model with the same base day after the ones of this one
+     */
+    void append(AgendaModel items) {
+        grow(size + items.size);
+        copy(items, 0, this, size, items.size);
+        size += items.size;
+    }
+
+    /**
+     * Add the items of a model with the same base day before the ones of this one
+     */
+    void prepend(AgendaModel items) {
+        AgendaModel result = new AgendaModel(baseDay, size + items.size);
+        copy(items, 0, result, 0, items.size);
+        copy(this, 0, result, items.size, size);
+        nodeIds = result.nodeIds;
+        days = result.days;
+        times = result.times;
+        flags = result.flags;
+        size += items.size;
+    }
+
+    private void grow(int capacity) {
+        if (capacity <= nodeIds.length)
+            return;
+        AgendaModel result = new AgendaModel(baseDay, capacity);
+        copy(this, 0, result, 0, size);
+        nodeIds = result.nodeIds;
+        days = result.days;
+        times = result.times;
+        flags = result.flags;
+    }
+
+    private static void copy(AgendaModel from, int fromPosition, AgendaModel to, int toPosition, int count) {
+        System.arraycopy(from.nodeIds, fromPosition, to.nodeIds, toPosition, count);
+        System.arraycopy(from.days, fromPosition, to.days, toPosition, count);
+        System.arraycopy(from.times, fromPosition, to.times, toPosition, count);
+        System.arraycopy(from.flags, fromPosition, to.flags, toPosition, count);
+    }
+}
@@ -4,10 +4,14 @@ import android.content.ContentResolver;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.res.TypedArray;
+import android.database.ContentObserver;
 import android.database.Cursor;
 import android.graphics.Canvas;
+import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
+import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
 import android.support.v4.app.Fragment;
 import android.support.v4.content.ContextCompat;
 import android.support.v7.app.AlertDialog;
@@ -33,8 +37,6 @@ import com.matburt.mobileorg.orgdata.OrgProviderUtils;
 import com.matburt.mobileorg.util.OrgNodeNotFoundException;
 import com.matburt.mobileorg.util.TodoDialog;
 
-import java.util.NavigableMap;
-
 /**
  * A fragment representing a single OrgNode detail screen.
  * This fragment is either contained in a {@link OrgNodeListActivity}
@@ -43,7 +45,7 @@ import java.util.NavigableMap;
  */
 public class OrgNodeDetailFragment extends Fragment {
 
-    MainRecyclerViewAdapter adapter;
+    RecyclerViewAdapter adapter;
     Button insertNodeButton;
     RecyclerView recyclerView;
     TextView insertNodeText;
@@ -52,6 +54,15 @@ public class OrgNodeDetailFragment extends Fragment {
     private OrgNode selectedNode;
     private View highlightedView = null;
     private ActionMode mActionMode = null;
+    // True when the file changed since the last refresh
+    private boolean stale = true;
+    private final ContentObserver fileObserver = new ContentObserver(new Handler()) {
+        @Override
+        public void onChange(boolean selfChange) {
+            if (isResumed()) refresh();
+            else stale = true;
+        }
+    };
     private ActionMode.Callback mActionModeCallback = new ActionMode.Callback() {
 
         // Called when the action mode is created; startActionMode() was called
@@ -111,8 +122,24 @@ public class OrgNodeDetailFragment extends Fragment {
 
         }
 
-        adapter = new MainRecyclerViewAdapter();
+        adapter = new RecyclerViewAdapter();
 
+        // Only the changes of the file of the node make the tree read again
+        Uri changesUri = OrgContract.Changes.CONTENT_URI;
+        if (nodeId != OrgContract.TODO_ID) {
+            try {
+                changesUri = OrgContract.Changes.buildFileUri(new OrgNode(nodeId, resolver).fileId);
+            } catch (OrgNodeNotFoundException e) {
+                e.printStackTrace();
+            }
+        }
+        resolver.registerContentObserver(changesUri, true, fileObserver);
+    }
+
+    @Override
+    public void onDestroy() {
+        resolver.unregisterContentObserver(fileObserver);
+        super.onDestroy();
     }
 
     private OrgNodeTree getTree(){
@@ -125,7 +152,7 @@ public class OrgNodeDetailFragment extends Fragment {
             String todoQuery = "SELECT " +
                     OrgContract.formatColumns(
                             OrgDatabase.Tables.ORGDATA,
-                            OrgContract.OrgData.DEFAULT_COLUMNS) +
+                            OrgContract.OrgData.LIGHT_COLUMNS) +
                     " FROM orgdata JOIN todos " +
                     " ON todos.name = orgdata.todo WHERE todos.isdone=0";
 
@@ -137,7 +164,7 @@ public class OrgNodeDetailFragment extends Fragment {
             return tree;
         } else {
             try {
-                return new OrgNodeTree(new OrgNode(nodeId, resolver), resolver);
+                return new OrgNodeTree(nodeId, resolver);
             } catch (OrgNodeNotFoundException e) {
 //                TODO: implement error
                 e.printStackTrace();
@@ -154,10 +181,11 @@ public class OrgNodeDetailFragment extends Fragment {
 
         recyclerView = (RecyclerView) rootView.findViewById(R.id.node_recycler_view);
         assert recyclerView != null;
-//        recyclerView.addItemDecoration(new DividerItemDecoration(getContext()));
+        recyclerView.addItemDecoration(new DividerItemDecoration(getContext()));
 
         recyclerView.setLayoutManager(new LinearLayoutManager(getActivity()));
         recyclerView.setAdapter(adapter);
+        new ItemTouchHelper(new SimpleItemTouchHelperCallback()).attachToRecyclerView(recyclerView);
 
         insertNodeButton = (Button) rootView.findViewById(R.id.empty_recycler);
         insertNodeText = (TextView) rootView.findViewById(R.id.empty_recycler_text);
@@ -175,7 +203,7 @@ public class OrgNodeDetailFragment extends Fragment {
 
         refresh();
 
-        int position = findCardViewContaining(getArguments().getLong(OrgContract.POSITION, -1));
+        int position = findPosition(getArguments().getLong(OrgContract.POSITION, -1));
         recyclerView.scrollToPosition(position);
         return rootView;
     }
@@ -184,7 +212,8 @@ public class OrgNodeDetailFragment extends Fragment {
      * Recreate the OrgNodeTree and refresh the Adapter
      */
     public void refresh() {
-        adapter.tree = getTree();
+        stale = false;
+        adapter.setTree(getTree());
 
         int size = adapter.getItemCount();
 
@@ -205,123 +234,63 @@ public class OrgNodeDetailFragment extends Fragment {
     @Override
     public void onResume() {
         super.onResume();
-        refresh();
+        if (stale) refresh();
     }
 
 
 
     /**
-     * Find the CardView containing the given node id
+     * Find the position of the given node id
      *
      * @param id
-     * @return the position of the CardView
+     * @return the position of the node, or of its closest unfolded ancestor
      */
-    int findCardViewContaining(long id) {
+    int findPosition(long id) {
         if (id < 0) return 0;
-        OrgNode node = null;
-        long cardViewMainNode = -1;
-        try {
-            do {
-                if (node != null) cardViewMainNode = node.id;
-                node = new OrgNode(id, getContext().getContentResolver());
-                id = node.parentId;
-            } while (id > -1);
-            for (int i = 0; i < adapter.tree.children.size(); i++) {
-                if (adapter.tree.children.get(i).node.id == cardViewMainNode) {
-                    return i;
-                }
-            }
-        } catch (OrgNodeNotFoundException e) {
-            e.printStackTrace();
-        }
-        return 0;
+        return Math.max(adapter.model.findPosition(id), 0);
     }
 
-    public class MainRecyclerViewAdapter
-            extends RecyclerView.Adapter<MultipleItemsViewHolder> {
-
-        private OrgNodeTree tree;
-
-        public MainRecyclerViewAdapter() {
-        }
+    class SimpleItemTouchHelperCallback extends ItemTouchHelper.Callback {
 
         @Override
-        public MultipleItemsViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
-            View view = LayoutInflater.from(parent.getContext())
-                    .inflate(R.layout.detail_recycler_item, parent, false);
-            return new MultipleItemsViewHolder(view);
+        public int getMovementFlags(RecyclerView recyclerView, RecyclerView.ViewHolder viewHolder) {
+            int dragFlags = ItemTouchHelper.UP | ItemTouchHelper.DOWN;
+            int swipeFlags = ItemTouchHelper.START | ItemTouchHelper.END;
+            return makeMovementFlags(dragFlags, swipeFlags);
         }
 
-        @Override
-        public void onBindViewHolder(final MultipleItemsViewHolder holder, final int position) {
-            OrgNodeTree root = tree.children.get(position);
-
-            SecondaryRecyclerViewAdapter secondaryAdapter = new SecondaryRecyclerViewAdapter(root, position);
-
-            RecyclerView secondaryRecyclerView = (RecyclerView) holder.view.findViewById(R.id.node_recycler_view);
-            secondaryRecyclerView.setLayoutManager(new LinearLayoutManager(getActivity()));
-            secondaryRecyclerView.setAdapter(secondaryAdapter);
-
-            SimpleItemTouchHelperCallback callback = new SimpleItemTouchHelperCallback(secondaryAdapter);
-            ItemTouchHelper touchHelper = new ItemTouchHelper(callback);
-            touchHelper.attachToRecyclerView(secondaryRecyclerView);
-        }
 
         @Override
-        public int getItemCount() {
-            return tree.children.size();
+        public void onSwiped(RecyclerView.ViewHolder viewHolder, int direction) {
+            OrgNodeViewHolder item = (OrgNodeViewHolder) viewHolder;
+            EditNodeFragment.createEditNodeFragment((int)item.node.id, -1, -1, getContext());
         }
 
-        class SimpleItemTouchHelperCallback extends ItemTouchHelper.Callback {
-            private final RecyclerView.Adapter mAdapter;
-
-            public SimpleItemTouchHelperCallback(RecyclerView.Adapter adapter) {
-                mAdapter = adapter;
-            }
-
-            @Override
-            public int getMovementFlags(RecyclerView recyclerView, RecyclerView.ViewHolder viewHolder) {
-                int dragFlags = ItemTouchHelper.UP | ItemTouchHelper.DOWN;
-                int swipeFlags = ItemTouchHelper.START | ItemTouchHelper.END;
-                return makeMovementFlags(dragFlags, swipeFlags);
-            }
-
-
-            @Override
-            public void onSwiped(RecyclerView.ViewHolder viewHolder, int direction) {
-                long position = (long) viewHolder.getAdapterPosition();
-//                OrgNode node = mAdapter.idTreeMap.get(position).node;
-//                int id = (int)node.id;
-//                int parentId = (int)node.parentId;
-
-                OrgNodeViewHolder item = (OrgNodeViewHolder) viewHolder;
-                EditNodeFragment.createEditNodeFragment((int)item.node.id, -1, -1, getContext());
-            }
-
-            @Override
-            public boolean onMove(RecyclerView recyclerView, RecyclerView.ViewHolder viewHolder,
-                                  RecyclerView.ViewHolder target) {
-                return false;
-            }
+        @Override
+        public boolean onMove(RecyclerView recyclerView, RecyclerView.ViewHolder viewHolder,
+                              RecyclerView.ViewHolder target) {
+            return false;
         }
     }
 
-    public class SecondaryRecyclerViewAdapter
+    /**
+     * The adapter of the whole outline, one row per node shown.
+     * Folding a node only notifies the rows it hides or shows.
+     */
+    public class RecyclerViewAdapter
             extends RecyclerView.Adapter<OrgNodeViewHolder> {
 
-        NavigableMap<Long, OrgNodeTree> items;
-        private OrgNodeTree tree;
-        private int parentPosition;
+        private OutlineModel model = new OutlineModel(null);
+
+        public RecyclerViewAdapter() {
+        }
 
-        public SecondaryRecyclerViewAdapter(OrgNodeTree root, int parentPosition) {
-            tree = root;
-            refreshVisibility();
-            this.parentPosition = parentPosition;
+        void setTree(OrgNodeTree tree) {
+            model = new OutlineModel(tree);
         }
 
-        void refreshVisibility() {
-            items = tree.getVisibleNodesArray();
-            notifyDataSetChanged();
+        boolean isTopLevel(int position) {
+            return model.isTopLevel(position);
         }
 
         @Override
@@ -333,7 +302,7 @@ public class OrgNodeDetailFragment extends Fragment {
 
         @Override
         public void onBindViewHolder(final OrgNodeViewHolder item, final int position) {
-            final OrgNodeTree tree = items.get((long)position);
+            final OrgNodeTree tree = model.get(position);
 
             boolean isSelected = (tree.node == selectedNode);
             item.setup(tree, isSelected, getContext());
@@ -343,10 +312,14 @@ public class OrgNodeDetailFragment extends Fragment {
                 public void onClick(View v) {
                     if (selectedNode != null) {
                         closeInsertItem();
-                    } else {
-                        tree.toggleVisibility();
+                        return;
                     }
-                    refreshVisibility();
+                    // The rows above may have moved since the bind
+                    int current = item.getAdapterPosition();
+                    if (current == RecyclerView.NO_POSITION) return;
+                    model.toggleVisibility(current, RecyclerViewAdapter.this);
+                    // The "..." of folded nodes
+                    notifyItemChanged(current);
                 }
             });
 
@@ -361,13 +334,8 @@ public class OrgNodeDetailFragment extends Fragment {
 
                     selectedNode = item.node;
                     highlightedView = item.mView;
-//                    setItemModifiersVisibility(highlightedView, View.VISIBLE);
-//                    item.mView.setSelected(true);
-
-//                    notifyItemChanged(position);
-//                    refreshVisibility();
-//                    adapter.notifyItemChanged(parentPosition, SecondaryRecyclerViewAdapter.this);
-                    adapter.notifyDataSetChanged();
+                    int current = item.getAdapterPosition();
+                    if (current != RecyclerView.NO_POSITION) notifyItemChanged(current);
                     return true;
                 }
             });
@@ -377,11 +345,9 @@ public class OrgNodeDetailFragment extends Fragment {
                 public void onClick(View v) {
                     if (selectedNode != null) {
                         closeInsertItem();
-                        refreshVisibility();
                         return;
                     }
                     new TodoDialog(getContext(), tree.node, item.todoButton, true);
-                    refreshVisibility();
                 }
             });
 
@@ -416,7 +382,6 @@ public class OrgNodeDetailFragment extends Fragment {
 
                                 public void onClick(DialogInterface dialog, int whichButton) {
                                     item.node.deleteNode(getContext());
-                                    refresh();
                                 }
                             })
                             .setNegativeButton(android.R.string.no, null).show();
@@ -429,13 +394,14 @@ public class OrgNodeDetailFragment extends Fragment {
             selectedNode = null;
             if (highlightedView != null) {
                 setItemModifiersVisibility(highlightedView, View.GONE);
+                highlightedView.setSelected(false);
                 highlightedView = null;
             }
         }
 
         @Override
         public int getItemCount() {
-            return items.size();
+            return model.size();
         }
 
         void setItemModifiersVisibility(View view, int visibility){
@@ -446,6 +412,9 @@ public class OrgNodeDetailFragment extends Fragment {
         }
     }
 
+    /**
+     * Separate the subtrees of the top level nodes, that used to be in their own cards
+     */
     public class DividerItemDecoration extends RecyclerView.ItemDecoration {
 
         private final int[] ATTRS = new int[]{android.R.attr.listDivider};
@@ -468,6 +437,17 @@ public class OrgNodeDetailFragment extends Fragment {
             mDivider = ContextCompat.getDrawable(context, resId);
         }
 
+        private boolean startsSection(RecyclerView parent, View child) {
+            int position = parent.getChildAdapterPosition(child);
+            return position > 0 && position < adapter.getItemCount() && adapter.isTopLevel(position);
+        }
+
+        @Override
+        public void getItemOffsets(Rect outRect, View view, RecyclerView parent, RecyclerView.State state) {
+            if (startsSection(parent, view)) outRect.set(0, mDivider.getIntrinsicHeight(), 0, 0);
+            else outRect.set(0, 0, 0, 0);
+        }
+
         @Override
         public void onDraw(Canvas c, RecyclerView parent, RecyclerView.State state) {
             int left = parent.getPaddingLeft();
@@ -476,11 +456,12 @@ public class OrgNodeDetailFragment extends Fragment {
             int childCount = parent.getChildCount();
             for (int i = 0; i < childCount; i++) {
                 View child = parent.getChildAt(i);
+                if (!startsSection(parent, child)) continue;
 
                 RecyclerView.LayoutParams params = (RecyclerView.LayoutParams) child.getLayoutParams();
 
-                int top = child.getBottom() + params.bottomMargin;
-                int bottom = top + mDivider.getIntrinsicHeight();
+                int bottom = child.getTop() - params.topMargin;
+                int top = bottom - mDivider.getIntrinsicHeight();
 
                 mDivider.setBounds(left, top, right, bottom);
                 mDivider.draw(c);
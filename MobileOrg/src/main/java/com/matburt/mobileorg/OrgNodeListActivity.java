@@ -119,7 +119,6 @@ public class OrgNodeListActivity extends AppCompatActivity {
                             return;
                         }
                         newFile.addFile(OrgNodeListActivity.this);
-                        ((OutlineAdapter) recyclerView.getAdapter()).refresh();
                         Synchronizer.getInstance().addFile(filename);
                         connect();
                     }
@@ -210,7 +209,9 @@ public class OrgNodeListActivity extends AppCompatActivity {
     }
 
     private void setupRecyclerView(@NonNull RecyclerView recyclerView) {
-        recyclerView.setAdapter(new OutlineAdapter(this));
+        OutlineAdapter adapter = new OutlineAdapter(this);
+        adapter.startObserving();
+        recyclerView.setAdapter(adapter);
     }
 
     private void showUpgradePopup() {
@@ -238,6 +239,7 @@ public class OrgNodeListActivity extends AppCompatActivity {
     @Override
     protected void onDestroy() {
         unregisterReceiver(this.syncReceiver);
+        ((OutlineAdapter) recyclerView.getAdapter()).stopObserving();
         super.onDestroy();
     }
 
@@ -318,7 +320,7 @@ public class OrgNodeListActivity extends AppCompatActivity {
                 if (synchronizerMenuItem != null)
                     synchronizerMenuItem.setVisible(false);
             } else if (syncDone) {
-                ((OutlineAdapter) recyclerView.getAdapter()).refresh();
+                // The outline follows the files written by the synchronization by itself
                 if (synchronizerMenuItem != null) synchronizerMenuItem.setVisible(true);
 
             } else if (progress >= 0 && progress <= 100) {
@@ -115,8 +115,9 @@ public class OrgNodeViewHolder extends ItemViewHolder {
         setupPriority(node.priority);
         TodoDialog.setupTodoButton(context, node, todoButton, true);
 
-        if(root.getVisibility()== OrgNodeTree.Visibility.folded)
-            setupChildrenIndicator(node, titleSpan, context);
+        // The children are in the tree, binding a folded node doesn't query them
+        if(root.getVisibility()== OrgNodeTree.Visibility.folded && !root.children.isEmpty())
+            setupChildrenIndicator(titleSpan);
 
 //                titleSpan.setSpan(new StyleSpan(Typeface.NORMAL), 0, titleSpan.length(), 0);
         titleView.setText(titleSpan);
@@ -157,12 +158,10 @@ public class OrgNodeViewHolder extends ItemViewHolder {
         }
     }
 
-    public void setupChildrenIndicator(OrgNode node, SpannableStringBuilder titleSpan, Context context) {
-        if (node.hasChildren(context.getContentResolver())) {
-            titleSpan.append("...");
-            titleSpan.setSpan(new ForegroundColorSpan(Style.foreground),
-                    titleSpan.length() - "...".length(), titleSpan.length(), 0);
-        }
+    public void setupChildrenIndicator(SpannableStringBuilder titleSpan) {
+        titleSpan.append("...");
+        titleSpan.setSpan(new ForegroundColorSpan(Style.foreground),
+                titleSpan.length() - "...".length(), titleSpan.length(), 0);
     }
 
     private long getLevel(){
@@ -0,0 +1,200 @@
+package com.matburt.mobileorg;
+
+import android.support.v7.widget.RecyclerView;
+
+import com.matburt.mobileorg.orgdata.OrgNodeTree;
+
+import java.util.HashMap;
+
+/**
+ * The outline of a tree as one flat list: the nodes below the root in document order, of
+ * which only the ones without a folded ancestor are shown. The shown nodes are counted in a
+ * Fenwick tree, so that the node at a position of the list and the position of a node are
+ * found in O(log n), and a fold only visits the nodes it shows or hides.
+ */
+class OutlineModel {
+    private final OrgNodeTree[] trees;
+    // Index of a node by its id
+    private final HashMap<Long, Integer> indexes;
+    // Index of the parent of a node, -1 for the children of the root
+    private final int[] parents;
+    // Index after the last descendant of a node
+    private final int[] ends;
+    private final boolean[] shown;
+    // Fenwick tree over shown, with 1-based indexes
+    private final int[] counts;
+    private int size = 0;
+
+    OutlineModel(OrgNodeTree root) {
+        int count = root == null ? 0 : countDescendants(root);
+        trees = new OrgNodeTree[count];
+        indexes = new HashMap<>(count * 4 / 3 + 1);
+        parents = new int[count];
+        ends = new int[count];
+        shown = new boolean[count];
+        counts = new int[count + 1];
+
+        if (root != null) {
+            int index = 0;
+            for (OrgNodeTree child : root.children)
+                index = add(child, -1, true, index);
+        }
+
+        // Linear construction of the Fenwick tree
+        for (int i = 1; i <= count; i++) {
+            if (shown[i - 1]) {
+                counts[i]++;
+                size++;
+            }
+            int parent = i + (i & -i);
+            if (parent <= count) counts[parent] += counts[i];
+        }
+    }
+
+    private static int countDescendants(OrgNodeTree tree) {
+        int result = 0;
+        for (OrgNodeTree child : tree.children)
+            result += 1 + countDescendants(child);
+        return result;
+    }
+
+    /**
+     * Add a tree and its descendants from the index
+     * @return the index after the last descendant
+     */
+    private int add(OrgNodeTree tree, int parent, boolean isShown, int index) {
+        int current = index++;
+        trees[current] = tree;
+        indexes.put(tree.node.id, current);
+        parents[current] = parent;
+        shown[current] = isShown;
+
+        boolean childrenShown = isShown && tree.getVisibility() != OrgNodeTree.Visibility.folded;
+        for (OrgNodeTree child : tree.children)
+            index = add(child, current, childrenShown, index);
+        ends[current] = index;
+        return index;
+    }
+
+    /**
+     * @return the number of nodes shown
+     */
+    int size() {
+        return size;
+    }
+
+    OrgNodeTree get(int position) {
+        return trees[getIndex(position)];
+    }
+
+    /**
+     * @return true if the node at the position is a child of the root
+     */
+    boolean isTopLevel(int position) {
+        return parents[getIndex(position)] < 0;
+    }
+
+    /**
+     * @return the position of the node, or of its closest shown ancestor if it is folded,
+     * -1 if the node is not in the outline
+     */
+    int findPosition(long nodeId) {
+        Integer found = indexes.get(nodeId);
+        if (found == null)
+            return -1;
+
+        int index = found;
+        while (!shown[index]) index = parents[index];
+        return countBefore(index);
+    }
+
+    /**
+     * Cycle the visibility of the node at the position, and tell the adapter which rows
+     * appeared or disappeared
+     */
+    void toggleVisibility(int position, RecyclerView.Adapter adapter) {
+        int index = getIndex(position);
+        trees[index].toggleVisibility();
+
+        // The changes are runs of rows inserted or removed, notified in order so that
+        // the positions of each run account for the runs before it
+        int next = position + 1;
+        int runStart = next, runCount = 0;
+        boolean runInserted = false;
+        int i = index + 1;
+        while (i < ends[index]) {
+            int parent = parents[i];
+            boolean show = shown[parent] && trees[parent].getVisibility() != OrgNodeTree.Visibility.folded;
+            if (show != shown[i]) {
+                if (runCount > 0 && runInserted != show) {
+                    notifyRun(adapter, runStart, runCount, runInserted);
+                    runCount = 0;
+                }
+                if (runCount == 0) {
+                    runStart = next;
+                    runInserted = show;
+                }
+                runCount++;
+                setShown(i, show);
+                if (show) next++;
+            } else {
+                if (runCount > 0) {
+                    notifyRun(adapter, runStart, runCount, runInserted);
+                    runCount = 0;
+                }
+                if (show) {
+                    next++;
+                } else {
+                    // Hidden before and after, as are its descendants
+                    i = ends[i];
+                    continue;
+                }
+            }
+            i++;
+        }
+        if (runCount > 0) notifyRun(adapter, runStart, runCount, runInserted);
+    }
+
+    private static void notifyRun(RecyclerView.Adapter adapter, int position, int count, boolean inserted) {
+        if (inserted) adapter.notifyItemRangeInserted(position, count);
+        else adapter.notifyItemRangeRemoved(position, count);
+    }
+
+    private void setShown(int index, boolean isShown) {
+        shown[index] = isShown;
+        int delta = isShown ? 1 : -1;
+        size += delta;
+        for (int i = index + 1; i < counts.length; i += i & -i)
+            counts[i] += delta;
+    }
+
+    /**
+     * @return the number of nodes shown before the index
+     */
+    private int countBefore(int index) {
+        int result = 0;
+        for (int i = index; i > 0; i -= i & -i)
+            result += counts[i];
+        return result;
+    }
+
+    /**
+     * @return the index of the shown node at the position
+     */
+    private int getIndex(int position) {
+        if (position < 0 || position >= size)
+            throw new IndexOutOfBoundsException("Position " + position + " of " + size);
+
+        // Descend the Fenwick tree for the last index with position shown nodes before it
+        int index = 0;
+        int remaining = position + 1;
+        for (int step = Integer.highestOneBit(counts.length - 1); step > 0; step >>= 1) {
+            int next = index + step;
+            if (next < counts.length && counts[next] < remaining) {
+                index = next;
+                remaining -= counts[next];
+            }
+        }
+        return index;
+    }
+}
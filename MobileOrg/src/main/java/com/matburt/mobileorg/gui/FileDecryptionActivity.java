@@ -8,7 +8,6 @@ import android.content.pm.PackageManager.NameNotFoundException;
 import android.os.Bundle;
 import android.widget.Toast;
 
-import com.matburt.mobileorg.orgdata.OrgDatabase;
 import com.matburt.mobileorg.orgdata.OrgFile;
 import com.matburt.mobileorg.orgdata.OrgFileParser;
 import com.matburt.mobileorg.R;
@@ -70,8 +69,7 @@ public class FileDecryptionActivity extends Activity
 			BufferedReader reader = new BufferedReader(new InputStreamReader(
 					new ByteArrayInputStream(decryptedData.getBytes())));
 
-			OrgDatabase db = OrgDatabase.getInstance();
-			OrgFileParser.getInstance().parse(new OrgFile(filename, name), reader, this);
+			OrgFileParser.parseFile(new OrgFile(filename, name), reader, this);
 			break;
 		}
 		finish();
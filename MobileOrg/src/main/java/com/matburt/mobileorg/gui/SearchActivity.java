@@ -3,28 +3,65 @@ package com.matburt.mobileorg.gui;
 import android.app.SearchManager;
 import android.content.Intent;
 import android.database.Cursor;
+import android.graphics.Typeface;
 import android.os.Bundle;
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.OperationCanceledException;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.SearchView;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.TextUtils;
+import android.text.style.StyleSpan;
+import android.util.SparseArray;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.TextView;
 
 import com.matburt.mobileorg.orgdata.OrgContract;
+import com.matburt.mobileorg.orgdata.OrgContract.OrgData;
+import com.matburt.mobileorg.orgdata.OrgContract.Search;
 import com.matburt.mobileorg.orgdata.OrgFile;
-import com.matburt.mobileorg.orgdata.OrgNode;
 import com.matburt.mobileorg.orgdata.OrgProviderUtils;
 import com.matburt.mobileorg.OrgNodeDetailActivity;
 import com.matburt.mobileorg.R;
 import com.matburt.mobileorg.util.OrgFileNotFoundException;
 
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+/**
+ * Search as you type. A query runs once the typing pauses for {@link #SEARCH_DELAY_MS},
+ * on a background thread, and cancels the previous one. It only returns the ranked ids
+ * of the matching nodes: their snippets are read by pages of {@link #PAGE_SIZE}, when
+ * the list scrolls to them.
+ */
 public class SearchActivity extends AppCompatActivity {
+    private static final long SEARCH_DELAY_MS = 250;
+    private static final int PAGE_SIZE = 30;
+
     RecyclerView recyclerView;
     RecyclerViewAdapter adapter;
+    SearchView searchView;
+
+    private final Handler handler = new Handler();
+    // Queries run one after the other, the canceled ones return right away
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private CancellationSignal searchSignal;
+    private String typedQuery = "";
+
+    private final Runnable typedSearch = new Runnable() {
+        @Override
+        public void run() {
+            doSearch(typedQuery);
+        }
+    };
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
@@ -41,31 +78,220 @@ public class SearchActivity extends AppCompatActivity {
         recyclerView.setLayoutManager(new LinearLayoutManager(this));
         recyclerView.setAdapter(adapter);
 
+        searchView = (SearchView) findViewById(R.id.search_view);
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                handler.removeCallbacks(typedSearch);
+                doSearch(query);
+                searchView.clearFocus();
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                typedQuery = newText;
+                handler.removeCallbacks(typedSearch);
+                handler.postDelayed(typedSearch, SEARCH_DELAY_MS);
+                return true;
+            }
+        });
+
         // Get the intent, verify the action and get the query
         Intent intent = getIntent();
         if (Intent.ACTION_SEARCH.equals(intent.getAction())) {
             String query = intent.getStringExtra(SearchManager.QUERY);
+            searchView.setQuery(query, false);
+            searchView.clearFocus();
+            handler.removeCallbacks(typedSearch);
             doSearch(query);
         }
     }
 
+    @Override
+    protected void onDestroy() {
+        handler.removeCallbacks(typedSearch);
+        if (searchSignal != null)
+            searchSignal.cancel();
+        executor.shutdownNow();
+        super.onDestroy();
+    }
+
+    /**
+     * Rank the nodes matching the query in the background. The results on screen stay
+     * until the new ones are ready.
+     */
     private void doSearch(String query) {
+        if (searchSignal != null)
+            searchSignal.cancel();
+        final CancellationSignal signal = new CancellationSignal();
+        searchSignal = signal;
+
+        final String trimmedQuery = query == null ? "" : query.trim();
+        if (trimmedQuery.isEmpty()) {
+            adapter.setResults(trimmedQuery, new long[0], signal);
+            return;
+        }
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (signal.isCanceled())
+                    return;
 
+                final long[] ids;
+                try {
+                    ids = OrgProviderUtils.searchIds(trimmedQuery, getContentResolver(), signal);
+                } catch (OperationCanceledException e) {
+                    return;
+                }
 
-        Cursor result = OrgProviderUtils.search("%" + query.trim() + "%",
-                getContentResolver());
-        adapter.items = OrgProviderUtils
-                .orgDataCursorToArrayList(result);
-        adapter.notifyDataSetChanged();
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!signal.isCanceled())
+                            adapter.setResults(trimmedQuery, ids, signal);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * @return the results of a page, in the order of the ids. A node deleted since the
+     * ranking has no result.
+     */
+    private SearchResult[] readPage(String query, long[] ids, CancellationSignal signal) {
+        HashMap<Long, Integer> positions = new HashMap<>();
+        for (int i = 0; i < ids.length; i++)
+            positions.put(ids[i], i);
+
+        SearchResult[] results = new SearchResult[ids.length];
+        Cursor cursor = OrgProviderUtils.search(query, ids, getContentResolver(), signal);
+        if (cursor == null)
+            return results;
+
+        int id = cursor.getColumnIndex(OrgData.ID);
+        int fileId = cursor.getColumnIndex(OrgData.FILE_ID);
+        int nameSnippet = cursor.getColumnIndex(Search.NAME_SNIPPET);
+        int snippet = cursor.getColumnIndex(Search.SNIPPET);
+        while (cursor.moveToNext()) {
+            SearchResult result = new SearchResult();
+            result.id = cursor.getLong(id);
+            result.fileId = cursor.getLong(fileId);
+            result.title = highlight(cursor.getString(nameSnippet));
+            result.snippet = highlight(cursor.getString(snippet));
+
+            Integer position = positions.get(result.id);
+            if (position != null)
+                results[position] = result;
+        }
+        cursor.close();
+        return results;
+    }
+
+    /**
+     * @return the snippet with the matched words in bold
+     */
+    private static CharSequence highlight(String snippet) {
+        SpannableStringBuilder result = new SpannableStringBuilder();
+        if (snippet == null)
+            return result;
+
+        int start = -1;
+        for (int i = 0; i < snippet.length(); i++) {
+            char c = snippet.charAt(i);
+            if (c == Search.MATCH_START) {
+                start = result.length();
+            } else if (c == Search.MATCH_END && start >= 0) {
+                result.setSpan(new StyleSpan(Typeface.BOLD), start, result.length(),
+                        Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+                start = -1;
+            } else {
+                result.append(c);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * What the list shows of a matching node
+     */
+    static class SearchResult {
+        long id;
+        long fileId;
+        CharSequence title;
+        CharSequence snippet;
     }
 
     public class RecyclerViewAdapter
             extends RecyclerView.Adapter<ViewHolder> {
-        ArrayList<OrgNode> items;
+        private String query = "";
+        private long[] ids = new long[0];
+        private CancellationSignal signal;
+        // Loaded pages by index, a null page is being loaded
+        private final SparseArray<SearchResult[]> pages = new SparseArray<>();
 
         public RecyclerViewAdapter() {
         }
 
+        void setResults(String query, long[] ids, CancellationSignal signal) {
+            this.query = query;
+            this.ids = ids;
+            this.signal = signal;
+            pages.clear();
+            notifyDataSetChanged();
+            recyclerView.scrollToPosition(0);
+        }
+
+        /**
+         * @return the result at this position, null if its page is not loaded yet
+         */
+        private SearchResult getResult(int position) {
+            int page = position / PAGE_SIZE;
+            int index = pages.indexOfKey(page);
+            if (index < 0) {
+                loadPage(page);
+                return null;
+            }
+
+            SearchResult[] results = pages.valueAt(index);
+            return results == null ? null : results[position % PAGE_SIZE];
+        }
+
+        private void loadPage(final int page) {
+            pages.put(page, null);
+
+            final int start = page * PAGE_SIZE;
+            final long[] pageIds = Arrays.copyOfRange(ids, start, Math.min(ids.length, start + PAGE_SIZE));
+            final String pageQuery = query;
+            final CancellationSignal pageSignal = signal;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (pageSignal.isCanceled())
+                        return;
+
+                    final SearchResult[] results;
+                    try {
+                        results = readPage(pageQuery, pageIds, pageSignal);
+                    } catch (OperationCanceledException e) {
+                        return;
+                    }
+
+                    runOnUiThread(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (pageSignal != signal)
+                                return;
+                            pages.put(page, results);
+                            notifyItemRangeChanged(start, results.length);
+                        }
+                    });
+                }
+            });
+        }
+
         @Override
         public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
             View view = LayoutInflater.from(parent.getContext())
@@ -75,24 +301,35 @@ public class SearchActivity extends AppCompatActivity {
 
         @Override
         public void onBindViewHolder(final ViewHolder holder, final int position) {
-            final OrgNode node = items.get(position);
+            final SearchResult result = getResult(position);
+            // Load the next page before it shows up
+            if (position + PAGE_SIZE / 2 < ids.length)
+                getResult(position + PAGE_SIZE / 2);
+
             TextView title = (TextView) holder.itemView.findViewById(R.id.title);
             TextView payload = (TextView) holder.itemView.findViewById(R.id.payload);
-            title.setText(node.name);
-            if (node.getCleanedPayload().equals("")) payload.setVisibility(View.GONE);
+            if (result == null) {
+                title.setText("");
+                payload.setVisibility(View.GONE);
+                holder.itemView.setOnClickListener(null);
+                return;
+            }
+
+            title.setText(result.title);
+            if (TextUtils.isEmpty(result.snippet)) payload.setVisibility(View.GONE);
             else {
                 payload.setVisibility(View.VISIBLE);
-                payload.setText(node.getCleanedPayload());
+                payload.setText(result.snippet);
             }
 
             holder.itemView.setOnClickListener(new View.OnClickListener() {
                 @Override
                 public void onClick(View view) {
                     try {
-                        OrgFile file = new OrgFile(node.fileId, getContentResolver());
+                        OrgFile file = new OrgFile(result.fileId, getContentResolver());
                         Intent intent = new Intent(SearchActivity.this, OrgNodeDetailActivity.class);
                         intent.putExtra(OrgContract.NODE_ID, file.nodeId);
-                        intent.putExtra(OrgContract.POSITION, node.id);
+                        intent.putExtra(OrgContract.POSITION, result.id);
                         startActivity(intent);
                     } catch (OrgFileNotFoundException e) {
                         e.printStackTrace();
@@ -103,14 +340,12 @@ public class SearchActivity extends AppCompatActivity {
 
         @Override
         public int getItemCount() {
-            return items.size();
+            return ids.length;
         }
 
     }
 
     public class ViewHolder extends RecyclerView.ViewHolder {
-        OrgNode node;
-
         public ViewHolder(View itemView) {
             super(itemView);
         }
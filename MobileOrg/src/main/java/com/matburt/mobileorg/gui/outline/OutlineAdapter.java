@@ -4,7 +4,10 @@ import android.content.ContentResolver;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
+import android.database.ContentObserver;
+import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
 import android.support.v4.app.Fragment;
 import android.support.v7.app.ActionBar;
 import android.support.v7.app.AlertDialog;
@@ -31,6 +34,7 @@ import com.matburt.mobileorg.OrgNodeDetailActivity;
 import com.matburt.mobileorg.OrgNodeDetailFragment;
 import com.matburt.mobileorg.OrgNodeListActivity;
 import com.matburt.mobileorg.R;
+import com.matburt.mobileorg.util.OrgFileNotFoundException;
 import com.matburt.mobileorg.util.OrgNodeNotFoundException;
 
 import java.util.ArrayList;
@@ -97,6 +101,14 @@ public class OutlineAdapter extends RecyclerView.Adapter<OutlineAdapter.OutlineI
         }
     };
     private DefaultTheme theme;
+    // Only the file that changed is read again
+    private final ContentObserver filesObserver = new ContentObserver(new Handler()) {
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            if (uri == null || OrgContract.Changes.getFileId(uri) < 0) refresh();
+            else if (OrgContract.Changes.getNodeId(uri) < 0) refreshFile(OrgContract.Changes.getFileId(uri));
+        }
+    };
 
 	public OutlineAdapter(AppCompatActivity activity) {
 		super();
@@ -118,6 +130,42 @@ public class OutlineAdapter extends RecyclerView.Adapter<OutlineAdapter.OutlineI
         notifyDataSetChanged();
     }
 
+    /**
+     * Read a file again: its item is updated, or removed if the file is gone
+     */
+    private void refreshFile(long fileId) {
+        int position = -1;
+        for (int i = 0; i < items.size(); i++) {
+            if (items.get(i).id == fileId) position = i;
+        }
+
+        try {
+            OrgFile file = new OrgFile(fileId, resolver);
+            if (position < 0) {
+                // A new file, its place depends on the sort of the list
+                refresh();
+                return;
+            }
+            items.set(position, file);
+            notifyItemChanged(position + numExtraItems);
+        } catch (OrgFileNotFoundException e) {
+            if (position < 0) return;
+            items.remove(position);
+            notifyItemRemoved(position + numExtraItems);
+        }
+    }
+
+    /**
+     * Follow the changes of the files until {@link #stopObserving()}
+     */
+    public void startObserving() {
+        resolver.registerContentObserver(OrgContract.Changes.CONTENT_URI, true, filesObserver);
+    }
+
+    public void stopObserving() {
+        resolver.unregisterContentObserver(filesObserver);
+    }
+
 	@Override public int getItemCount() {
 		return items.size() + numExtraItems;
 	}
@@ -320,7 +368,6 @@ public class OutlineAdapter extends RecyclerView.Adapter<OutlineAdapter.OutlineI
             file.removeFile(activity, true);
         }
         ((OrgNodeListActivity) activity).runSynchronize();
-        refresh();
         actionMode.finish();
     }
 
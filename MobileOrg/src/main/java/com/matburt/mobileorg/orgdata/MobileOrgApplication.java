@@ -28,7 +28,6 @@ public class MobileOrgApplication extends Application {
 
         OrgDatabase.startDB(this);
         startSynchronizer();
-        OrgFileParser.startParser(this);
         SyncService.startAlarm(this);
     }
 
@@ -0,0 +1,229 @@
+package com.matburt.mobileorg.orgdata;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.matburt.mobileorg.orgdata.OrgContract.Changes;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+/**
+ * Coalesces the change notifications of the database.
+ *
+ * Changes are recorded by provider uri, by file and by node. The ones made in a
+ * transaction of {@link OrgDatabase} wait for its commit and are dropped if it is
+ * rolled back. Committed changes are sent together, {@link #DELAY_MS} after the first
+ * one, to:
+ * <ul>
+ * <li>each changed provider uri, or the uri of its table when several of its uris changed</li>
+ * <li>{@link Changes#buildNodeUri(long, long)} for each changed node, or
+ * {@link Changes#buildFileUri(long)} when the whole file, or more than
+ * {@link #MAX_NODE_URIS} of its nodes, changed</li>
+ * <li>{@link Changes#CONTENT_URI} when the files that changed are not known</li>
+ * </ul>
+ * {@link #getGeneration()} counts the commits, for readers that keep what they read.
+ */
+public class OrgChangeNotifier {
+	static final long DELAY_MS = 100;
+	static final int MAX_NODE_URIS = 16;
+
+	private final Context context;
+	private final Handler handler = new Handler(Looper.getMainLooper());
+	// Changes of the transaction running on this thread
+	private final ThreadLocal<Transaction> transactions = new ThreadLocal<>();
+	// Committed changes not sent yet
+	private ChangeSet pending = new ChangeSet();
+	private boolean scheduled = false;
+	private long generation = 0;
+	private final Runnable sendPending = new Runnable() {
+		@Override
+		public void run() {
+			send();
+		}
+	};
+
+	OrgChangeNotifier(Context context) {
+		this.context = context;
+	}
+
+	/**
+	 * A row of the provider changed
+	 */
+	public synchronized void uriChanged(Uri uri) {
+		getChanges().uris.add(uri);
+	}
+
+	public synchronized void nodeChanged(long fileId, long nodeId) {
+		getChanges().addNode(fileId, nodeId);
+	}
+
+	public synchronized void fileChanged(long fileId) {
+		getChanges().addFile(fileId);
+	}
+
+	/**
+	 * Rows of unknown files changed
+	 */
+	public synchronized void allFilesChanged() {
+		getChanges().allFiles = true;
+	}
+
+	/**
+	 * @return a number that grows with each change committed. What was read at a
+	 * generation is still up to date as long as it has not changed.
+	 */
+	public synchronized long getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * @return where to record a change: the transaction of this thread, or the pending
+	 * changes when there is none
+	 */
+	private ChangeSet getChanges() {
+		Transaction transaction = transactions.get();
+		if (transaction != null)
+			return transaction.changes;
+
+		generation++;
+		schedule();
+		return pending;
+	}
+
+	private void schedule() {
+		if (!scheduled) {
+			scheduled = true;
+			handler.postDelayed(sendPending, DELAY_MS);
+		}
+	}
+
+	private void send() {
+		ChangeSet changes;
+		synchronized (this) {
+			changes = pending;
+			pending = new ChangeSet();
+			scheduled = false;
+		}
+
+		ContentResolver resolver = context.getContentResolver();
+		for (Uri uri : changes.getUris())
+			resolver.notifyChange(uri, null);
+	}
+
+	void beginTransaction() {
+		Transaction transaction = transactions.get();
+		if (transaction == null) {
+			transaction = new Transaction();
+			transactions.set(transaction);
+		}
+		transaction.depth++;
+		transaction.successful = false;
+	}
+
+	void setTransactionSuccessful() {
+		Transaction transaction = transactions.get();
+		if (transaction != null)
+			transaction.successful = true;
+	}
+
+	void endTransaction() {
+		Transaction transaction = transactions.get();
+		if (transaction == null)
+			return;
+
+		// As in SQLite, a nested transaction that fails rolls back the outer one
+		if (!transaction.successful)
+			transaction.failed = true;
+		transaction.successful = false;
+		if (--transaction.depth > 0)
+			return;
+
+		transactions.remove();
+		if (!transaction.failed && !transaction.changes.isEmpty()) {
+			synchronized (this) {
+				pending.addAll(transaction.changes);
+				generation++;
+				schedule();
+			}
+		}
+	}
+
+	private static class Transaction {
+		final ChangeSet changes = new ChangeSet();
+		int depth;
+		boolean successful;
+		boolean failed;
+	}
+
+	private static class ChangeSet {
+		final HashSet<Uri> uris = new HashSet<>();
+		// Changed nodes by file id, null when the whole file changed
+		final HashMap<Long, HashSet<Long>> files = new HashMap<>();
+		boolean allFiles;
+
+		void addNode(long fileId, long nodeId) {
+			HashSet<Long> nodes = files.get(fileId);
+			if (nodes == null) {
+				if (files.containsKey(fileId))
+					return;
+				nodes = new HashSet<>();
+				files.put(fileId, nodes);
+			}
+			nodes.add(nodeId);
+		}
+
+		void addFile(long fileId) {
+			files.put(fileId, null);
+		}
+
+		void addAll(ChangeSet changes) {
+			uris.addAll(changes.uris);
+			allFiles |= changes.allFiles;
+			for (Map.Entry<Long, HashSet<Long>> file : changes.files.entrySet()) {
+				if (file.getValue() == null) {
+					addFile(file.getKey());
+				} else {
+					for (long nodeId : file.getValue())
+						addNode(file.getKey(), nodeId);
+				}
+			}
+		}
+
+		boolean isEmpty() {
+			return uris.isEmpty() && files.isEmpty() && !allFiles;
+		}
+
+		ArrayList<Uri> getUris() {
+			HashMap<String, Uri> tables = new HashMap<>();
+			for (Uri uri : uris) {
+				String table = uri.getPathSegments().get(0);
+				if (tables.containsKey(table))
+					tables.put(table, Uri.parse("content://" + OrgContract.CONTENT_AUTHORITY + "/" + table));
+				else
+					tables.put(table, uri);
+			}
+			ArrayList<Uri> result = new ArrayList<>(tables.values());
+
+			if (allFiles) {
+				result.add(Changes.CONTENT_URI);
+				return result;
+			}
+			for (Map.Entry<Long, HashSet<Long>> file : files.entrySet()) {
+				HashSet<Long> nodes = file.getValue();
+				if (nodes == null || nodes.size() > MAX_NODE_URIS) {
+					result.add(Changes.buildFileUri(file.getKey()));
+				} else {
+					for (long nodeId : nodes)
+						result.add(Changes.buildNodeUri(file.getKey(), nodeId));
+				}
+			}
+			return result;
+		}
+	}
+}
@@ -2,6 +2,8 @@ package com.matburt.mobileorg.orgdata;
 
 import android.net.Uri;
 
+import java.util.List;
+
 public class OrgContract {
 	public static final String CONTENT_AUTHORITY = "com.matburt.mobileorg.orgdata.OrgProvider";
 	private static final Uri BASE_CONTENT_URI = Uri.parse("content://" + CONTENT_AUTHORITY);
@@ -11,7 +13,13 @@ public class OrgContract {
 	private static final String PATH_TAGS = OrgDatabase.Tables.TAGS;
 	private static final String PATH_PRIORITIES = OrgDatabase.Tables.PRIORITIES;
 	private static final String PATH_FILES = OrgDatabase.Tables.FILES;
+	private static final String PATH_AGENDA = OrgDatabase.Tables.AGENDA;
+	private static final String PATH_AGENDA_REPEATS = OrgDatabase.Tables.AGENDA_REPEATS;
 	private static final String PATH_SEARCH = "search";
+	private static final String PATH_FULLTEXT = "fulltext";
+	private static final String PATH_IDS = "ids";
+	private static final String PATH_CHANGES = "changes";
+	private static final String PARAMETER_IDS = "ids";
 	static public long TODO_ID = -2;
 	static public long AGENDA_ID = -3;
 	public static String NODE_ID = "node_id";
@@ -78,6 +86,22 @@ public class OrgContract {
 		String ID = "_id";
 		String NAME = "name";
 	}
+
+	interface AgendaColumns {
+		String DAY = "day";
+		String TIME = "time";
+		String TYPE = "type";
+		String NODE_ID = "node_id";
+	}
+
+	interface AgendaRepeatsColumns {
+		String NODE_ID = "node_id";
+		String TYPE = "type";
+		String TIME = "time";
+		String REPEATER = "repeater";
+		String WARNING = "warning";
+		String HABIT = "habit";
+	}
 	
 	public static class OrgData implements OrgDataColumns {
 		public static final Uri CONTENT_URI =
@@ -88,8 +112,13 @@ public class OrgContract {
 		public static final String DEFAULT_SORT = ID + " ASC";
 		public static final String NAME_SORT = NAME + " ASC";
 		public static final String POSITION_SORT = POSITION + " ASC";
+		/** Sort of {@link #buildPathUri(long)}, from the file node down to the node */
+		public static final String PATH_SORT = OrgDatabase.Tables.ORGDATA_TREE + ".depth DESC";
 		public static final String[] DEFAULT_COLUMNS = {ID, NAME, TODO, TAGS, TAGS_INHERITED,
 				PARENT_ID, PAYLOAD, LEVEL, PRIORITY, FILE_ID, POSITION, SCHEDULED, SCHEDULED_DATE_ONLY, DEADLINE, DEADLINE_DATE_ONLY};
+		/** {@link #DEFAULT_COLUMNS} without the payload, for lists and trees. {@link OrgNode} reads it on first use. */
+		public static final String[] LIGHT_COLUMNS = {ID, NAME, TODO, TAGS, TAGS_INHERITED,
+				PARENT_ID, LEVEL, PRIORITY, FILE_ID, POSITION, SCHEDULED, SCHEDULED_DATE_ONLY, DEADLINE, DEADLINE_DATE_ONLY};
 
 		public static String getId(Uri uri) {
 			return uri.getPathSegments().get(1);
@@ -110,6 +139,20 @@ public class OrgContract {
 		public static Uri buildChildrenUri(long node_id) {
 			return buildChildrenUri(Long.toString(node_id));
 		}
+
+		/**
+		 * @return the uri of the node and all its descendants, in one query
+		 */
+		public static Uri buildSubtreeUri(long node_id) {
+			return CONTENT_URI.buildUpon().appendPath(Long.toString(node_id)).appendPath("subtree").build();
+		}
+
+		/**
+		 * @return the uri of the node and all its ancestors, in one query
+		 */
+		public static Uri buildPathUri(long node_id) {
+			return CONTENT_URI.buildUpon().appendPath(Long.toString(node_id)).appendPath("path").build();
+		}
 	}
 	
 	public static class Timestamps implements TimestampsColumns {
@@ -126,6 +169,58 @@ public class OrgContract {
 		}
 	}
 	
+	/**
+	 * The agenda entries of each day: a node is listed on the day of its scheduled or
+	 * deadline timestamp. A node with both is listed on the two days, and on each day
+	 * in between with the type {@link OrgNodeTimeDate.TYPE#Timestamp} and no time.
+	 * The rows are written by {@link OrgDatabase} along with the orgdata row.
+	 */
+	public static class Agenda implements AgendaColumns {
+		public static final Uri CONTENT_URI =
+				BASE_CONTENT_URI.buildUpon().appendPath(PATH_AGENDA).build();
+		public static final long SECONDS_PER_DAY = 24 * 3600;
+		/** Entries of {@link #buildDaysUri(long, long)}, with the date only flags of their node */
+		public static final String[] DEFAULT_COLUMNS = {DAY, TIME, TYPE, NODE_ID,
+				OrgData.SCHEDULED_DATE_ONLY, OrgData.DEADLINE_DATE_ONLY};
+		public static final String DEFAULT_SORT = DAY + " ASC, " + TIME + " ASC";
+
+		/**
+		 * @return the day of an epoch time, in days since the epoch
+		 */
+		public static long getDay(long epochTime) {
+			return epochTime / SECONDS_PER_DAY;
+		}
+
+		/**
+		 * @return the uri of the entries from firstDay to lastDay included, in one indexed query
+		 */
+		public static Uri buildDaysUri(long firstDay, long lastDay) {
+			return CONTENT_URI.buildUpon().appendPath(Long.toString(firstDay))
+					.appendPath(Long.toString(lastDay)).build();
+		}
+
+		public static String getFirstDay(Uri uri) {
+			return uri.getPathSegments().get(1);
+		}
+
+		public static String getLastDay(Uri uri) {
+			return uri.getPathSegments().get(2);
+		}
+	}
+
+	/**
+	 * The scheduled and deadline timestamps with a repeater or a warning period, as written
+	 * in the payload. Their other entries are computed by {@link OrgRepeater} for the days
+	 * shown, the {@link Agenda} table only has the one on their own day.
+	 */
+	public static class AgendaRepeats implements AgendaRepeatsColumns {
+		/** All the rows, with the date only flags of their node */
+		public static final Uri CONTENT_URI =
+				BASE_CONTENT_URI.buildUpon().appendPath(PATH_AGENDA_REPEATS).build();
+		public static final String[] DEFAULT_COLUMNS = {TYPE, TIME, REPEATER, WARNING, HABIT, NODE_ID,
+				OrgData.SCHEDULED_DATE_ONLY, OrgData.DEADLINE_DATE_ONLY};
+	}
+
 	public static class Files implements FilesColumns {
 		public static final Uri CONTENT_URI =
 				BASE_CONTENT_URI.buildUpon().appendPath(PATH_FILES).build();
@@ -172,9 +267,98 @@ public class OrgContract {
 	public static class Search implements OrgDataColumns {
 		public static final Uri CONTENT_URI =
 				BASE_CONTENT_URI.buildUpon().appendPath(PATH_SEARCH).build();
+		public static final Uri FULLTEXT_URI =
+				BASE_CONTENT_URI.buildUpon().appendPath(PATH_FULLTEXT).build();
+
+		/** Heading with the matched words between {@link #MATCH_START} and {@link #MATCH_END} */
+		public static final String NAME_SNIPPET = "name_snippet";
+		/** Excerpt of the cleaned payload around the matched words, marked the same way */
+		public static final String SNIPPET = "snippet";
+		public static final char MATCH_START = '\u0001';
+		public static final char MATCH_END = '\u0002';
+
+		/**
+		 * @param query words typed by the user, each one also matches longer words
+		 * @return the uri of the nodes matching all the words, best matches first
+		 */
+		public static Uri buildFullTextUri(String query) {
+			return FULLTEXT_URI.buildUpon().appendPath(query).build();
+		}
+
+		/**
+		 * @param query words typed by the user
+		 * @param ids some of the ids returned by {@link #buildRankedIdsUri(String)}
+		 * @return the uri of these nodes with their snippets, in the order of the ids
+		 */
+		public static Uri buildFullTextUri(String query, long[] ids) {
+			StringBuilder list = new StringBuilder();
+			for (int i = 0; i < ids.length; i++)
+				list.append(i == 0 ? "" : ",").append(ids[i]);
+			return FULLTEXT_URI.buildUpon().appendPath(query)
+					.appendQueryParameter(PARAMETER_IDS, list.toString()).build();
+		}
+
+		/**
+		 * @param query words typed by the user
+		 * @return the uri of the ids of all the matching nodes, best first
+		 */
+		public static Uri buildRankedIdsUri(String query) {
+			return FULLTEXT_URI.buildUpon().appendPath(query).appendPath(PATH_IDS).build();
+		}
 
 		public static String getSearchTerm(Uri uri) {
-			return uri.getLastPathSegment();
+			return uri.getPathSegments().get(1);
+		}
+
+		/**
+		 * @return the ids given to {@link #buildFullTextUri(String, long[])}, null if none
+		 */
+		public static long[] getIds(Uri uri) {
+			String list = uri.getQueryParameter(PARAMETER_IDS);
+			if (list == null)
+				return null;
+			if (list.isEmpty())
+				return new long[0];
+
+			String[] split = list.split(",");
+			long[] ids = new long[split.length];
+			for (int i = 0; i < split.length; i++)
+				ids[i] = Long.parseLong(split[i]);
+			return ids;
+		}
+	}
+
+	/**
+	 * The uris {@link OrgChangeNotifier} notifies, nothing can be queried from them.
+	 * A node uri is below the uri of its file: an observer of a file, registered with
+	 * notifyForDescendants, hears of the changes of all its nodes.
+	 */
+	public static class Changes {
+		public static final Uri CONTENT_URI =
+				BASE_CONTENT_URI.buildUpon().appendPath(PATH_CHANGES).build();
+
+		public static Uri buildFileUri(long fileId) {
+			return CONTENT_URI.buildUpon().appendPath(Long.toString(fileId)).build();
+		}
+
+		public static Uri buildNodeUri(long fileId, long nodeId) {
+			return buildFileUri(fileId).buildUpon().appendPath(Long.toString(nodeId)).build();
+		}
+
+		/**
+		 * @return the file of a file or node uri, -1 for {@link #CONTENT_URI}: any file may have changed
+		 */
+		public static long getFileId(Uri uri) {
+			List<String> segments = uri.getPathSegments();
+			return segments.size() > 1 ? Long.parseLong(segments.get(1)) : -1;
+		}
+
+		/**
+		 * @return the node of a node uri, -1 for the other uris
+		 */
+		public static long getNodeId(Uri uri) {
+			List<String> segments = uri.getPathSegments();
+			return segments.size() > 2 ? Long.parseLong(segments.get(2)) : -1;
 		}
 	}
 }
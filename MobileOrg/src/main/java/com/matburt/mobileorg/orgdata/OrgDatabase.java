@@ -2,43 +2,224 @@ package com.matburt.mobileorg.orgdata;
 
 import android.content.ContentValues;
 import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.database.sqlite.SQLiteStatement;
 
+import com.matburt.mobileorg.orgdata.OrgContract.Agenda;
 import com.matburt.mobileorg.orgdata.OrgContract.OrgData;
+import com.matburt.mobileorg.orgdata.OrgContract.Todos;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class OrgDatabase extends SQLiteOpenHelper {
-	private static final String DATABASE_NAME = "MobileOrg.db";
-	private static final int DATABASE_VERSION = 5;
+	static final String DATABASE_NAME = "MobileOrg.db";
+	private static final int DATABASE_VERSION = 11;
+	// Rows per multi-row timestamps insert, 5 columns each: well below the 999 bind variables of SQLite
+	public static final int TIMESTAMPS_PER_INSERT = 64;
+	public static final int TIMESTAMP_COLUMNS = 5;
+	// Rows per multi-row orgdata_tree insert: ancestor, descendant, depth
+	public static final int TREE_ROWS_PER_INSERT = 128;
+	public static final int TREE_COLUMNS = 3;
 	private static OrgDatabase mInstance = null;
-	private SQLiteStatement orgdataInsertStatement;
-	private SQLiteStatement addPayloadStatement;
-	private SQLiteStatement addTimestampsStatement;
 
+	/**
+	 * One index per hot query of {@link OrgProvider}: node children, file removal and
+	 * resync, node timestamps and the agenda days. The timestamps and agenda indexes hold
+	 * every column these queries read, so the table itself is not visited.
+	 */
+	private static final String[] INDEXES = {
+			"CREATE INDEX IF NOT EXISTS orgdata_parent_position ON orgdata(parent_id, position)",
+			"CREATE INDEX IF NOT EXISTS orgdata_file ON orgdata(file_id)",
+			"CREATE INDEX IF NOT EXISTS timestamps_node ON timestamps(node_id, type, timestamp, all_day, file_id)",
+			"CREATE INDEX IF NOT EXISTS timestamps_file ON timestamps(file_id)",
+			"CREATE INDEX IF NOT EXISTS orgdata_tree_ancestor ON orgdata_tree(ancestor, descendant)",
+			"CREATE INDEX IF NOT EXISTS orgdata_tree_descendant ON orgdata_tree(descendant, depth, ancestor)",
+			"CREATE INDEX IF NOT EXISTS agenda_day ON agenda(day, time, type, node_id)",
+			"CREATE INDEX IF NOT EXISTS agenda_node ON agenda(node_id)",
+			"CREATE INDEX IF NOT EXISTS agenda_repeats_node ON agenda_repeats(node_id)"
+	};
+
+	/**
+	 * The queries run for every node or every file. Their plan must use the indexes above,
+	 * see {@link #getUnindexedQueries(SQLiteDatabase)}, checked by the instrumented tests.
+	 */
+	static final String[] HOT_QUERIES = {
+			"SELECT * FROM orgdata WHERE parent_id=0 ORDER BY position ASC",
+			"SELECT * FROM orgdata WHERE _id=0",
+			"SELECT _id, parent_id, position, name, payload FROM orgdata WHERE file_id=0",
+			"DELETE FROM orgdata WHERE file_id=0",
+			"SELECT node_id, file_id, type, timestamp, all_day FROM timestamps WHERE node_id=0",
+			"SELECT node_id, type, timestamp, all_day FROM timestamps WHERE file_id=0",
+			"DELETE FROM timestamps WHERE node_id=0",
+			"DELETE FROM timestamps WHERE file_id=0",
+			"SELECT orgdata._id FROM orgdata_tree JOIN orgdata ON orgdata._id=orgdata_tree.descendant WHERE orgdata_tree.ancestor=0",
+			"SELECT orgdata._id FROM orgdata_tree JOIN orgdata ON orgdata._id=orgdata_tree.ancestor WHERE orgdata_tree.descendant=0 ORDER BY orgdata_tree.depth DESC",
+			"DELETE FROM orgdata_tree WHERE descendant=0",
+			"DELETE FROM orgdata_tree WHERE ancestor=0",
+			"SELECT day, time, type, node_id, scheduled_date_only, deadline_date_only FROM agenda "
+					+ "JOIN orgdata ON orgdata._id=agenda.node_id "
+					+ "WHERE agenda.day BETWEEN 0 AND 0 ORDER BY day ASC, time ASC",
+			"SELECT MIN(day) FROM agenda WHERE day>=0",
+			"SELECT MAX(day) FROM agenda WHERE day<=0",
+			"DELETE FROM agenda WHERE node_id=0",
+			"DELETE FROM agenda_repeats WHERE node_id=0"
+	};
+	private static final String INSERT_NODE = "INSERT INTO " + Tables.ORGDATA + " ("
+			+ OrgData.NAME +           ", "
+			+ OrgData.TODO +           ", "
+			+ OrgData.PRIORITY +       ", "
+			+ OrgData.PARENT_ID +      ", "
+			+ OrgData.FILE_ID +        ", "
+			+ OrgData.TAGS +           ", "
+			+ OrgData.TAGS_INHERITED + ", "
+			+ OrgData.LEVEL +          ", "
+			+ OrgData.POSITION +       ", "
+			+ OrgData.PAYLOAD +        ", "
+			+ OrgData.SCHEDULED +      ", "
+			+ OrgData.SCHEDULED_DATE_ONLY + ", "
+			+ OrgData.DEADLINE +       ", "
+			+ OrgData.DEADLINE_DATE_ONLY + ") "
+			+ "VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?)";
+	private static final String UPDATE_PAYLOAD = "UPDATE " + Tables.ORGDATA + " SET payload=? WHERE _id=?";
+	private static final String INSERT_TIMESTAMP = "INSERT INTO " + Tables.TIMESTAMPS
+			+ " (timestamp, file_id, node_id, type, all_day) VALUES (?,?,?,?,?)";
+	private static final String INSERT_TIMESTAMPS = getMultiRowInsert(INSERT_TIMESTAMP,
+			",(?,?,?,?,?)", TIMESTAMPS_PER_INSERT);
+	private static final String UPDATE_NODE = "UPDATE " + Tables.ORGDATA + " SET "
+			+ OrgData.TODO +           "=?, "
+			+ OrgData.PRIORITY +       "=?, "
+			+ OrgData.TAGS +           "=?, "
+			+ OrgData.TAGS_INHERITED + "=?, "
+			+ OrgData.LEVEL +          "=?, "
+			+ OrgData.PAYLOAD +        "=? "
+			+ "WHERE _id=?";
+	private static final String UPDATE_NODE_TIMESTAMPS = "UPDATE " + Tables.ORGDATA + " SET "
+			+ OrgData.SCHEDULED +           "=?, "
+			+ OrgData.SCHEDULED_DATE_ONLY + "=?, "
+			+ OrgData.DEADLINE +            "=?, "
+			+ OrgData.DEADLINE_DATE_ONLY +  "=? "
+			+ "WHERE _id=?";
+	private static final String DELETE_NODE = "DELETE FROM " + Tables.ORGDATA + " WHERE _id=?";
+	private static final String DELETE_TIMESTAMPS = "DELETE FROM " + Tables.TIMESTAMPS + " WHERE node_id=?";
+	private static final String INSERT_FTS = "INSERT INTO " + Tables.ORGDATA_FTS
+			+ " (docid, name, tags, payload) VALUES (?,?,?,?)";
+	private static final String DELETE_FTS = "DELETE FROM " + Tables.ORGDATA_FTS + " WHERE docid=?";
+	private static final String INSERT_TREE_ROW = "INSERT INTO " + Tables.ORGDATA_TREE
+			+ " (ancestor, descendant, depth) VALUES (?,?,?)";
+	private static final String INSERT_TREE_ROWS = getMultiRowInsert(INSERT_TREE_ROW,
+			",(?,?,?)", TREE_ROWS_PER_INSERT);
+	private static final String INSERT_ANCESTORS = "INSERT INTO " + Tables.ORGDATA_TREE
+			+ " (ancestor, descendant, depth) "
+			+ "SELECT ancestor, ?, depth + 1 FROM " + Tables.ORGDATA_TREE + " WHERE descendant=? "
+			+ "UNION ALL SELECT ?, ?, 0";
+	private static final String SELECT_PARENT_ID = "SELECT IFNULL((SELECT " + OrgData.PARENT_ID
+			+ " FROM " + Tables.ORGDATA + " WHERE _id=?), -1)";
+	private static final String SELECT_IS_DESCENDANT = "SELECT COUNT(*) FROM " + Tables.ORGDATA_TREE
+			+ " WHERE ancestor=? AND descendant=?";
+	// The rows from the ancestors outside of the subtree to the nodes of the subtree
+	private static final String DELETE_SUBTREE_ANCESTORS = "DELETE FROM " + Tables.ORGDATA_TREE
+			+ " WHERE descendant IN (SELECT descendant FROM " + Tables.ORGDATA_TREE + " WHERE ancestor=?)"
+			+ " AND ancestor NOT IN (SELECT descendant FROM " + Tables.ORGDATA_TREE + " WHERE ancestor=?)";
+	private static final String INSERT_SUBTREE_ANCESTORS = "INSERT INTO " + Tables.ORGDATA_TREE
+			+ " (ancestor, descendant, depth) "
+			+ "SELECT p.ancestor, s.descendant, p.depth + s.depth + 1 FROM "
+			+ Tables.ORGDATA_TREE + " p, " + Tables.ORGDATA_TREE + " s "
+			+ "WHERE p.descendant=? AND s.ancestor=?";
+	private static final String INSERT_AGENDA = "INSERT INTO " + Tables.AGENDA
+			+ " (day, time, type, node_id) VALUES (?,?,?,?)";
+	private static final String DELETE_AGENDA = "DELETE FROM " + Tables.AGENDA + " WHERE node_id=?";
+	private static final String INSERT_AGENDA_REPEAT = "INSERT INTO " + Tables.AGENDA_REPEATS
+			+ " (node_id, type, time, repeater, warning, habit) VALUES (?,?,?,?,?,?)";
+	private static final String DELETE_AGENDA_REPEATS = "DELETE FROM " + Tables.AGENDA_REPEATS + " WHERE node_id=?";
+	private static final String SELECT_FILE_ID = "SELECT IFNULL((SELECT " + OrgData.FILE_ID
+			+ " FROM " + Tables.ORGDATA + " WHERE _id=?), -1)";
+
+	// The statements of every thread, closed with the database
+	private final ArrayList<HashMap<String, SQLiteStatement>> allStatements = new ArrayList<>();
+	// A statement keeps its bound values until it runs: each thread compiles its own
+	private final ThreadLocal<HashMap<String, SQLiteStatement>> statements =
+			new ThreadLocal<HashMap<String, SQLiteStatement>>() {
+				@Override
+				protected HashMap<String, SQLiteStatement> initialValue() {
+					HashMap<String, SQLiteStatement> threadStatements = new HashMap<>();
+					synchronized (allStatements) {
+						allStatements.add(threadStatements);
+					}
+					return threadStatements;
+				}
+			};
+	private final AtomicLong statementCount = new AtomicLong();
+	private long previousSynchronous = -1;
+	private final OrgChangeNotifier changeNotifier;
+
+	/**
+	 * Readers don't wait for the writer and the writer doesn't wait for readers: with a
+	 * write-ahead log, the UI queries run on their own connections and see the last
+	 * committed state while a synchronization writes.
+	 */
 	private OrgDatabase(Context context) {
 		super(context, DATABASE_NAME, null, DATABASE_VERSION);
+		setWriteAheadLoggingEnabled(true);
+		changeNotifier = new OrgChangeNotifier(context);
+	}
 
-		orgdataInsertStatement = getWritableDatabase()
-				.compileStatement("INSERT INTO " + Tables.ORGDATA+ " ("
-                        + OrgData.NAME +           ", "
-                        + OrgData.TODO +           ", "
-                        + OrgData.PRIORITY +       ", "
-                        + OrgData.PARENT_ID +      ", "
-                        + OrgData.FILE_ID +        ", "
-                        + OrgData.TAGS +           ", "
-                        + OrgData.TAGS_INHERITED + ", "
-                        + OrgData.LEVEL +          ", "
-                        + OrgData.POSITION +       ") "
-                        + "VALUES (?,?,?,?,?,?,?,?,?)");
+	private static String getMultiRowInsert(String insert, String row, int rows) {
+		StringBuilder result = new StringBuilder(insert);
+		for (int i = 1; i < rows; i++)
+			result.append(row);
+		return result.toString();
+	}
 
-		addPayloadStatement = getWritableDatabase()
-				.compileStatement("UPDATE " + Tables.ORGDATA + " SET payload=? WHERE _id=?");
-		addTimestampsStatement = getWritableDatabase()
-				.compileStatement("INSERT INTO " + Tables.TIMESTAMPS + " (timestamp, file_id, node_id, type, all_day) VALUES (?,?,?,?,?) ");
+	/**
+	 * @return the statement of the current thread for this SQL, compiled on first use
+	 */
+	private SQLiteStatement getStatement(String sql) {
+		HashMap<String, SQLiteStatement> threadStatements = statements.get();
+		SQLiteStatement statement = threadStatements.get(sql);
+		if (statement == null) {
+			statement = getWritableDatabase().compileStatement(sql);
+			threadStatements.put(sql, statement);
+		}
+		return statement;
+	}
+
+	/**
+	 * Close the statements compiled by the current thread, once it is done writing.
+	 * They are compiled again if it writes later on.
+	 */
+	public void releaseStatements() {
+		HashMap<String, SQLiteStatement> threadStatements = statements.get();
+		synchronized (allStatements) {
+			allStatements.remove(threadStatements);
+		}
+		statements.remove();
+		closeStatements(threadStatements);
+	}
+
+	private static void closeStatements(HashMap<String, SQLiteStatement> threadStatements) {
+		for (SQLiteStatement statement : threadStatements.values())
+			statement.close();
+		threadStatements.clear();
+	}
+
+	/**
+	 * Close the statements of all the threads with the database
+	 */
+	@Override
+	public synchronized void close() {
+		synchronized (allStatements) {
+			for (HashMap<String, SQLiteStatement> threadStatements : allStatements)
+				closeStatements(threadStatements);
+			allStatements.clear();
+		}
+		super.close();
 	}
 
 	/**
@@ -56,8 +237,36 @@ public class OrgDatabase extends SQLiteOpenHelper {
 		return mInstance;
 	}
 
+	/**
+	 * @return where the writers report their changes. Those made in a transaction are
+	 * sent once it is committed.
+	 */
+	public OrgChangeNotifier getChangeNotifier() {
+		return changeNotifier;
+	}
+
 	@Override
 	public void onCreate(SQLiteDatabase db) {
+		createTables(db);
+		createIndexes(db);
+		createFullTextIndex(db);
+
+		ContentValues values = new ContentValues();
+		values.put("_id", "0");
+		values.put("todogroup", "0");
+		values.put("name", "TODO");
+		values.put("isdone","0");
+		db.insert("todos", null, values);
+
+		values.put("_id", "1");
+		values.put("todogroup", "0");
+		values.put("name", "DONE");
+		values.put("isdone","1");
+		db.insert("todos", null, values);
+
+	}
+
+	private static void createTables(SQLiteDatabase db) {
 		db.execSQL("CREATE TABLE IF NOT EXISTS files ("
 				+ "_id integer primary key autoincrement,"
 				+ "node_id integer,"
@@ -99,83 +308,724 @@ public class OrgDatabase extends SQLiteOpenHelper {
 				+ "type integer,"
 				+ "node_id integer,"
 				+ "all_day integer)");
+		// Closure of the parent_id relation: every ancestor of every node, with the number
+		// of levels in between. A node is its own ancestor at depth 0.
+		db.execSQL("CREATE TABLE IF NOT EXISTS orgdata_tree ("
+				+ "ancestor integer,"
+				+ "descendant integer,"
+				+ "depth integer)");
+		db.execSQL("CREATE TRIGGER IF NOT EXISTS orgdata_tree_delete AFTER DELETE ON orgdata "
+				+ "BEGIN DELETE FROM orgdata_tree WHERE descendant=old._id OR ancestor=old._id; END");
+		// See OrgContract.Agenda. Deleting a node is enough to remove its rows.
+		db.execSQL("CREATE TABLE IF NOT EXISTS agenda ("
+				+ "day integer,"
+				+ "time integer,"
+				+ "type integer,"
+				+ "node_id integer)");
+		db.execSQL("CREATE TRIGGER IF NOT EXISTS orgdata_agenda_delete AFTER DELETE ON orgdata "
+				+ "BEGIN DELETE FROM agenda WHERE node_id=old._id; END");
+		// See OrgContract.AgendaRepeats
+		db.execSQL("CREATE TABLE IF NOT EXISTS agenda_repeats ("
+				+ "node_id integer,"
+				+ "type integer,"
+				+ "time integer,"
+				+ "repeater text,"
+				+ "warning text,"
+				+ "habit integer)");
+		db.execSQL("CREATE TRIGGER IF NOT EXISTS orgdata_agenda_repeats_delete AFTER DELETE ON orgdata "
+				+ "BEGIN DELETE FROM agenda_repeats WHERE node_id=old._id; END");
+	}
 
-		ContentValues values = new ContentValues();
-		values.put("_id", "0");
-		values.put("todogroup", "0");
-		values.put("name", "TODO");
-		values.put("isdone","0");
-		db.insert("todos", null, values);
+	private static void createIndexes(SQLiteDatabase db) {
+		for (String index : INDEXES)
+			db.execSQL(index);
+	}
 
-		values.put("_id", "1");
-		values.put("todogroup", "0");
-		values.put("name", "DONE");
-		values.put("isdone","1");
-		db.insert("todos", null, values);
+	/**
+	 * Full text index of the heading, tags and cleaned payload of every node, its docid is
+	 * the node id. The cleaned payload is computed in Java, so the rows are written by
+	 * {@link OrgFileWriter} and {@link OrgNode#write(Context)}. Deleting a node is enough
+	 * to remove its row.
+	 */
+	private static void createFullTextIndex(SQLiteDatabase db) {
+		db.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS " + Tables.ORGDATA_FTS
+				+ " USING fts4(name, tags, payload)");
+		db.execSQL("CREATE TRIGGER IF NOT EXISTS orgdata_fts_delete AFTER DELETE ON orgdata "
+				+ "BEGIN DELETE FROM " + Tables.ORGDATA_FTS + " WHERE docid=old._id; END");
+	}
 
+	/**
+	 * Index the nodes already in the database
+	 */
+	private static void fillFullTextIndex(SQLiteDatabase db) {
+		SQLiteStatement insert = db.compileStatement("INSERT INTO " + Tables.ORGDATA_FTS
+				+ " (docid, name, tags, payload) VALUES (?,?,?,?)");
+		try {
+			Cursor cursor = db.rawQuery("SELECT _id, name, tags, payload FROM orgdata", null);
+			if (cursor == null)
+				return;
+			while (cursor.moveToNext()) {
+				insert.bindLong(1, cursor.getLong(0));
+				bindText(insert, 2, cursor.getString(1));
+				bindText(insert, 3, cursor.getString(2));
+				bindText(insert, 4, new OrgNodePayload(cursor.getString(3)).getCleanedPayload());
+				insert.executeInsert();
+			}
+			cursor.close();
+		} finally {
+			insert.close();
+		}
 	}
 
+	/**
+	 * Fill orgdata_tree from the parent_id of the nodes already in the database, one
+	 * level of ancestors at a time
+	 */
+	private static void fillTree(SQLiteDatabase db) {
+		db.execSQL("INSERT INTO orgdata_tree (ancestor, descendant, depth) SELECT _id, _id, 0 FROM orgdata");
+		for (int depth = 0; ; depth++) {
+			db.execSQL("INSERT INTO orgdata_tree (ancestor, descendant, depth) "
+					+ "SELECT orgdata.parent_id, orgdata_tree.descendant, orgdata_tree.depth + 1 "
+					+ "FROM orgdata_tree JOIN orgdata ON orgdata._id=orgdata_tree.ancestor "
+					+ "WHERE orgdata_tree.depth=" + depth + " AND orgdata.parent_id>=0");
+			if (DatabaseUtils.longForQuery(db, "SELECT changes()", null) == 0)
+				break;
+		}
+	}
+
+	/**
+	 * Copy the first scheduled and deadline timestamps of each node to its orgdata row
+	 */
+	private static void fillTimestampColumns(SQLiteDatabase db) {
+		int scheduled = OrgNodeTimeDate.TYPE.Scheduled.ordinal();
+		int deadline = OrgNodeTimeDate.TYPE.Deadline.ordinal();
+		String first = " FROM timestamps WHERE node_id=orgdata._id AND type=%d ORDER BY timestamp LIMIT 1), %d)";
+		db.execSQL("UPDATE orgdata SET "
+				+ "scheduled=coalesce((SELECT timestamp" + String.format(first, scheduled, -1) + ", "
+				+ "scheduled_date_only=coalesce((SELECT all_day" + String.format(first, scheduled, 0) + ", "
+				+ "deadline=coalesce((SELECT timestamp" + String.format(first, deadline, -1) + ", "
+				+ "deadline_date_only=coalesce((SELECT all_day" + String.format(first, deadline, 0) + " "
+				+ "WHERE _id IN (SELECT node_id FROM timestamps WHERE type IN (" + scheduled + "," + deadline + "))");
+	}
+
+	/**
+	 * Fill the agenda from the scheduled and deadline columns of the nodes already in the database
+	 */
+	private static void fillAgenda(SQLiteDatabase db) {
+		SQLiteStatement insert = db.compileStatement(INSERT_AGENDA);
+		try {
+			Cursor cursor = db.rawQuery("SELECT _id, scheduled, deadline FROM orgdata "
+					+ "WHERE scheduled>=0 OR deadline>=0", null);
+			if (cursor == null)
+				return;
+			while (cursor.moveToNext())
+				insertAgendaRows(insert, cursor.getLong(0), cursor.getLong(1), cursor.getLong(2));
+			cursor.close();
+		} finally {
+			insert.close();
+		}
+	}
+
+	/**
+	 * Write the agenda rows of a node, see {@link OrgContract.Agenda}
+	 * @param scheduled epoch time of the scheduled timestamp, -1 if there is none
+	 * @param deadline epoch time of the deadline, -1 if there is none
+	 * @return the number of rows inserted
+	 */
+	private static int insertAgendaRows(SQLiteStatement insert, long nodeId, long scheduled, long deadline) {
+		if (scheduled < 0 && deadline < 0)
+			return 0;
+		if (scheduled < 0 || deadline < 0) {
+			long time = scheduled < 0 ? deadline : scheduled;
+			insertAgendaRow(insert, Agenda.getDay(time), time,
+					scheduled < 0 ? OrgNodeTimeDate.TYPE.Deadline : OrgNodeTimeDate.TYPE.Scheduled, nodeId);
+			return 1;
+		}
+
+		boolean scheduledFirst = scheduled < deadline;
+		long firstTime = scheduledFirst ? scheduled : deadline;
+		long lastTime = scheduledFirst ? deadline : scheduled;
+		long firstDay = Agenda.getDay(firstTime);
+		long lastDay = Agenda.getDay(lastTime);
+		insertAgendaRow(insert, firstDay, firstTime,
+				scheduledFirst ? OrgNodeTimeDate.TYPE.Scheduled : OrgNodeTimeDate.TYPE.Deadline, nodeId);
+		for (long day = firstDay + 1; day < lastDay; day++)
+			insertAgendaRow(insert, day, -1, OrgNodeTimeDate.TYPE.Timestamp, nodeId);
+		insertAgendaRow(insert, lastDay, lastTime,
+				scheduledFirst ? OrgNodeTimeDate.TYPE.Deadline : OrgNodeTimeDate.TYPE.Scheduled, nodeId);
+		return (int) Math.max(2, lastDay - firstDay + 1);
+	}
+
+	/**
+	 * Fill agenda_repeats from the payloads of the nodes already in the database
+	 */
+	private static void fillAgendaRepeats(SQLiteDatabase db) {
+		SQLiteStatement insert = db.compileStatement(INSERT_AGENDA_REPEAT);
+		try {
+			Cursor cursor = db.rawQuery("SELECT _id, scheduled, deadline, payload FROM orgdata "
+					+ "WHERE scheduled>=0 OR deadline>=0", null);
+			if (cursor == null)
+				return;
+			while (cursor.moveToNext()) {
+				String payload = cursor.getString(3);
+				insertAgendaRepeats(insert, cursor.getLong(0), payload,
+						parseTimestamp(OrgNodeTimeDate.TYPE.Scheduled, cursor.getLong(1), payload),
+						parseTimestamp(OrgNodeTimeDate.TYPE.Deadline, cursor.getLong(2), payload));
+			}
+			cursor.close();
+		} finally {
+			insert.close();
+		}
+	}
+
+	/**
+	 * Write the agenda_repeats rows of a node, see {@link OrgContract.AgendaRepeats}
+	 * @param payload the payload of the node, for its STYLE property
+	 * @param scheduled can be null
+	 * @param deadline can be null
+	 * @return the number of rows inserted
+	 */
+	private static int insertAgendaRepeats(SQLiteStatement insert, long nodeId, String payload,
+										   OrgNodeTimeDate scheduled, OrgNodeTimeDate deadline) {
+		int count = 0;
+		for (OrgNodeTimeDate timeDate : new OrgNodeTimeDate[]{scheduled, deadline}) {
+			if (timeDate == null || (timeDate.repeater.isEmpty() && timeDate.warning.isEmpty()))
+				continue;
+			long epochTime = timeDate.getEpochTime();
+			if (epochTime < 0)
+				continue;
+
+			insert.bindLong(1, nodeId);
+			insert.bindLong(2, timeDate.type.ordinal());
+			insert.bindLong(3, epochTime);
+			insert.bindString(4, timeDate.repeater);
+			insert.bindString(5, timeDate.warning);
+			insert.bindLong(6, isHabit(payload) ? 1 : 0);
+			insert.executeInsert();
+			count++;
+		}
+		return count;
+	}
+
+	private static boolean isHabit(String payload) {
+		return payload != null && new OrgNodePayload(payload).getProperty("STYLE").equals("habit");
+	}
+
+	/**
+	 * @return the timestamp of this type in the payload, with its repeater and warning
+	 * period, null if the node has none
+	 * @param epochTime the scheduled or deadline column of the node
+	 */
+	private static OrgNodeTimeDate parseTimestamp(OrgNodeTimeDate.TYPE type, long epochTime, String payload) {
+		if (epochTime < 0 || payload == null)
+			return null;
+		return new OrgNodeTimeDate(type, payload);
+	}
+
+	private static void insertAgendaRow(SQLiteStatement insert, long day, long time,
+										OrgNodeTimeDate.TYPE type, long nodeId) {
+		insert.bindLong(1, day);
+		insert.bindLong(2, time);
+		insert.bindLong(3, type.ordinal());
+		insert.bindLong(4, nodeId);
+		insert.executeInsert();
+	}
+
+	/**
+	 * Bind the epoch time and the all day flag of a timestamp, -1 and 0 if there is none
+	 */
+	private static void bindTimestamp(SQLiteStatement statement, int index, OrgNodeTimeDate timeDate) {
+		long epochTime = timeDate == null ? -1 : timeDate.getEpochTime();
+		statement.bindLong(index, epochTime);
+		statement.bindLong(index + 1, epochTime < 0 ? 0 : timeDate.isAllDay());
+	}
+
+	private static long getEpochTime(OrgNodeTimeDate timeDate) {
+		return timeDate == null ? -1 : timeDate.getEpochTime();
+	}
+
+	private static void bindText(SQLiteStatement statement, int index, String value) {
+		if (value == null)
+			statement.bindNull(index);
+		else
+			statement.bindString(index, value);
+	}
+
+	/**
+	 * Each step upgrades the schema from one version to the next, the following steps
+	 * then run in turn. Only databases older than version 4 are rebuilt from scratch,
+	 * the others keep their content.
+	 */
 	@Override
 	public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-		switch (newVersion) {
-		case 4:
+		if (oldVersion < 4) {
 			db.execSQL("DROP TABLE IF EXISTS priorities");
 			db.execSQL("DROP TABLE IF EXISTS files");
 			db.execSQL("DROP TABLE IF EXISTS todos");
 			db.execSQL("DROP TABLE IF EXISTS orgdata");
-			break;
+			db.execSQL("DROP TABLE IF EXISTS timestamps");
+			db.execSQL("DROP TABLE IF EXISTS " + Tables.ORGDATA_FTS);
+			db.execSQL("DROP TABLE IF EXISTS " + Tables.ORGDATA_TREE);
+			onCreate(db);
+			return;
+		}
 
-		case 5:
+		if (oldVersion < 5)
 			db.execSQL("alter table orgdata add tags_inherited text");
-			break;
+		if (oldVersion < 6) {
+			createTables(db);
+			createIndexes(db);
+		}
+		if (oldVersion < 7) {
+			createFullTextIndex(db);
+			fillFullTextIndex(db);
+		}
+		if (oldVersion < 8) {
+			createTables(db);
+			createIndexes(db);
+			fillTree(db);
+		}
+		if (oldVersion < 9)
+			fillTimestampColumns(db);
+		if (oldVersion < 10) {
+			// The agenda used to read all the timestamps in order
+			db.execSQL("DROP INDEX IF EXISTS timestamps_timestamp");
+			createTables(db);
+			createIndexes(db);
+			fillAgenda(db);
+		}
+		if (oldVersion < 11) {
+			createTables(db);
+			createIndexes(db);
+			fillAgendaRepeats(db);
 		}
-		onCreate(db);
 	}
 
-	public long fastInsertNode(OrgNode node) {
+	/**
+	 * @return the {@link #HOT_QUERIES} whose plan scans a whole table or sorts its result
+	 * in a temporary b-tree, with the offending step of the plan
+	 */
+	public static ArrayList<String> getUnindexedQueries(SQLiteDatabase db) {
+		ArrayList<String> result = new ArrayList<>();
+		for (String query : HOT_QUERIES) {
+			Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + query, null);
+			if (cursor == null)
+				continue;
+			int detail = cursor.getColumnIndex("detail");
+			while (detail >= 0 && cursor.moveToNext()) {
+				String step = cursor.getString(detail);
+				if (isFullScan(step))
+					result.add(query + " -> " + step);
+			}
+			cursor.close();
+		}
+		return result;
+	}
+
+	/**
+	 * A SCAN step is fine when it walks an index, the rows then come in the order of the index
+	 */
+	static boolean isFullScan(String step) {
+		if (step == null)
+			return false;
+		return (step.startsWith("SCAN") && !step.contains(" INDEX "))
+				|| step.contains("TEMP B-TREE");
+	}
+
+	/**
+	 * Insert a node with its payload, in one statement
+	 * @param node
+	 * @param parentId
+	 * @param fileId
+	 * @param payload
+	 * @param scheduled the scheduled timestamp of the node, can be null
+	 * @param deadline the deadline of the node, can be null
+	 * @return the id of the new row
+	 */
+	public long fastInsertNode(OrgHeading node, long parentId, long fileId, final String payload,
+							   OrgNodeTimeDate scheduled, OrgNodeTimeDate deadline) {
+      SQLiteStatement orgdataInsertStatement = getStatement(INSERT_NODE);
       orgdataInsertStatement.bindString(1, node.name);
       orgdataInsertStatement.bindString(2, node.todo);
       orgdataInsertStatement.bindString(3, node.priority);
-      orgdataInsertStatement.bindLong(4, node.parentId);
-      orgdataInsertStatement.bindLong(5, node.fileId);
+      orgdataInsertStatement.bindLong(4, parentId);
+      orgdataInsertStatement.bindLong(5, fileId);
       orgdataInsertStatement.bindString(6, node.tags);
       orgdataInsertStatement.bindString(7, node.tags_inherited);
       orgdataInsertStatement.bindLong(8, node.level);
       orgdataInsertStatement.bindLong(9, node.position);
+      orgdataInsertStatement.bindString(10, payload);
+      bindTimestamp(orgdataInsertStatement, 11, scheduled);
+      bindTimestamp(orgdataInsertStatement, 13, deadline);
 
-      return orgdataInsertStatement.executeInsert();
+      statementCount.incrementAndGet();
+      long id = orgdataInsertStatement.executeInsert();
+      statementCount.addAndGet(insertAgendaRows(getStatement(INSERT_AGENDA), id,
+              getEpochTime(scheduled), getEpochTime(deadline)));
+      statementCount.addAndGet(insertAgendaRepeats(getStatement(INSERT_AGENDA_REPEAT), id, payload,
+              scheduled, deadline));
+      return id;
 	}
 
-	public void fastInsertTimestamp(Long id, Long fileId, final HashMap<OrgNodeTimeDate.TYPE, OrgNodeTimeDate> timestamps){
-//		Log.v("time","db time : "+timestamps.get(OrgNodeTimeDate.TYPE.Scheduled));
-		for(Map.Entry<OrgNodeTimeDate.TYPE, OrgNodeTimeDate> entry: timestamps.entrySet()){
-			OrgNodeTimeDate timeDate = entry.getValue();
+	public void fastInsertTimestamps(long id, long fileId, final List<OrgNodeTimeDate> timestamps){
+		SQLiteStatement addTimestampsStatement = getStatement(INSERT_TIMESTAMP);
+		for(OrgNodeTimeDate timeDate: timestamps){
 			if(timeDate.getEpochTime() < 0) continue;
 
 			addTimestampsStatement.bindLong(1, timeDate.getEpochTime());
 			addTimestampsStatement.bindLong(2, fileId);
 			addTimestampsStatement.bindLong(3, id);
-			addTimestampsStatement.bindLong(4, entry.getKey().ordinal());
+			addTimestampsStatement.bindLong(4, timeDate.type.ordinal());
 			addTimestampsStatement.bindLong(5, timeDate.isAllDay());
 			addTimestampsStatement.executeInsert();
+			statementCount.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Insert timestamps rows, {@link #TIMESTAMPS_PER_INSERT} rows per statement
+	 * @param rows the rows one after the other, {@link #TIMESTAMP_COLUMNS} values each:
+	 *             timestamp, file_id, node_id, type, all_day
+	 * @param count the number of rows
+	 */
+	public void fastInsertTimestampRows(final long[] rows, int count) {
+		SQLiteStatement addTimestampsBatchStatement = getStatement(INSERT_TIMESTAMPS);
+		SQLiteStatement addTimestampsStatement = getStatement(INSERT_TIMESTAMP);
+		int row = 0;
+		for (; row + TIMESTAMPS_PER_INSERT <= count; row += TIMESTAMPS_PER_INSERT) {
+			int offset = row * TIMESTAMP_COLUMNS;
+			for (int i = 0; i < TIMESTAMPS_PER_INSERT * TIMESTAMP_COLUMNS; i++)
+				addTimestampsBatchStatement.bindLong(i + 1, rows[offset + i]);
+			addTimestampsBatchStatement.executeInsert();
+			statementCount.incrementAndGet();
+		}
+
+		for (; row < count; row++) {
+			int offset = row * TIMESTAMP_COLUMNS;
+			for (int i = 0; i < TIMESTAMP_COLUMNS; i++)
+				addTimestampsStatement.bindLong(i + 1, rows[offset + i]);
+			addTimestampsStatement.executeInsert();
+			statementCount.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Insert orgdata_tree rows, {@link #TREE_ROWS_PER_INSERT} rows per statement
+	 * @param rows the rows one after the other, {@link #TREE_COLUMNS} values each:
+	 *             ancestor, descendant, depth
+	 * @param count the number of rows
+	 */
+	public void fastInsertTreeRows(final long[] rows, int count) {
+		SQLiteStatement addTreeRowsBatchStatement = getStatement(INSERT_TREE_ROWS);
+		SQLiteStatement addTreeRowStatement = getStatement(INSERT_TREE_ROW);
+		int row = 0;
+		for (; row + TREE_ROWS_PER_INSERT <= count; row += TREE_ROWS_PER_INSERT) {
+			int offset = row * TREE_COLUMNS;
+			for (int i = 0; i < TREE_ROWS_PER_INSERT * TREE_COLUMNS; i++)
+				addTreeRowsBatchStatement.bindLong(i + 1, rows[offset + i]);
+			addTreeRowsBatchStatement.executeInsert();
+			statementCount.incrementAndGet();
+		}
+
+		for (; row < count; row++) {
+			int offset = row * TREE_COLUMNS;
+			for (int i = 0; i < TREE_COLUMNS; i++)
+				addTreeRowStatement.bindLong(i + 1, rows[offset + i]);
+			addTreeRowStatement.executeInsert();
+			statementCount.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Add a new node to orgdata_tree, below the ancestors of its parent
+	 * @param id
+	 * @param parentId -1 for a file node
+	 */
+	public void fastInsertAncestors(long id, long parentId) {
+		SQLiteStatement addAncestorsStatement = getStatement(INSERT_ANCESTORS);
+		addAncestorsStatement.bindLong(1, id);
+		addAncestorsStatement.bindLong(2, parentId);
+		addAncestorsStatement.bindLong(3, id);
+		addAncestorsStatement.bindLong(4, id);
+		addAncestorsStatement.executeInsert();
+		statementCount.incrementAndGet();
+	}
+
+	/**
+	 * Move a node and its descendants below a new parent in orgdata_tree. Must be
+	 * called before the parent_id column of the node is written, in a transaction.
+	 * @param id
+	 * @param parentId -1 for a file node
+	 * @throws IllegalArgumentException if the new parent is the node or one of its descendants
+	 */
+	public void fastMoveNode(long id, long parentId) {
+		SQLiteStatement parentIdStatement = getStatement(SELECT_PARENT_ID);
+		parentIdStatement.bindLong(1, id);
+		long previousParentId = parentIdStatement.simpleQueryForLong();
+		statementCount.incrementAndGet();
+		if (previousParentId == parentId)
+			return;
+
+		SQLiteStatement isDescendantStatement = getStatement(SELECT_IS_DESCENDANT);
+		isDescendantStatement.bindLong(1, id);
+		isDescendantStatement.bindLong(2, parentId);
+		boolean isDescendant = isDescendantStatement.simpleQueryForLong() > 0;
+		statementCount.incrementAndGet();
+		if (isDescendant)
+			throw new IllegalArgumentException("Node " + id + " can't be moved below its descendant " + parentId);
+
+		SQLiteStatement deleteAncestorsStatement = getStatement(DELETE_SUBTREE_ANCESTORS);
+		deleteAncestorsStatement.bindLong(1, id);
+		deleteAncestorsStatement.bindLong(2, id);
+		deleteAncestorsStatement.execute();
+		statementCount.incrementAndGet();
+
+		SQLiteStatement insertAncestorsStatement = getStatement(INSERT_SUBTREE_ANCESTORS);
+		insertAncestorsStatement.bindLong(1, parentId);
+		insertAncestorsStatement.bindLong(2, id);
+		insertAncestorsStatement.executeInsert();
+		statementCount.incrementAndGet();
+	}
+
+	/**
+	 * @return the file of a node, -1 if the node doesn't exist or has no file yet
+	 */
+	public long getFileId(long nodeId) {
+		SQLiteStatement fileIdStatement = getStatement(SELECT_FILE_ID);
+		fileIdStatement.bindLong(1, nodeId);
+		long fileId = fileIdStatement.simpleQueryForLong();
+		statementCount.incrementAndGet();
+		return fileId > 0 ? fileId : -1;
+	}
+
+	public void fastDeleteTimestamps(long nodeId) {
+		SQLiteStatement deleteTimestampsStatement = getStatement(DELETE_TIMESTAMPS);
+		deleteTimestampsStatement.bindLong(1, nodeId);
+		deleteTimestampsStatement.execute();
+		statementCount.incrementAndGet();
+	}
+
+	/**
+	 * Add a node to the full text index
+	 * @param id
+	 * @param name
+	 * @param tags
+	 * @param cleanedPayload the payload as displayed, see {@link OrgNodePayload#getCleanedPayload()}
+	 */
+	public void fastIndexNode(long id, String name, String tags, String cleanedPayload) {
+		SQLiteStatement ftsInsertStatement = getStatement(INSERT_FTS);
+		ftsInsertStatement.bindLong(1, id);
+		bindText(ftsInsertStatement, 2, name);
+		bindText(ftsInsertStatement, 3, tags);
+		bindText(ftsInsertStatement, 4, cleanedPayload);
+		ftsInsertStatement.executeInsert();
+		statementCount.incrementAndGet();
+	}
+
+	/**
+	 * Replace the full text index row of a node that changed
+	 */
+	public void fastReindexNode(long id, String name, String tags, String cleanedPayload) {
+		SQLiteStatement ftsDeleteStatement = getStatement(DELETE_FTS);
+		ftsDeleteStatement.bindLong(1, id);
+		ftsDeleteStatement.execute();
+		statementCount.incrementAndGet();
+		fastIndexNode(id, name, tags, cleanedPayload);
+	}
+
+	/**
+	 * Update the content of an existing node, name and position excepted
+	 * @param node
+	 * @param id the id of the node row
+	 * @param payload
+	 */
+	public void fastUpdateNode(OrgHeading node, long id, final String payload) {
+		SQLiteStatement orgdataUpdateStatement = getStatement(UPDATE_NODE);
+		orgdataUpdateStatement.bindString(1, node.todo);
+		orgdataUpdateStatement.bindString(2, node.priority);
+		orgdataUpdateStatement.bindString(3, node.tags);
+		orgdataUpdateStatement.bindString(4, node.tags_inherited);
+		orgdataUpdateStatement.bindLong(5, node.level);
+		orgdataUpdateStatement.bindString(6, payload);
+		orgdataUpdateStatement.bindLong(7, id);
+		orgdataUpdateStatement.execute();
+		statementCount.incrementAndGet();
+	}
+
+	/**
+	 * Update the scheduled and deadline columns of a node, after its timestamps changed
+	 * @param id
+	 * @param scheduled can be null
+	 * @param deadline can be null
+	 */
+	public void fastUpdateNodeTimestamps(long id, OrgNodeTimeDate scheduled, OrgNodeTimeDate deadline) {
+		SQLiteStatement orgdataTimestampsUpdateStatement = getStatement(UPDATE_NODE_TIMESTAMPS);
+		bindTimestamp(orgdataTimestampsUpdateStatement, 1, scheduled);
+		bindTimestamp(orgdataTimestampsUpdateStatement, 3, deadline);
+		orgdataTimestampsUpdateStatement.bindLong(5, id);
+		orgdataTimestampsUpdateStatement.execute();
+		statementCount.incrementAndGet();
+		fastUpdateAgenda(id, getEpochTime(scheduled), getEpochTime(deadline));
+	}
+
+	/**
+	 * Rewrite the agenda rows of a node
+	 * @param scheduled epoch time of the scheduled timestamp, -1 if there is none
+	 * @param deadline epoch time of the deadline, -1 if there is none
+	 */
+	public void fastUpdateAgenda(long id, long scheduled, long deadline) {
+		SQLiteStatement agendaDeleteStatement = getStatement(DELETE_AGENDA);
+		agendaDeleteStatement.bindLong(1, id);
+		agendaDeleteStatement.execute();
+		statementCount.incrementAndGet();
+		statementCount.addAndGet(insertAgendaRows(getStatement(INSERT_AGENDA), id, scheduled, deadline));
+	}
+
+	/**
+	 * Rewrite the agenda_repeats rows of a node
+	 * @param payload the payload of the node, for its STYLE property
+	 * @param scheduled can be null
+	 * @param deadline can be null
+	 */
+	public void fastUpdateAgendaRepeats(long id, String payload, OrgNodeTimeDate scheduled, OrgNodeTimeDate deadline) {
+		SQLiteStatement agendaRepeatsDeleteStatement = getStatement(DELETE_AGENDA_REPEATS);
+		agendaRepeatsDeleteStatement.bindLong(1, id);
+		agendaRepeatsDeleteStatement.execute();
+		statementCount.incrementAndGet();
+		statementCount.addAndGet(insertAgendaRepeats(getStatement(INSERT_AGENDA_REPEAT), id, payload,
+				scheduled, deadline));
+	}
+
+	/**
+	 * Rewrite the agenda rows of a node from its scheduled and deadline columns, and its
+	 * agenda_repeats rows from its payload
+	 */
+	public void updateAgenda(long id) {
+		Cursor cursor = getWritableDatabase().rawQuery("SELECT scheduled, deadline, payload FROM "
+				+ Tables.ORGDATA + " WHERE _id=?", new String[]{Long.toString(id)});
+		if (cursor == null)
+			return;
+		if (cursor.moveToFirst()) {
+			long scheduled = cursor.getLong(0);
+			long deadline = cursor.getLong(1);
+			String payload = cursor.getString(2);
+			fastUpdateAgenda(id, scheduled, deadline);
+			fastUpdateAgendaRepeats(id, payload,
+					parseTimestamp(OrgNodeTimeDate.TYPE.Scheduled, scheduled, payload),
+					parseTimestamp(OrgNodeTimeDate.TYPE.Deadline, deadline, payload));
 		}
+		cursor.close();
+	}
+
+	/**
+	 * Delete a node and its timestamps, its full text index row goes with it
+	 * @param id
+	 */
+	public void fastDeleteNode(long id) {
+		SQLiteStatement orgdataDeleteStatement = getStatement(DELETE_NODE);
+		orgdataDeleteStatement.bindLong(1, id);
+		orgdataDeleteStatement.execute();
+		statementCount.incrementAndGet();
+		fastDeleteTimestamps(id);
 	}
 
 	public void fastInsertNodePayload(Long id, final String payload) {
 
 //		Log.v("time","payload : "+payload);
+		SQLiteStatement addPayloadStatement = getStatement(UPDATE_PAYLOAD);
 		addPayloadStatement.bindString(1, payload);
 		addPayloadStatement.bindLong(2, id);
 		addPayloadStatement.execute();
+		statementCount.incrementAndGet();
 	}
 
+	/**
+	 * Add TODO keywords to the default group with a single statement, the ones
+	 * already known are ignored
+	 * @param todos keyword -> is a done state
+	 */
+	public void fastInsertTodos(final Map<String, Boolean> todos) {
+		if (todos == null || todos.isEmpty())
+			return;
+
+		StringBuilder sql = new StringBuilder("INSERT OR IGNORE INTO " + Tables.TODOS + " ("
+				+ Todos.GROUP + ", " + Todos.NAME + ", " + Todos.ISDONE + ") VALUES ");
+		Object[] args = new Object[todos.size() * 2];
+		int i = 0;
+		for (Map.Entry<String, Boolean> todo : todos.entrySet()) {
+			sql.append(i == 0 ? "(0,?,?)" : ",(0,?,?)");
+			args[i++] = todo.getKey();
+			args[i++] = todo.getValue() ? 1 : 0;
+		}
+
+		getWritableDatabase().execSQL(sql.toString(), args);
+		statementCount.incrementAndGet();
+	}
+
+	/**
+	 * @return the number of statements executed by the fast* methods so far
+	 */
+	public long getStatementCount() {
+		return statementCount.get();
+	}
+
+	/**
+	 * Trade durability for speed while the content of the database is rebuilt from
+	 * the org files: no fsync. If the device dies in between, the files are simply
+	 * parsed again on the next synchronization.
+	 * Must be called outside of a transaction, and followed by {@link #endBulkInsert()}.
+	 */
+	public void beginBulkInsert() {
+		SQLiteDatabase db = getWritableDatabase();
+		previousSynchronous = DatabaseUtils.longForQuery(db, "PRAGMA synchronous", null);
+		db.execSQL("PRAGMA synchronous=OFF");
+	}
+
+	/**
+	 * Restore the synchronous setting changed by {@link #beginBulkInsert()}
+	 */
+	public void endBulkInsert() {
+		SQLiteDatabase db = getWritableDatabase();
+		if (previousSynchronous >= 0)
+			db.execSQL("PRAGMA synchronous=" + previousSynchronous);
+		previousSynchronous = -1;
+	}
+
+	/**
+	 * Start a transaction on the writer connection, readers are not blocked. Use as:
+	 * <pre>
+	 * db.beginTransaction();
+	 * try {
+	 *     ...
+	 *     db.setTransactionSuccessful();
+	 * } finally {
+	 *     db.endTransaction();
+	 * }
+	 * </pre>
+	 */
 	public void beginTransaction() {
-		getWritableDatabase().beginTransaction();
+		getWritableDatabase().beginTransactionNonExclusive();
+		changeNotifier.beginTransaction();
 	}
 
-	public void endTransaction() {
+	/**
+	 * Mark the current transaction to be committed by {@link #endTransaction()}
+	 */
+	public void setTransactionSuccessful() {
 		getWritableDatabase().setTransactionSuccessful();
-		getWritableDatabase().endTransaction();
+		changeNotifier.setTransactionSuccessful();
+	}
+
+	/**
+	 * Commit the current transaction if it was marked successful, roll it back otherwise.
+	 * The changes reported to {@link #getChangeNotifier()} meanwhile are sent after the commit.
+	 */
+	public void endTransaction() {
+		try {
+			getWritableDatabase().endTransaction();
+		} finally {
+			changeNotifier.endTransaction();
+		}
 	}
 
 	public interface Tables {
@@ -185,6 +1035,10 @@ public class OrgDatabase extends SQLiteOpenHelper {
 		String TAGS = "tags";
 		String TODOS = "todos";
 		String ORGDATA = "orgdata";
+		String ORGDATA_FTS = "orgdata_fts";
+		String ORGDATA_TREE = "orgdata_tree";
+		String AGENDA = "agenda";
+		String AGENDA_REPEATS = "agenda_repeats";
 	}
 
 
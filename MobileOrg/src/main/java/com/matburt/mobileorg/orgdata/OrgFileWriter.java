@@ -0,0 +1,439 @@
+package com.matburt.mobileorg.orgdata;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.util.Log;
+
+import com.matburt.mobileorg.orgdata.OrgContract.OrgData;
+import com.matburt.mobileorg.orgdata.OrgContract.Timestamps;
+import com.matburt.mobileorg.orgdata.OrgDatabase.Tables;
+import com.matburt.mobileorg.util.OrgFileNotFoundException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * Write the nodes produced by {@link OrgFileParser} to the database.
+ *
+ * A new file is simply inserted. When the file is already in the database, the parsed
+ * nodes are diffed against the stored ones and only the orgdata and timestamps rows
+ * that changed are written. A stored node is identified by its parent, its position
+ * among its siblings and its heading text, so untouched nodes keep their id.
+ *
+ * New nodes are inserted with their payload and their first scheduled and deadline
+ * timestamps, which the lists read, in a single statement. All their timestamps are
+ * buffered for the timestamps table, then inserted
+ * {@link OrgDatabase#TIMESTAMPS_PER_INSERT} rows at a time.
+ * The full text index and the ancestors of new nodes, in orgdata_tree, are written
+ * along with the nodes.
+ * The time spent, the rows written and the statements executed are logged for each file.
+ * A file that changed is reported to the {@link OrgChangeNotifier} as a whole.
+ *
+ * The writer does not handle transactions, this is up to the caller. The caller should
+ * roll back the file when it is not {@link #isComplete()}.
+ */
+public class OrgFileWriter implements OrgFileParser.Sink {
+	private final Context context;
+	private final OrgDatabase db;
+	private final ArrayList<Integer> ancestorIndexes = new ArrayList<>();
+	private final ArrayList<Long> ancestorIds = new ArrayList<>();
+	private OrgFile orgFile;
+	// Stored nodes not matched yet, null when the file is new
+	private HashMap<String, StoredNode> storedNodes;
+	private ArrayList<StoredNode> duplicatedNodes;
+	private StoredNode storedRoot;
+	private final long[] pendingTimestamps =
+			new long[OrgDatabase.TIMESTAMPS_PER_INSERT * OrgDatabase.TIMESTAMP_COLUMNS];
+	private int pendingTimestampCount;
+	private final long[] pendingTreeRows =
+			new long[OrgDatabase.TREE_ROWS_PER_INSERT * OrgDatabase.TREE_COLUMNS];
+	private int pendingTreeRowCount;
+	private boolean complete;
+	// Ingest statistics of the current file
+	private long ingestTime;
+	private long statements;
+	private int rows;
+	private long measureStart;
+	private long statementsStart;
+
+	public OrgFileWriter(Context context) {
+		this.context = context;
+		this.db = OrgDatabase.getInstance();
+	}
+
+	private static boolean equal(String a, String b) {
+		if (a == null) a = "";
+		if (b == null) b = "";
+		return a.equals(b);
+	}
+
+	private static String getTimestampKey(int type, long epochTime, long allDay) {
+		return type + ":" + epochTime + ":" + allDay;
+	}
+
+	/**
+	 * Prepare the writer for a new file. If a file with the same filename is already
+	 * in the database, its nodes are loaded and the writer works incrementally.
+	 * Otherwise the file is added to the database.
+	 * @param orgFile
+	 */
+	@Override
+	public void begin(OrgFile orgFile) {
+		this.orgFile = orgFile;
+		ancestorIndexes.clear();
+		ancestorIds.clear();
+		storedNodes = null;
+		duplicatedNodes = null;
+		storedRoot = null;
+		pendingTimestampCount = 0;
+		pendingTreeRowCount = 0;
+		ingestTime = 0;
+		statements = 0;
+		rows = 0;
+		complete = false;
+
+		startMeasure();
+		try {
+			OrgFile storedFile = new OrgFile(orgFile.filename, context.getContentResolver());
+			orgFile.id = storedFile.id;
+			orgFile.nodeId = storedFile.nodeId;
+			loadStoredNodes();
+		} catch (OrgFileNotFoundException e) {
+			orgFile.addFile(context);
+			rows += 2;
+		}
+		stopMeasure();
+	}
+
+	/**
+	 * Write a node. Nodes have to be written in the order the parser produced them.
+	 * @param parsed
+	 */
+	@Override
+	public void write(OrgParsedNode parsed) {
+		startMeasure();
+		OrgHeading heading = parsed.heading;
+		long id;
+
+		if (parsed.isRoot()) {
+			id = orgFile.nodeId;
+			writeRoot(parsed);
+		} else {
+			long parentId = getParentId(parsed.parentIndex);
+			StoredNode stored = null;
+			if (storedNodes != null)
+				stored = storedNodes.remove(StoredNode.getKey(parentId, heading.position, heading.name));
+
+			if (stored == null) {
+				id = db.fastInsertNode(heading, parentId, orgFile.id, parsed.payload,
+						parsed.getTimestamp(OrgNodeTimeDate.TYPE.Scheduled),
+						parsed.getTimestamp(OrgNodeTimeDate.TYPE.Deadline));
+				db.fastIndexNode(id, heading.name, heading.tags, parsed.getCleanedPayload());
+				rows++;
+				queueTimestamps(id, parsed.timestamps);
+				queueTreeRows(id);
+			} else {
+				id = stored.id;
+				if (!stored.hasSameContent(heading, parsed.payload)) {
+					db.fastUpdateNode(heading, id, parsed.payload);
+					db.fastReindexNode(id, heading.name, heading.tags, parsed.getCleanedPayload());
+					updateRepeats(id, parsed);
+					rows++;
+				}
+				updateTimestamps(stored, parsed);
+			}
+		}
+
+		ancestorIndexes.add(parsed.index);
+		ancestorIds.add(id);
+		stopMeasure();
+	}
+
+	@Override
+	public void addTodos(HashMap<String, Boolean> todos) {
+		startMeasure();
+		db.fastInsertTodos(todos);
+		stopMeasure();
+	}
+
+	/**
+	 * Delete the stored nodes that were not found in the new version of the file.
+	 * Nothing is deleted if the file could not be read completely.
+	 * The observers of the file are notified if a row changed, once the caller commits.
+	 */
+	@Override
+	public void end(boolean complete) {
+		this.complete = complete;
+		startMeasure();
+		flushTimestamps();
+		flushTreeRows();
+		if (complete && storedNodes != null) {
+			for (StoredNode stored : storedNodes.values())
+				db.fastDeleteNode(stored.id);
+			for (StoredNode stored : duplicatedNodes)
+				db.fastDeleteNode(stored.id);
+			rows += storedNodes.size() + duplicatedNodes.size();
+		}
+		stopMeasure();
+		if (complete && rows > 0)
+			db.getChangeNotifier().fileChanged(orgFile.id);
+
+		Log.v("ingest", orgFile.filename + ": " + rows + " rows, " + statements
+				+ " statements, " + (ingestTime / 1000000) + " ms");
+
+		storedNodes = null;
+		duplicatedNodes = null;
+		storedRoot = null;
+	}
+
+	/**
+	 * @return false if the last file could not be read until the end, or is not finished
+	 */
+	public boolean isComplete() {
+		return complete;
+	}
+
+	/**
+	 * @return time spent writing the last file, in nanoseconds
+	 */
+	public long getIngestTime() {
+		return ingestTime;
+	}
+
+	/**
+	 * @return the number of orgdata, files and timestamps rows written for the last file
+	 */
+	public int getRowCount() {
+		return rows;
+	}
+
+	/**
+	 * @return the number of write statements executed for the last file
+	 */
+	public long getStatementCount() {
+		return statements;
+	}
+
+	/**
+	 * Several writers can be used alternately by the same thread, only the time spent
+	 * in this one counts
+	 */
+	private void startMeasure() {
+		measureStart = System.nanoTime();
+		statementsStart = db.getStatementCount();
+	}
+
+	private void stopMeasure() {
+		ingestTime += System.nanoTime() - measureStart;
+		statements += db.getStatementCount() - statementsStart;
+	}
+
+	private void writeRoot(OrgParsedNode parsed) {
+		if (storedRoot == null) {
+			db.fastInsertNodePayload(orgFile.nodeId, parsed.payload);
+			db.fastIndexNode(orgFile.nodeId, orgFile.name, null, parsed.getCleanedPayload());
+			rows++;
+			queueTimestamps(orgFile.nodeId, parsed.timestamps);
+			if (!parsed.timestamps.isEmpty()) {
+				updateTimestampColumns(orgFile.nodeId, parsed);
+				updateRepeats(orgFile.nodeId, parsed);
+			}
+			return;
+		}
+
+		if (!equal(storedRoot.payload, parsed.payload)) {
+			db.fastInsertNodePayload(orgFile.nodeId, parsed.payload);
+			db.fastReindexNode(orgFile.nodeId, orgFile.name, null, parsed.getCleanedPayload());
+			updateRepeats(orgFile.nodeId, parsed);
+			rows++;
+		}
+		updateTimestamps(storedRoot, parsed);
+	}
+
+	private void queueTimestamps(long nodeId, ArrayList<OrgNodeTimeDate> timestamps) {
+		for (OrgNodeTimeDate timeDate : timestamps) {
+			long epochTime = timeDate.getEpochTime();
+			if (epochTime < 0) continue;
+
+			if (pendingTimestampCount == OrgDatabase.TIMESTAMPS_PER_INSERT)
+				flushTimestamps();
+
+			int offset = pendingTimestampCount * OrgDatabase.TIMESTAMP_COLUMNS;
+			pendingTimestamps[offset] = epochTime;
+			pendingTimestamps[offset + 1] = orgFile.id;
+			pendingTimestamps[offset + 2] = nodeId;
+			pendingTimestamps[offset + 3] = timeDate.type.ordinal();
+			pendingTimestamps[offset + 4] = timeDate.isAllDay();
+			pendingTimestampCount++;
+		}
+	}
+
+	private void flushTimestamps() {
+		if (pendingTimestampCount == 0)
+			return;
+		db.fastInsertTimestampRows(pendingTimestamps, pendingTimestampCount);
+		rows += pendingTimestampCount;
+		pendingTimestampCount = 0;
+	}
+
+	/**
+	 * Queue the orgdata_tree rows of a new node: the node itself and all its ancestors,
+	 * which are the ancestors the writer currently follows
+	 */
+	private void queueTreeRows(long id) {
+		int depth = ancestorIds.size();
+		queueTreeRow(id, id, 0);
+		for (int i = 0; i < ancestorIds.size(); i++)
+			queueTreeRow(ancestorIds.get(i), id, depth - i);
+	}
+
+	private void queueTreeRow(long ancestor, long descendant, long depth) {
+		if (pendingTreeRowCount == OrgDatabase.TREE_ROWS_PER_INSERT)
+			flushTreeRows();
+
+		int offset = pendingTreeRowCount * OrgDatabase.TREE_COLUMNS;
+		pendingTreeRows[offset] = ancestor;
+		pendingTreeRows[offset + 1] = descendant;
+		pendingTreeRows[offset + 2] = depth;
+		pendingTreeRowCount++;
+	}
+
+	private void flushTreeRows() {
+		if (pendingTreeRowCount == 0)
+			return;
+		db.fastInsertTreeRows(pendingTreeRows, pendingTreeRowCount);
+		pendingTreeRowCount = 0;
+	}
+
+	private void updateTimestamps(StoredNode stored, OrgParsedNode parsed) {
+		HashSet<String> timestamps = new HashSet<>();
+		for (OrgNodeTimeDate timeDate : parsed.timestamps) {
+			long epochTime = timeDate.getEpochTime();
+			if (epochTime < 0) continue;
+			timestamps.add(getTimestampKey(timeDate.type.ordinal(), epochTime, timeDate.isAllDay()));
+		}
+
+		if (timestamps.equals(stored.timestamps))
+			return;
+
+		db.fastDeleteTimestamps(stored.id);
+		rows += stored.timestamps.size();
+		queueTimestamps(stored.id, parsed.timestamps);
+		updateTimestampColumns(stored.id, parsed);
+	}
+
+	private void updateTimestampColumns(long id, OrgParsedNode parsed) {
+		db.fastUpdateNodeTimestamps(id, parsed.getTimestamp(OrgNodeTimeDate.TYPE.Scheduled),
+				parsed.getTimestamp(OrgNodeTimeDate.TYPE.Deadline));
+	}
+
+	/**
+	 * Rewrite the repeaters of a node whose payload changed, they are only written there
+	 */
+	private void updateRepeats(long id, OrgParsedNode parsed) {
+		db.fastUpdateAgendaRepeats(id, parsed.payload, parsed.getTimestamp(OrgNodeTimeDate.TYPE.Scheduled),
+				parsed.getTimestamp(OrgNodeTimeDate.TYPE.Deadline));
+	}
+
+	private long getParentId(int parentIndex) {
+		int last = ancestorIndexes.size() - 1;
+		while (last > 0 && ancestorIndexes.get(last) != parentIndex) {
+			ancestorIndexes.remove(last);
+			ancestorIds.remove(last);
+			last--;
+		}
+		return ancestorIds.get(last);
+	}
+
+	private void loadStoredNodes() {
+		storedNodes = new HashMap<>();
+		duplicatedNodes = new ArrayList<>();
+		HashMap<Long, StoredNode> nodesById = new HashMap<>();
+		String[] fileId = new String[]{Long.toString(orgFile.id)};
+
+		Cursor cursor = db.getReadableDatabase().rawQuery("SELECT "
+				+ OrgData.ID + ", " + OrgData.PARENT_ID + ", " + OrgData.POSITION + ", "
+				+ OrgData.NAME + ", " + OrgData.TODO + ", " + OrgData.PRIORITY + ", "
+				+ OrgData.TAGS + ", " + OrgData.TAGS_INHERITED + ", " + OrgData.LEVEL + ", "
+				+ OrgData.PAYLOAD
+				+ " FROM " + Tables.ORGDATA + " WHERE " + OrgData.FILE_ID + "=?", fileId);
+		if (cursor != null) {
+			while (cursor.moveToNext()) {
+				StoredNode stored = new StoredNode(cursor);
+				nodesById.put(stored.id, stored);
+
+				if (stored.id == orgFile.nodeId) {
+					storedRoot = stored;
+					continue;
+				}
+
+				String key = StoredNode.getKey(stored.parentId, stored.position, stored.name);
+				if (storedNodes.containsKey(key))
+					duplicatedNodes.add(stored);
+				else
+					storedNodes.put(key, stored);
+			}
+			cursor.close();
+		}
+
+		// The file node may have been stored without its file_id
+		if (storedRoot == null)
+			storedRoot = new StoredNode(orgFile.nodeId);
+
+		cursor = db.getReadableDatabase().rawQuery("SELECT "
+				+ Timestamps.NODE_ID + ", " + Timestamps.TYPE + ", "
+				+ Timestamps.TIMESTAMP + ", " + Timestamps.ALL_DAY
+				+ " FROM " + Tables.TIMESTAMPS + " WHERE " + Timestamps.FILE_ID + "=?", fileId);
+		if (cursor != null) {
+			while (cursor.moveToNext()) {
+				StoredNode stored = nodesById.get(cursor.getLong(0));
+				if (stored != null)
+					stored.timestamps.add(getTimestampKey(cursor.getInt(1), cursor.getLong(2), cursor.getLong(3)));
+			}
+			cursor.close();
+		}
+	}
+
+	/**
+	 * The subset of an orgdata row needed to diff it against a parsed node
+	 */
+	private static class StoredNode {
+		final long id;
+		final HashSet<String> timestamps = new HashSet<>();
+		long parentId = -1;
+		int position;
+		long level;
+		String name, todo, priority, tags, tagsInherited, payload;
+
+		StoredNode(long id) {
+			this.id = id;
+		}
+
+		StoredNode(Cursor cursor) {
+			id = cursor.getLong(0);
+			parentId = cursor.getLong(1);
+			position = cursor.getInt(2);
+			name = cursor.getString(3);
+			todo = cursor.getString(4);
+			priority = cursor.getString(5);
+			tags = cursor.getString(6);
+			tagsInherited = cursor.getString(7);
+			level = cursor.getLong(8);
+			payload = cursor.getString(9);
+		}
+
+		static String getKey(long parentId, int position, String name) {
+			return parentId + ":" + position + ":" + name;
+		}
+
+		boolean hasSameContent(OrgHeading node, String nodePayload) {
+			return level == node.level
+					&& equal(todo, node.todo)
+					&& equal(priority, node.priority)
+					&& equal(tags, node.tags)
+					&& equal(tagsInherited, node.tags_inherited)
+					&& equal(payload, nodePayload);
+		}
+	}
+}
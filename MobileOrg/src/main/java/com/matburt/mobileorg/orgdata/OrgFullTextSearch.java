@@ -0,0 +1,203 @@
+package com.matburt.mobileorg.orgdata;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.CancellationSignal;
+
+import com.matburt.mobileorg.orgdata.OrgContract.OrgData;
+import com.matburt.mobileorg.orgdata.OrgContract.Search;
+import com.matburt.mobileorg.orgdata.OrgDatabase.Tables;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+
+/**
+ * Search the full text index of {@link OrgDatabase}.
+ *
+ * SQLite on Android has no ranking function, so the matches are ranked in two steps:
+ * the first query reads the id and the match statistics of every matching node and
+ * scores them with BM25, the heading weighing more than the tags and the payload.
+ * The second query reads the best nodes with their highlighted snippets, in score order.
+ * Both steps can be run separately, to read the results page by page.
+ */
+public class OrgFullTextSearch {
+	public static final int MAX_RESULTS = 100;
+	public static final int MAX_RANKED_RESULTS = 1000;
+
+	private static final String MATCHINFO_FORMAT = "pcnalx";
+	// Weights of the name, tags and payload columns
+	private static final double[] COLUMN_WEIGHTS = {4.0, 2.0, 1.0};
+	private static final double K1 = 1.2;
+	private static final double B = 0.75;
+	private static final int SNIPPET_TOKENS = 12;
+	private static final int NAME_SNIPPET_TOKENS = 64;
+
+	/**
+	 * @param query words typed by the user
+	 * @return an FTS query matching the nodes that contain all the words, as prefixes.
+	 * Empty if the query has no word.
+	 */
+	public static String getMatchQuery(String query) {
+		StringBuilder result = new StringBuilder();
+		if (query == null)
+			return "";
+
+		// The default tokenizer splits words on anything but letters and digits,
+		// this also drops the FTS syntax the user could have typed
+		for (String word : query.split("[^\\p{L}\\p{Nd}]+")) {
+			if (word.isEmpty())
+				continue;
+			// Lower case words are never operators, the index ignores the case of ASCII
+			if (isOperator(word))
+				word = word.toLowerCase(Locale.US);
+			if (result.length() > 0)
+				result.append(' ');
+			result.append(word).append('*');
+		}
+		return result.toString();
+	}
+
+	private static boolean isOperator(String word) {
+		return word.equals("AND") || word.equals("OR") || word.equals("NOT") || word.equals("NEAR");
+	}
+
+	/**
+	 * @param db
+	 * @param query words typed by the user
+	 * @param ids the nodes to read, as returned by {@link #rank}
+	 * @param signal cancels the query, can be null
+	 * @return the {@link OrgData#LIGHT_COLUMNS} of these nodes, plus {@link Search#NAME_SNIPPET}
+	 * and {@link Search#SNIPPET}, in the order of the ids
+	 */
+	public static Cursor query(SQLiteDatabase db, String query, long[] ids, CancellationSignal signal) {
+		String match = getMatchQuery(query);
+		if (match.isEmpty())
+			ids = new long[0];
+
+		StringBuilder sql = new StringBuilder("SELECT ")
+				.append(OrgContract.formatColumns("o", OrgData.LIGHT_COLUMNS))
+				.append(", snippet(").append(Tables.ORGDATA_FTS).append(", '")
+				.append(Search.MATCH_START).append("', '").append(Search.MATCH_END)
+				.append("', '\u2026', 0, ").append(NAME_SNIPPET_TOKENS).append(") AS ").append(Search.NAME_SNIPPET)
+				.append(", snippet(").append(Tables.ORGDATA_FTS).append(", '")
+				.append(Search.MATCH_START).append("', '").append(Search.MATCH_END)
+				.append("', '\u2026', 2, ").append(SNIPPET_TOKENS).append(") AS ").append(Search.SNIPPET)
+				.append(" FROM ").append(Tables.ORGDATA_FTS)
+				.append(" JOIN ").append(Tables.ORGDATA).append(" o ON o._id=")
+				.append(Tables.ORGDATA_FTS).append(".docid")
+				.append(" WHERE ").append(Tables.ORGDATA_FTS).append(" MATCH ?");
+
+		// Ids are numbers, they can be inlined
+		sql.append(" AND ").append(Tables.ORGDATA_FTS).append(".docid IN (");
+		for (int i = 0; i < ids.length; i++)
+			sql.append(i == 0 ? "" : ",").append(ids[i]);
+		sql.append(")");
+
+		if (ids.length > 0) {
+			sql.append(" ORDER BY CASE ").append(Tables.ORGDATA_FTS).append(".docid");
+			for (int i = 0; i < ids.length; i++)
+				sql.append(" WHEN ").append(ids[i]).append(" THEN ").append(i);
+			sql.append(" END");
+		}
+
+		return db.rawQuery(sql.toString(), new String[]{match}, signal);
+	}
+
+	/**
+	 * @return a cursor with the {@link OrgData#ID} of the best scored nodes, best first
+	 */
+	public static Cursor queryIds(SQLiteDatabase db, String query, int limit, CancellationSignal signal) {
+		MatrixCursor result = new MatrixCursor(new String[]{OrgData.ID});
+		for (long id : rank(db, query, limit, signal))
+			result.addRow(new Object[]{id});
+		return result;
+	}
+
+	/**
+	 * @param db
+	 * @param query words typed by the user
+	 * @param limit maximum number of ids returned
+	 * @param signal cancels the query, can be null
+	 * @return the ids of the best scored nodes, best first
+	 */
+	public static long[] rank(SQLiteDatabase db, String query, int limit, CancellationSignal signal) {
+		String match = getMatchQuery(query);
+		if (match.isEmpty())
+			return new long[0];
+
+		Cursor cursor = db.rawQuery("SELECT docid, matchinfo(" + Tables.ORGDATA_FTS + ", '"
+				+ MATCHINFO_FORMAT + "') FROM " + Tables.ORGDATA_FTS + " WHERE "
+				+ Tables.ORGDATA_FTS + " MATCH ?", new String[]{match}, signal);
+		if (cursor == null)
+			return new long[0];
+
+		long[] ids = new long[cursor.getCount()];
+		double[] scores = new double[ids.length];
+		int count = 0;
+		while (cursor.moveToNext()) {
+			ids[count] = cursor.getLong(0);
+			scores[count] = score(cursor.getBlob(1));
+			count++;
+		}
+		cursor.close();
+		if (signal != null)
+			signal.throwIfCanceled();
+
+		// Sort the positions by score, then keep the first ones
+		Integer[] order = new Integer[count];
+		for (int i = 0; i < count; i++)
+			order[i] = i;
+		final double[] sortScores = scores;
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return Double.compare(sortScores[b], sortScores[a]);
+			}
+		});
+
+		long[] result = new long[Math.min(count, limit)];
+		for (int i = 0; i < result.length; i++)
+			result[i] = ids[order[i]];
+		return result;
+	}
+
+	/**
+	 * BM25 score of a node
+	 * @param matchinfo the result of matchinfo() with {@link #MATCHINFO_FORMAT}: phrase
+	 *                  count, column count, row count, average tokens per column, tokens
+	 *                  of this row per column, then hits for each phrase and column
+	 */
+	static double score(byte[] matchinfo) {
+		ByteBuffer buffer = ByteBuffer.wrap(matchinfo).order(ByteOrder.nativeOrder());
+		int phrases = buffer.getInt(0);
+		int columns = buffer.getInt(4);
+		long rows = buffer.getInt(8) & 0xffffffffL;
+		int averageOffset = 12;
+		int lengthOffset = averageOffset + 4 * columns;
+		int hitsOffset = lengthOffset + 4 * columns;
+
+		double score = 0;
+		for (int phrase = 0; phrase < phrases; phrase++) {
+			for (int column = 0; column < columns && column < COLUMN_WEIGHTS.length; column++) {
+				int hits = hitsOffset + 4 * 3 * (phrase * columns + column);
+				int rowHits = buffer.getInt(hits);
+				if (rowHits == 0)
+					continue;
+				int documents = buffer.getInt(hits + 8);
+				double average = Math.max(1, buffer.getInt(averageOffset + 4 * column));
+				double length = buffer.getInt(lengthOffset + 4 * column);
+
+				double idf = Math.log((rows - documents + 0.5) / (documents + 0.5));
+				// Very common words still count a little
+				idf = Math.max(idf, 1e-6);
+				double tf = rowHits * (K1 + 1) / (rowHits + K1 * (1 - B + B * length / average));
+				score += COLUMN_WEIGHTS[column] * idf * tf;
+			}
+		}
+		return score;
+	}
+}
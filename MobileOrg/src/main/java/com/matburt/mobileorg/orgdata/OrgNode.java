@@ -1,10 +1,13 @@
 package com.matburt.mobileorg.orgdata;
 
+import android.content.ContentProviderOperation;
 import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.OperationApplicationException;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.RemoteException;
 import android.preference.PreferenceManager;
 import android.text.TextUtils;
 
@@ -16,23 +19,17 @@ import com.matburt.mobileorg.util.OrgUtils;
 import java.util.ArrayList;
 import java.util.HashMap;
 
-public class OrgNode {
+public class OrgNode extends OrgHeading {
 
 	public long id = -1;
 	public long parentId = -1;
 	public long fileId = -1;
 
-	public long level = 0; // The headline level
-	public String priority = ""; // The priority tag
-	public String todo = "";    // The TODO state
-	public String tags = "";
-	public String tags_inherited = "";
-	public String name = "";
-    // The ordering of the same level siblings
-    public int position = 0;
 	OrgNodeTimeDate deadline, scheduled;
 	// The payload is a string containing the raw string corresponding to this mode
     private String payload = "";
+	// False when the node was read with OrgData.LIGHT_COLUMNS, until the payload is used
+	private boolean payloadLoaded = true;
     private OrgNodePayload orgNodePayload = null;
 
 	public OrgNode() {
@@ -82,9 +79,20 @@ public class OrgNode {
         return false;
     }
 
-	void setTimestamps() {
-		deadline = new OrgNodeTimeDate(OrgNodeTimeDate.TYPE.Deadline, id);
-		scheduled = new OrgNodeTimeDate(OrgNodeTimeDate.TYPE.Scheduled, id);
+	/**
+	 * Read a timestamp from the orgdata columns that hold its epoch time and all day flag
+	 */
+	private static OrgNodeTimeDate getTimestamp(Cursor cursor, OrgNodeTimeDate.TYPE type,
+												String column, String dateOnlyColumn) {
+		OrgNodeTimeDate timeDate = new OrgNodeTimeDate(type);
+		int index = cursor.getColumnIndex(column);
+		if (index < 0 || cursor.isNull(index))
+			return timeDate;
+
+		long epochTime = cursor.getLong(index);
+		if (epochTime >= 0)
+			timeDate.setEpochTime(epochTime, cursor.getLong(cursor.getColumnIndexOrThrow(dateOnlyColumn)) == 1);
+		return timeDate;
 	}
 
     public void set(Cursor cursor) throws OrgNodeNotFoundException {
@@ -104,16 +112,21 @@ public class OrgNode {
 			tags_inherited = cursor.getString(cursor
 					.getColumnIndexOrThrow(OrgData.TAGS_INHERITED));
 			name = cursor.getString(cursor.getColumnIndexOrThrow(OrgData.NAME));
-			payload = cursor.getString(cursor
-					.getColumnIndexOrThrow(OrgData.PAYLOAD));
+			int payloadColumn = cursor.getColumnIndex(OrgData.PAYLOAD);
+			payloadLoaded = payloadColumn >= 0;
+			payload = payloadLoaded ? cursor.getString(payloadColumn) : null;
+			orgNodePayload = null;
             position = cursor.getInt(cursor
                     .getColumnIndexOrThrow(OrgData.POSITION));
+			scheduled = getTimestamp(cursor, OrgNodeTimeDate.TYPE.Scheduled,
+					OrgData.SCHEDULED, OrgData.SCHEDULED_DATE_ONLY);
+			deadline = getTimestamp(cursor, OrgNodeTimeDate.TYPE.Deadline,
+					OrgData.DEADLINE, OrgData.DEADLINE_DATE_ONLY);
 
 		} else {
 			throw new OrgNodeNotFoundException(
 					"Failed to create OrgNode from cursor");
 		}
-		setTimestamps();
 	}
 	
 	public String getFilename(ContentResolver resolver) {
@@ -134,7 +147,18 @@ public class OrgNode {
 		this.fileId = file.nodeId;
 	}
 	
+	/**
+	 * Read the payload of a node that was read without it
+	 */
+	private void loadPayload() {
+		if (payloadLoaded)
+			return;
+		payload = OrgProviderUtils.getPayload(id);
+		payloadLoaded = true;
+	}
+
 	private void preparePayload() {
+		loadPayload();
 		if(this.orgNodePayload == null)
 			this.orgNodePayload = new OrgNodePayload(this.payload);
 	}
@@ -151,20 +175,25 @@ public class OrgNode {
      * @return the ArrayList<OrgNode> containing all nodes
      */
     public ArrayList<OrgNode> getDescandants(ContentResolver resolver){
-        ArrayList<OrgNode> result = new ArrayList<OrgNode>();
-        result.add(this);
-        for(OrgNode child: getChildren(resolver)) result.addAll(child.getDescandants(resolver));
-        return result;
+        return OrgNodeTree.getFullNodeArray(new OrgNodeTree(this, resolver));
     }
 
 	private int updateNode(Context context) {
 		if(scheduled != null){
-			scheduled.update(context, id, fileId);
+			OrgProviderUtils.updateTimestamp(context, scheduled, id, fileId);
 		}
         if(deadline != null){
-			deadline.update(context, id, fileId);
+			OrgProviderUtils.updateTimestamp(context, deadline, id, fileId);
 		}
-		return context.getContentResolver().update(OrgData.buildIdUri(id), getContentValues(), null, null);
+		int count = context.getContentResolver().update(OrgData.buildIdUri(id), getContentValues(), null, null);
+		updateFullTextIndex();
+		return count;
+	}
+
+	private void updateFullTextIndex() {
+		loadPayload();
+		OrgDatabase.getInstance().fastReindexNode(id, name, tags,
+				new OrgNodePayload(payload).getCleanedPayload());
 	}
 
     public boolean isHabit() {
@@ -179,13 +208,25 @@ public class OrgNode {
 		values.put(OrgData.FILE_ID, fileId);
 		values.put(OrgData.LEVEL, level);
 		values.put(OrgData.PARENT_ID, parentId);
-		values.put(OrgData.PAYLOAD, payload);
+		// Only write the payload when it was read, so that it is not erased
+		if (payloadLoaded)
+			values.put(OrgData.PAYLOAD, payload);
 		values.put(OrgData.PRIORITY, priority);
 		values.put(OrgData.TAGS, tags);
         values.put(OrgData.TAGS_INHERITED, tags_inherited);
         values.put(OrgData.POSITION, position);
+		// Copies of the first scheduled and deadline timestamps, for the lists
+		putTimestamp(values, scheduled, OrgData.SCHEDULED, OrgData.SCHEDULED_DATE_ONLY);
+		putTimestamp(values, deadline, OrgData.DEADLINE, OrgData.DEADLINE_DATE_ONLY);
 		return values;
 	}
+
+	private static void putTimestamp(ContentValues values, OrgNodeTimeDate timeDate,
+									 String column, String dateOnlyColumn) {
+		long epochTime = timeDate == null ? -1 : timeDate.getEpochTime();
+		values.put(column, epochTime);
+		values.put(dateOnlyColumn, epochTime < 0 ? 0 : timeDate.isAllDay());
+	}
 	
 	/**
 	 * This will split up the tag string that it got from the tag entry in the
@@ -237,7 +278,7 @@ public class OrgNode {
 	
 	public boolean hasChildren(ContentResolver resolver) {
 		Cursor childCursor = resolver.query(OrgData.buildChildrenUri(id),
-                OrgData.DEFAULT_COLUMNS, null, null, null);
+                new String[]{OrgData.ID}, null, null, null);
 
         int childCount = childCursor.getCount();
 		childCursor.close();
@@ -247,7 +288,7 @@ public class OrgNode {
 	
 	public OrgNode getParent(ContentResolver resolver) throws OrgNodeNotFoundException {
 		Cursor cursor = resolver.query(OrgData.buildIdUri(this.parentId),
-				OrgData.DEFAULT_COLUMNS, null, null, null);
+				OrgData.LIGHT_COLUMNS, null, null, null);
         OrgNode parent = new OrgNode(cursor);
         if(cursor!=null) cursor.close();
 		return parent;
@@ -273,14 +314,29 @@ public class OrgNode {
 		}
 	}
 
+	/**
+	 * Make room for this node: the next siblings move down by one, in one batch.
+	 * Only their position changes, their timestamps and index entries are left as they are.
+	 */
 	public void shiftNextSiblingNodes(Context context) {
+		ArrayList<ContentProviderOperation> operations = new ArrayList<>();
 		for (OrgNode sibling : getSiblings(context.getContentResolver())) {
 			if(sibling.position >= position && sibling.id != this.id) {
                 ++sibling.position;
-				sibling.updateNode(context);
+				operations.add(ContentProviderOperation.newUpdate(OrgData.buildIdUri(sibling.id))
+						.withValue(OrgData.POSITION, sibling.position)
+						.build());
 //				Log.v("position", "new pos : " + sibling.position);
             }
         }
+		if (operations.isEmpty())
+			return;
+
+		try {
+			context.getContentResolver().applyBatch(OrgContract.CONTENT_AUTHORITY, operations);
+		} catch (RemoteException | OperationApplicationException e) {
+			e.printStackTrace();
+		}
     }
 
 	public boolean isFilenode(ContentResolver resolver) {
@@ -388,6 +444,7 @@ public class OrgNode {
     public void setPayload(String payload) {
         this.orgNodePayload = null;
         this.payload = payload;
+        this.payloadLoaded = true;
     }
 
     public HashMap getPropertiesPayload() {
@@ -436,6 +493,7 @@ public class OrgNode {
 		if(tags != null && !TextUtils.isEmpty(tags))
 			result.append(" ").append(":" + tags + ":");
 		
+		loadPayload();
 
 		if (payload != null && !TextUtils.isEmpty(payload)){
 			result.append("\n");
@@ -449,6 +507,8 @@ public class OrgNode {
 
 
 	public boolean equals(OrgNode node) {
+		loadPayload();
+		node.loadPayload();
 		return name.equals(node.name) && tags.equals(node.tags)
 				&& priority.equals(node.priority) && todo.equals(node.todo)
 				&& payload.equals(node.payload);
@@ -474,11 +534,12 @@ public class OrgNode {
 
 		Uri uri = context.getContentResolver().insert(OrgData.CONTENT_URI, getContentValues());
 		this.id = Long.parseLong(OrgData.getId(uri));
+		updateFullTextIndex();
 		if (scheduled != null) {
-			scheduled.update(context, id, fileId);
+			OrgProviderUtils.updateTimestamp(context, scheduled, id, fileId);
 		}
 		if (deadline != null) {
-			deadline.update(context, id, fileId);
+			OrgProviderUtils.updateTimestamp(context, deadline, id, fileId);
 		}
 		OrgFile.updateFile(this, context);
 		return id;
@@ -2,15 +2,15 @@ package com.matburt.mobileorg.orgdata;
 
 import android.content.ContentResolver;
 
+import com.matburt.mobileorg.util.OrgNodeNotFoundException;
+
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.NavigableMap;
+import java.util.HashMap;
 import java.util.Stack;
-import java.util.TreeMap;
 
 public class OrgNodeTree {
-    private static long idConstructor;
     public OrgNode node;
     public ArrayList<OrgNodeTree> children;
     private Visibility visibility;
@@ -20,11 +20,37 @@ public class OrgNodeTree {
         children = new ArrayList<>();
         visibility = Visibility.subtree;
 
-        if(isRecursive && root != null) {
-            for (OrgNode child : root.getChildren(resolver)) {
-                children.add(new OrgNodeTree(child, resolver));
+        if(isRecursive && root != null)
+            addDescendants(OrgProviderUtils.getOrgNodeSubtree(root.id, resolver, true));
+    }
+
+    /**
+     * Link the descendants of the root, given in any order, to their parent.
+     * Siblings are sorted by position.
+     */
+    private void addDescendants(ArrayList<OrgNode> descendants) {
+        HashMap<Long, OrgNodeTree> trees = new HashMap<>();
+        trees.put(node.id, this);
+        for (OrgNode descendant : descendants) {
+            if (descendant.id != node.id)
+                trees.put(descendant.id, new OrgNodeTree(descendant));
+        }
+
+        Comparator<OrgNodeTree> byPosition = new Comparator<OrgNodeTree>() {
+            @Override
+            public int compare(OrgNodeTree a, OrgNodeTree b) {
+                return a.node.position < b.node.position ? -1 : (a.node.position == b.node.position ? 0 : 1);
             }
+        };
+        for (OrgNodeTree tree : trees.values()) {
+            if (tree == this)
+                continue;
+            OrgNodeTree parent = trees.get(tree.node.parentId);
+            if (parent != null)
+                parent.children.add(tree);
         }
+        for (OrgNodeTree tree : trees.values())
+            Collections.sort(tree.children, byPosition);
     }
 
     /**
@@ -37,7 +63,7 @@ public class OrgNodeTree {
     }
 
     /**
-     * Create a tree and all sub-trees
+     * Create a tree and all sub-trees, with the nodes and their payloads read in one query
      * @param root
      * @param resolver
      */
@@ -45,6 +71,25 @@ public class OrgNodeTree {
         this(root, resolver, true);
     }
 
+    /**
+     * Create the tree of a node and all sub-trees, the root included, in one query.
+     * The payloads are left out, each node reads its own when it is displayed.
+     * @param nodeId
+     * @param resolver
+     * @throws OrgNodeNotFoundException
+     */
+    public OrgNodeTree(long nodeId, ContentResolver resolver) throws OrgNodeNotFoundException {
+        this(null, null, false);
+        ArrayList<OrgNode> subtree = OrgProviderUtils.getOrgNodeSubtree(nodeId, resolver, false);
+        for (OrgNode descendant : subtree) {
+            if (descendant.id == nodeId)
+                node = descendant;
+        }
+        if (node == null)
+            throw new OrgNodeNotFoundException("Node with id \"" + nodeId + "\" not found");
+        addDescendants(subtree);
+    }
+
     /**
      * Create a flat tree from an ArrayList
      * @param arrayList
@@ -83,18 +128,6 @@ public class OrgNodeTree {
         return result;
     }
 
-    private static void fillMap(TreeMap<Long, OrgNodeTree> map, OrgNodeTree tree) {
-        // The root node is the filename node
-        // It must not be added
-        map.put(++idConstructor, tree);
-
-
-        if (tree.visibility == Visibility.folded) return;
-
-        for (OrgNodeTree child : tree.children) fillMap(map, child);
-
-    }
-
     public Visibility getVisibility(){
         return visibility;
     }
@@ -120,16 +153,6 @@ public class OrgNodeTree {
         for(OrgNodeTree child: children) child.cascadeVisibility(_visibility);
     }
 
-    /**
-     * Generate a mapping between an OrgNode from the tree and its index in the tree
-     */
-    public NavigableMap<Long,OrgNodeTree> getVisibleNodesArray(){
-        TreeMap<Long,OrgNodeTree> result = new TreeMap<>();
-        idConstructor = -1;
-        fillMap(result, this);
-        return result;
-    }
-
     public enum Visibility {
         folded,
         children,
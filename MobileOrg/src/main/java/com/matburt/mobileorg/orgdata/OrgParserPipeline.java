@@ -0,0 +1,347 @@
+package com.matburt.mobileorg.orgdata;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.matburt.mobileorg.util.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Parse several files at once.
+ *
+ * A pool of {@link OrgFileParser} parses the files in parallel and sends their nodes,
+ * by batches, to a bounded queue per file. The thread calling {@link #run()} is the only
+ * writer: it applies the batches to {@link OrgDatabase} with {@link OrgFileWriter}, one
+ * file after the other, each file in its own transaction. A file can be queried as soon
+ * as its transaction is committed, while the next ones are still parsed.
+ * When none of the files is in the database yet, the transactions run in the bulk insert
+ * mode of {@link OrgDatabase}.
+ */
+public class OrgParserPipeline {
+	private static final int BATCH_SIZE = 256;
+	// How far the parser of a file can get ahead of the writer
+	private static final int BATCHES_PER_FILE = 16;
+	// Prefix of the names of the parser threads
+	static final String THREAD_NAME = "org-parser";
+
+	private final Context context;
+	private final ArrayList<Job> jobs = new ArrayList<>();
+	private Listener listener;
+
+	public OrgParserPipeline(Context context) {
+		this.context = context;
+	}
+
+	public void setListener(Listener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Queue a file for parsing. Encrypted files are sent to decryption right away,
+	 * they will be parsed once decrypted.
+	 * @param orgFile
+	 * @param file the file on disk
+	 */
+	public void add(OrgFile orgFile, File file) {
+		if (orgFile.isEncrypted()) {
+			try {
+				OrgFileParser.decryptAndParseFile(orgFile, FileUtils.readBytes(file), context);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			return;
+		}
+
+		jobs.add(new Job(orgFile, file));
+	}
+
+	/**
+	 * Parse all the queued files and write them to the database, in the order they
+	 * were added. Blocks until every file is written.
+	 */
+	public void run() {
+		if (jobs.isEmpty())
+			return;
+
+		int threads = Math.min(jobs.size(), Runtime.getRuntime().availableProcessors());
+
+		// The parsers read what they need from the database here, before the
+		// writer opens its first transaction
+		BlockingQueue<OrgFileParser> parsers = new ArrayBlockingQueue<>(threads);
+		for (int i = 0; i < threads; i++)
+			parsers.add(new OrgFileParser(context));
+
+		// Files are parsed in the order they are written: the file the writer
+		// waits for always has a parser
+		ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			private int count = 0;
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				return new Thread(runnable, THREAD_NAME + "-" + (++count));
+			}
+		});
+		for (Job job : jobs)
+			executor.execute(new ParseTask(job, parsers));
+		executor.shutdown();
+
+		OrgDatabase db = OrgDatabase.getInstance();
+		boolean rebuild = isRebuild();
+		if (rebuild)
+			db.beginBulkInsert();
+		try {
+			write(db);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			// The parsers are done when every file was written. Otherwise the writer gave
+			// up, and the parsers blocked on the queue of a file must not wait forever.
+			executor.shutdownNow();
+			if (rebuild)
+				db.endBulkInsert();
+			// This thread may not write again for a long time
+			db.releaseStatements();
+			jobs.clear();
+		}
+	}
+
+	/**
+	 * @return true if none of the queued files is in the database yet
+	 */
+	private boolean isRebuild() {
+		ArrayList<String> filenames = OrgProviderUtils.getFilenames(context.getContentResolver());
+		for (Job job : jobs) {
+			if (filenames.contains(job.orgFile.filename))
+				return false;
+		}
+		return true;
+	}
+
+	private void write(OrgDatabase db) throws InterruptedException {
+		long ingestTime = 0, statements = 0;
+		int rows = 0;
+		Progress progress = new Progress();
+
+		for (Job job : jobs) {
+			OrgFileWriter writer = null;
+			db.beginTransaction();
+			try {
+				Batch batch;
+				do {
+					batch = job.batches.take();
+
+					if (writer == null && batch.started) {
+						writer = new OrgFileWriter(context);
+						writer.begin(job.orgFile);
+					}
+
+					if (writer != null) {
+						for (OrgParsedNode node : batch.nodes)
+							writer.write(node);
+						if (batch.todos != null)
+							writer.addTodos(batch.todos);
+					}
+
+					progress.update(job, batch.bytes);
+				} while (!batch.last);
+
+				if (writer != null) {
+					writer.end(batch.complete);
+					ingestTime += writer.getIngestTime();
+					statements += writer.getStatementCount();
+					rows += writer.getRowCount();
+				}
+				// A file that could not be read completely keeps its previous content
+				if (batch.complete)
+					db.setTransactionSuccessful();
+			} finally {
+				db.endTransaction();
+			}
+
+			progress.done(job);
+			if (writer != null && writer.isComplete() && listener != null)
+				listener.onFileWritten(job.orgFile);
+		}
+
+		Log.v("ingest", jobs.size() + " files: " + rows + " rows, " + statements
+				+ " statements, " + (ingestTime / 1000000) + " ms");
+	}
+
+	/**
+	 * Follows the writing of the files. Called on the thread running the pipeline.
+	 */
+	public interface Listener {
+		/**
+		 * @param orgFile the file being written
+		 * @param bytes bytes written so far, all files included
+		 * @param totalBytes size of all the files
+		 */
+		void onProgress(OrgFile orgFile, long bytes, long totalBytes);
+
+		/**
+		 * The nodes of this file are committed and can be queried
+		 */
+		void onFileWritten(OrgFile orgFile);
+	}
+
+	/**
+	 * Reports the bytes written to the listener, at most once per percent
+	 */
+	private class Progress {
+		private final long totalBytes;
+		private long doneBytes;
+		private long lastPercent = -1;
+
+		Progress() {
+			long total = 0;
+			for (Job job : jobs)
+				total += job.size;
+			totalBytes = total;
+		}
+
+		void update(Job job, long fileBytes) {
+			if (listener == null || totalBytes <= 0)
+				return;
+			long bytes = doneBytes + Math.min(Math.max(fileBytes, 0), job.size);
+			long percent = 100 * bytes / totalBytes;
+			if (percent == lastPercent)
+				return;
+			lastPercent = percent;
+			listener.onProgress(job.orgFile, bytes, totalBytes);
+		}
+
+		void done(Job job) {
+			update(job, job.size);
+			doneBytes += job.size;
+		}
+	}
+
+	private static class Job {
+		final OrgFile orgFile;
+		final File file;
+		final long size;
+		final BlockingQueue<Batch> batches = new ArrayBlockingQueue<>(BATCHES_PER_FILE);
+
+		Job(OrgFile orgFile, File file) {
+			this.orgFile = orgFile;
+			this.file = file;
+			this.size = file.length();
+		}
+	}
+
+	/**
+	 * A slice of the nodes of a file
+	 */
+	private static class Batch {
+		final ArrayList<OrgParsedNode> nodes = new ArrayList<>(BATCH_SIZE);
+		HashMap<String, Boolean> todos;
+		boolean started;
+		boolean last;
+		boolean complete;
+		// Bytes of the file parsed when the batch was sent
+		long bytes;
+
+		Batch(boolean started) {
+			this.started = started;
+		}
+	}
+
+	/**
+	 * Parse one file with a parser of the pool
+	 */
+	private static class ParseTask implements Runnable, OrgFileParser.Sink {
+		private final Job job;
+		private final BlockingQueue<OrgFileParser> parsers;
+		private Batch batch;
+		private OrgLineReader reader;
+
+		ParseTask(Job job, BlockingQueue<OrgFileParser> parsers) {
+			this.job = job;
+			this.parsers = parsers;
+			this.batch = new Batch(false);
+		}
+
+		@Override
+		public void run() {
+			OrgFileParser parser = null;
+			try {
+				parser = parsers.take();
+				reader = new OrgLineReader(job.file);
+				try {
+					parser.parse(job.orgFile, reader, this);
+				} finally {
+					reader.close();
+				}
+			} catch (InterruptedException | ParseInterruptedException e) {
+				// The writer gave up, nothing to report
+				Thread.currentThread().interrupt();
+				return;
+			} catch (Exception e) {
+				e.printStackTrace();
+			} finally {
+				if (parser != null)
+					parsers.add(parser);
+			}
+
+			// The file could not be opened or the parser failed: the writer still
+			// has to know that this file is over, unless it stopped
+			if (!batch.last && !Thread.currentThread().isInterrupted())
+				end(false);
+		}
+
+		private void send(Batch next) {
+			batch.bytes = batch.last ? job.size : reader.getPosition();
+			try {
+				job.batches.put(batch);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new ParseInterruptedException();
+			}
+			batch = next;
+		}
+
+		@Override
+		public void begin(OrgFile orgFile) {
+			batch.started = true;
+		}
+
+		@Override
+		public void write(OrgParsedNode node) {
+			// Clean the payload for the full text index here, in parallel
+			node.getCleanedPayload();
+			batch.nodes.add(node);
+			if (batch.nodes.size() >= BATCH_SIZE)
+				send(new Batch(true));
+		}
+
+		@Override
+		public void addTodos(HashMap<String, Boolean> todos) {
+			if (todos == null) return;
+			if (batch.todos == null)
+				batch.todos = new HashMap<>();
+			batch.todos.putAll(todos);
+		}
+
+		@Override
+		public void end(boolean complete) {
+			batch.last = true;
+			batch.complete = complete;
+			send(batch);
+		}
+	}
+
+	/**
+	 * Unwinds the parser of a file when its thread is interrupted while it sends a batch
+	 */
+	private static class ParseInterruptedException extends RuntimeException {
+	}
+}
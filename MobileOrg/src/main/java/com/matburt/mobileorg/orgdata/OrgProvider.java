@@ -1,14 +1,20 @@
 package com.matburt.mobileorg.orgdata;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
+import android.os.CancellationSignal;
 
+import com.matburt.mobileorg.orgdata.OrgContract.Agenda;
+import com.matburt.mobileorg.orgdata.OrgContract.AgendaRepeats;
 import com.matburt.mobileorg.orgdata.OrgContract.Files;
 import com.matburt.mobileorg.orgdata.OrgContract.OrgData;
 import com.matburt.mobileorg.orgdata.OrgContract.Search;
@@ -16,12 +22,16 @@ import com.matburt.mobileorg.orgdata.OrgContract.Timestamps;
 import com.matburt.mobileorg.orgdata.OrgDatabase.Tables;
 import com.matburt.mobileorg.util.SelectionBuilder;
 
+import java.util.ArrayList;
+
 public class OrgProvider extends ContentProvider {
     public static final String AUTHORITY = OrgContract.CONTENT_AUTHORITY;
     private static final int ORGDATA = 100;
     private static final int ORGDATA_ID = 101;
     private static final int ORGDATA_PARENT = 102;
     private static final int ORGDATA_CHILDREN = 103;
+    private static final int ORGDATA_SUBTREE = 104;
+    private static final int ORGDATA_PATH = 105;
     private static final int FILES = 200;
     private static final int FILES_ID = 201;
     private static final int FILES_FILENAME = 202;
@@ -29,9 +39,17 @@ public class OrgProvider extends ContentProvider {
     private static final int TODOS = 500;
     private static final int PRIORITIES = 600;
     private static final int SEARCH = 700;
+    private static final int FULLTEXT = 701;
+    private static final int FULLTEXT_IDS = 702;
     private static final int TIMESTAMPS = 800;
     private static final int TIMESTAMPS_ID = 801;
+    private static final int AGENDA = 900;
+    private static final int AGENDA_DAYS = 901;
+    private static final int AGENDA_REPEATS = 902;
     private static final UriMatcher uriMatcher = buildUriMatcher();
+    // File ids given to the change notifier
+    private static final long ALL_FILES = -1;
+    private static final long NO_FILE = -2;
 
     private static UriMatcher buildUriMatcher() {
         final UriMatcher uriMatcher = new UriMatcher(UriMatcher.NO_MATCH);
@@ -39,6 +57,8 @@ public class OrgProvider extends ContentProvider {
         uriMatcher.addURI(AUTHORITY, Tables.ORGDATA + "/*", ORGDATA_ID);
         uriMatcher.addURI(AUTHORITY, Tables.ORGDATA + "/*/parent", ORGDATA_PARENT);
         uriMatcher.addURI(AUTHORITY, Tables.ORGDATA + "/*/children", ORGDATA_CHILDREN);
+        uriMatcher.addURI(AUTHORITY, Tables.ORGDATA + "/*/subtree", ORGDATA_SUBTREE);
+        uriMatcher.addURI(AUTHORITY, Tables.ORGDATA + "/*/path", ORGDATA_PATH);
 
         uriMatcher.addURI(AUTHORITY, Tables.FILES, FILES);
         uriMatcher.addURI(AUTHORITY, Tables.FILES + "/*", FILES_ID);
@@ -49,10 +69,16 @@ public class OrgProvider extends ContentProvider {
         uriMatcher.addURI(AUTHORITY, Tables.PRIORITIES, PRIORITIES);
 
         uriMatcher.addURI(AUTHORITY, "search/*", SEARCH);
+        uriMatcher.addURI(AUTHORITY, "fulltext/*", FULLTEXT);
+        uriMatcher.addURI(AUTHORITY, "fulltext/*/ids", FULLTEXT_IDS);
 
         uriMatcher.addURI(AUTHORITY, Tables.TIMESTAMPS, TIMESTAMPS);
         uriMatcher.addURI(AUTHORITY, Tables.TIMESTAMPS + "/*", TIMESTAMPS_ID);
 
+        uriMatcher.addURI(AUTHORITY, Tables.AGENDA, AGENDA);
+        uriMatcher.addURI(AUTHORITY, Tables.AGENDA + "/*/*", AGENDA_DAYS);
+        uriMatcher.addURI(AUTHORITY, Tables.AGENDA_REPEATS, AGENDA_REPEATS);
+
 
         return uriMatcher;
     }
@@ -66,56 +92,234 @@ public class OrgProvider extends ContentProvider {
     @Override
     public Cursor query(Uri uri, String[] projection, String selection,
                         String[] selectionArgs, String sortOrder) {
+        return query(uri, projection, selection, selectionArgs, sortOrder, null);
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection,
+                        String[] selectionArgs, String sortOrder, CancellationSignal cancellationSignal) {
         final SQLiteDatabase db = OrgDatabase.getInstance().getReadableDatabase();
 
+        // Ranked and highlighted, the projection and selection do not apply
+        switch (uriMatcher.match(uri)) {
+            case FULLTEXT:
+                final String query = Search.getSearchTerm(uri);
+                long[] ids = Search.getIds(uri);
+                if (ids == null)
+                    ids = OrgFullTextSearch.rank(db, query, OrgFullTextSearch.MAX_RESULTS, cancellationSignal);
+                return OrgFullTextSearch.query(db, query, ids, cancellationSignal);
+            case FULLTEXT_IDS:
+                return OrgFullTextSearch.queryIds(db, Search.getSearchTerm(uri),
+                        OrgFullTextSearch.MAX_RANKED_RESULTS, cancellationSignal);
+        }
+
         final SelectionBuilder builder = buildSelectionFromUri(uri);
         return builder.where(selection, selectionArgs).query(db, projection, sortOrder);
     }
 
     @Override
     public Uri insert(Uri uri, ContentValues contentValues) {
+        long rowId = insertRow(uri, contentValues);
+
+        if (rowId > 0)
+            return ContentUris.withAppendedId(uri, rowId);
+        else
+            throw new SQLException("Failed to insert row into " + uri);
+    }
+
+    /**
+     * The row is written with its orgdata_tree and agenda rows in one transaction,
+     * nested in the one of {@link #bulkInsert} or {@link #applyBatch}.
+     * @return the id of the new row, or a negative value if it could not be inserted
+     */
+    private long insertRow(Uri uri, ContentValues contentValues) {
         final String tableName = getTableNameFromUri(uri);
 
         if (contentValues == null)
             contentValues = new ContentValues();
 
-        SQLiteDatabase db = OrgDatabase.getInstance().getWritableDatabase();
-        long rowId = 0;
+        OrgDatabase orgDatabase = OrgDatabase.getInstance();
+        SQLiteDatabase db = orgDatabase.getWritableDatabase();
+        long rowId;
 
+        orgDatabase.beginTransaction();
         try {
             rowId = db.insert(tableName, null, contentValues);
+            if (rowId > 0 && tableName.equals(Tables.ORGDATA)) {
+                Long parentId = contentValues.getAsLong(OrgData.PARENT_ID);
+                orgDatabase.fastInsertAncestors(rowId, parentId == null ? -1 : parentId);
+                updateAgenda(rowId, contentValues);
+            }
+            orgDatabase.setTransactionSuccessful();
         } catch (Exception e) {
             e.printStackTrace();
+            rowId = -1;
+        } finally {
+            orgDatabase.endTransaction();
         }
 
         if (rowId > 0) {
-            Uri noteUri = ContentUris.withAppendedId(uri, rowId);
-            getContext().getContentResolver().notifyChange(noteUri, null);
-            return noteUri;
-        } else
-            throw new SQLException("Failed to insert row into " + uri);
+            Long fileId = contentValues.getAsLong(OrgData.FILE_ID);
+            Long nodeId = null;
+            if (tableName.equals(Tables.FILES))
+                fileId = rowId;
+            else if (tableName.equals(Tables.ORGDATA))
+                nodeId = rowId;
+            else if (tableName.equals(Tables.TIMESTAMPS))
+                nodeId = contentValues.getAsLong(Timestamps.NODE_ID);
+            notifyChange(ContentUris.withAppendedId(uri, rowId), fileId == null ? NO_FILE : fileId,
+                    nodeId == null ? -1 : nodeId);
+        }
+        return rowId;
     }
 
+    /**
+     * Insert all the rows in one transaction. Rows that can't be inserted, such as
+     * duplicated TODO keywords, are skipped.
+     * @return the number of rows inserted
+     */
+    @Override
+    public int bulkInsert(Uri uri, ContentValues[] values) {
+        OrgDatabase db = OrgDatabase.getInstance();
+        int count = 0;
+        db.beginTransaction();
+        try {
+            for (ContentValues rowValues : values) {
+                if (insertRow(uri, rowValues) > 0)
+                    count++;
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return count;
+    }
+
+    /**
+     * Apply all the operations in one transaction: if one fails, none is kept.
+     * Observers are notified once the transaction is committed.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        OrgDatabase db = OrgDatabase.getInstance();
+        ContentProviderResult[] results;
+        db.beginTransaction();
+        try {
+            results = super.applyBatch(operations);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return results;
+    }
 
     @Override
     public int delete(Uri uri, String selection, String[] selectionArgs) {
         final SQLiteDatabase db = OrgDatabase.getInstance().getWritableDatabase();
         final SelectionBuilder builder = buildSelectionFromUri(uri);
+        // The file of a node has to be read before the node is gone
+        final long fileId = getFileId(uri);
         int count = builder.where(selection, selectionArgs).delete(db);
-        getContext().getContentResolver().notifyChange(uri, null);
+        notifyChange(uri, fileId, getNodeId(uri));
         return count;
     }
 
+    /**
+     * A node given a new parent is moved with its descendants in orgdata_tree, in the
+     * same transaction. The parent can only be changed for one node at a time.
+     */
     @Override
     public int update(Uri uri, ContentValues values, String selection,
                       String[] selectionArgs) {
-        final SQLiteDatabase db = OrgDatabase.getInstance().getWritableDatabase();
+        final boolean isNode = uriMatcher.match(uri) == ORGDATA_ID;
+        final Long parentId = values.getAsLong(OrgData.PARENT_ID);
+        if (parentId != null && !isNode)
+            throw new IllegalArgumentException("Parent of nodes changed with " + uri
+                    + ", use the uri of one node");
+
+        final OrgDatabase orgDatabase = OrgDatabase.getInstance();
+        final SQLiteDatabase db = orgDatabase.getWritableDatabase();
         final SelectionBuilder builder = buildSelectionFromUri(uri);
-        int count = builder.where(selection, selectionArgs).update(db, values);
-        getContext().getContentResolver().notifyChange(uri, null);
+        int count;
+        orgDatabase.beginTransaction();
+        try {
+            if (parentId != null)
+                orgDatabase.fastMoveNode(getNodeId(uri), parentId);
+            count = builder.where(selection, selectionArgs).update(db, values);
+            if (count > 0 && isNode)
+                updateAgenda(getNodeId(uri), values);
+            orgDatabase.setTransactionSuccessful();
+        } finally {
+            orgDatabase.endTransaction();
+        }
+        notifyChange(uri, getFileId(uri), getNodeId(uri));
         return count;
     }
 
+    /**
+     * Rewrite the agenda rows of a node whose scheduled or deadline column was written, or
+     * whose payload, where repeaters are, was
+     */
+    private static void updateAgenda(long nodeId, ContentValues values) {
+        if (values.containsKey(OrgData.SCHEDULED) || values.containsKey(OrgData.DEADLINE)
+                || values.containsKey(OrgData.PAYLOAD))
+            OrgDatabase.getInstance().updateAgenda(nodeId);
+    }
+
+    /**
+     * Report a change to the {@link OrgChangeNotifier}, which sends it with the other
+     * changes of the transaction
+     * @param fileId the file that changed, {@link #ALL_FILES} if it is not known,
+     *               {@link #NO_FILE} if the uri is not about nodes
+     * @param nodeId the node that changed, -1 for the whole file
+     */
+    private void notifyChange(Uri uri, long fileId, long nodeId) {
+        OrgChangeNotifier notifier = OrgDatabase.getInstance().getChangeNotifier();
+        notifier.uriChanged(uri);
+        if (fileId == ALL_FILES)
+            notifier.allFilesChanged();
+        else if (fileId != NO_FILE && nodeId >= 0)
+            notifier.nodeChanged(fileId, nodeId);
+        else if (fileId != NO_FILE)
+            notifier.fileChanged(fileId);
+    }
+
+    /**
+     * @return the file of the rows of this uri
+     */
+    private long getFileId(Uri uri) {
+        switch (uriMatcher.match(uri)) {
+            case ORGDATA_ID:
+            case TIMESTAMPS_ID:
+                // A node out of any file, like the root of a file being added, has no observers
+                long fileId = OrgDatabase.getInstance().getFileId(getNodeId(uri));
+                return fileId >= 0 ? fileId : NO_FILE;
+            case FILES_ID:
+                return Long.parseLong(Files.getId(uri));
+            case TAGS:
+            case TODOS:
+            case PRIORITIES:
+                return NO_FILE;
+            default:
+                return ALL_FILES;
+        }
+    }
+
+    /**
+     * @return the node of the rows of this uri, -1 if they are not the rows of one node
+     */
+    private long getNodeId(Uri uri) {
+        switch (uriMatcher.match(uri)) {
+            case ORGDATA_ID:
+                return Long.parseLong(OrgData.getId(uri));
+            case TIMESTAMPS_ID:
+                return Long.parseLong(Timestamps.getId(uri));
+            default:
+                return -1;
+        }
+    }
+
     @Override
     public String getType(Uri uri) {
         // TODO Auto-generated method stub
@@ -133,6 +337,14 @@ public class OrgProvider extends ContentProvider {
                 return builder.table(Tables.ORGDATA).where(OrgData.ID + "=?", OrgData.getId(uri));
             case ORGDATA_CHILDREN:
                 return builder.table(Tables.ORGDATA).where(OrgData.PARENT_ID + "=?", OrgData.getId(uri));
+            case ORGDATA_SUBTREE:
+                return builder.table(Tables.ORGDATA_TREE + " JOIN " + Tables.ORGDATA + " ON "
+                        + Tables.ORGDATA + "." + OrgData.ID + "=" + Tables.ORGDATA_TREE + ".descendant")
+                        .where(Tables.ORGDATA_TREE + ".ancestor=?", OrgData.getId(uri));
+            case ORGDATA_PATH:
+                return builder.table(Tables.ORGDATA_TREE + " JOIN " + Tables.ORGDATA + " ON "
+                        + Tables.ORGDATA + "." + OrgData.ID + "=" + Tables.ORGDATA_TREE + ".ancestor")
+                        .where(Tables.ORGDATA_TREE + ".descendant=?", OrgData.getId(uri));
             case FILES:
                 return builder.table(Tables.FILES);
             case FILES_ID:
@@ -149,9 +361,19 @@ public class OrgProvider extends ContentProvider {
                 return builder.table(Tables.TIMESTAMPS);
             case TIMESTAMPS_ID:
                 return builder.table(Tables.TIMESTAMPS).where(Timestamps.NODE_ID+"=?", Timestamps.getId(uri));
+            case AGENDA:
+                return builder.table(Tables.AGENDA);
+            case AGENDA_DAYS:
+                return builder.table(Tables.AGENDA + " JOIN " + Tables.ORGDATA + " ON "
+                        + Tables.ORGDATA + "." + OrgData.ID + "=" + Tables.AGENDA + "." + Agenda.NODE_ID)
+                        .where(Tables.AGENDA + "." + Agenda.DAY + " BETWEEN ? AND ?",
+                                Agenda.getFirstDay(uri), Agenda.getLastDay(uri));
+            case AGENDA_REPEATS:
+                return builder.table(Tables.AGENDA_REPEATS + " JOIN " + Tables.ORGDATA + " ON "
+                        + Tables.ORGDATA + "." + OrgData.ID + "=" + Tables.AGENDA_REPEATS + "." + AgendaRepeats.NODE_ID);
             case SEARCH:
                 final String search = Search.getSearchTerm(uri);
-                return builder.table(Tables.ORGDATA).where("name LIKE %?%", search);
+                return builder.table(Tables.ORGDATA).where(OrgData.NAME + " LIKE ?", "%" + search + "%");
             default:
                 throw new IllegalArgumentException("Unknown URI " + uri);
         }
@@ -1,22 +1,32 @@
 package com.matburt.mobileorg.orgdata;
 
+import android.content.ContentProviderOperation;
 import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.OperationApplicationException;
 import android.database.Cursor;
+import android.net.Uri;
+import android.os.CancellationSignal;
+import android.os.RemoteException;
 import android.text.TextUtils;
+import android.util.Log;
 
+import com.matburt.mobileorg.orgdata.OrgContract.Agenda;
+import com.matburt.mobileorg.orgdata.OrgContract.AgendaRepeats;
 import com.matburt.mobileorg.orgdata.OrgContract.Files;
 import com.matburt.mobileorg.orgdata.OrgContract.OrgData;
 import com.matburt.mobileorg.orgdata.OrgContract.Priorities;
+import com.matburt.mobileorg.orgdata.OrgContract.Search;
 import com.matburt.mobileorg.orgdata.OrgContract.Tags;
 import com.matburt.mobileorg.orgdata.OrgContract.Timestamps;
 import com.matburt.mobileorg.orgdata.OrgContract.Todos;
+import com.matburt.mobileorg.orgdata.OrgDatabase.Tables;
 import com.matburt.mobileorg.util.OrgFileNotFoundException;
 import com.matburt.mobileorg.util.OrgNodeNotFoundException;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 
@@ -87,9 +97,14 @@ public class OrgProviderUtils {
 	}
 
 
+	/**
+	 * Insert the TODO keywords in one transaction, the ones already known are skipped
+	 */
 	public static void addTodos(HashMap<String, Boolean> todos,
 								ContentResolver resolver) {
-		if(todos == null) return;
+		if(todos == null || todos.isEmpty()) return;
+		ContentValues[] rows = new ContentValues[todos.size()];
+		int i = 0;
 		for (String name : todos.keySet()) {
 			ContentValues values = new ContentValues();
 			values.put(Todos.NAME, name);
@@ -97,12 +112,13 @@ public class OrgProviderUtils {
 
 			if (todos.get(name))
 				values.put(Todos.ISDONE, 1);
+			rows[i++] = values;
+		}
 
-			try{
-				resolver.insert(Todos.CONTENT_URI, values);
-			} catch (Exception e){
-				e.printStackTrace();
-			}
+		try{
+			resolver.bulkInsert(Todos.CONTENT_URI, rows);
+		} catch (Exception e){
+			e.printStackTrace();
 		}
 	}
 	public static ArrayList<String> getTodos(ContentResolver resolver) {
@@ -115,13 +131,7 @@ public class OrgProviderUtils {
 	}
 	
 	public static void setPriorities(ArrayList<String> priorities, ContentResolver resolver) {
-		resolver.delete(Priorities.CONTENT_URI, null, null);
-
-		for (String priority : priorities) {
-			ContentValues values = new ContentValues();
-			values.put(Priorities.NAME, priority);
-			resolver.insert(Priorities.CONTENT_URI, values);
-		}
+		replaceNames(Priorities.CONTENT_URI, Priorities.NAME, priorities, resolver);
 	}
 
 	public static ArrayList<String> getPriorities(ContentResolver resolver) {
@@ -134,13 +144,25 @@ public class OrgProviderUtils {
 	}
 	
 
-	public static void setTags(ArrayList<String> priorities, ContentResolver resolver) {
-		resolver.delete(Tags.CONTENT_URI, null, null);
+	public static void setTags(ArrayList<String> tags, ContentResolver resolver) {
+		replaceNames(Tags.CONTENT_URI, Tags.NAME, tags, resolver);
+	}
 
-		for (String priority : priorities) {
-			ContentValues values = new ContentValues();
-			values.put(Tags.NAME, priority);
-			resolver.insert(Tags.CONTENT_URI, values);
+	/**
+	 * Replace all the rows of a table of names in one batch, readers see either the old
+	 * names or the new ones
+	 */
+	private static void replaceNames(Uri uri, String column, ArrayList<String> names,
+									 ContentResolver resolver) {
+		ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+		operations.add(ContentProviderOperation.newDelete(uri).build());
+		for (String name : names)
+			operations.add(ContentProviderOperation.newInsert(uri).withValue(column, name).build());
+
+		try {
+			resolver.applyBatch(OrgContract.CONTENT_AUTHORITY, operations);
+		} catch (RemoteException | OperationApplicationException e) {
+			e.printStackTrace();
 		}
 	}
 	public static ArrayList<String> getTags(ContentResolver resolver) {
@@ -164,24 +186,47 @@ public class OrgProviderUtils {
 		return list;
 	}
 
+	/**
+	 * @return the nodes from the file node down to this node, read in one query
+	 */
 	public static ArrayList<OrgNode> getOrgNodePathFromTopLevel(long node_id, ContentResolver resolver) {
-		ArrayList<OrgNode> nodes = new ArrayList<OrgNode>();
-		
-		long currentId = node_id;
-		while(currentId >= 0) {
-			try {
-				OrgNode node = new OrgNode(currentId, resolver);
-				nodes.add(node);
-				currentId = node.parentId;
-			} catch (OrgNodeNotFoundException e) {
+		if (node_id < 0)
+			return new ArrayList<OrgNode>();
+
+		Cursor cursor = resolver.query(OrgData.buildPathUri(node_id), OrgData.LIGHT_COLUMNS,
+				null, null, OrgData.PATH_SORT);
+		if (cursor == null)
+			throw new IllegalStateException("Couldn't build entire path to root from a given node");
+
+		ArrayList<OrgNode> nodes = orgDataCursorToArrayList(cursor);
+		cursor.close();
+
+		// The path must go up to a file node, without holes
+		if (nodes.isEmpty() || nodes.get(0).parentId >= 0 || nodes.get(nodes.size() - 1).id != node_id)
+			throw new IllegalStateException("Couldn't build entire path to root from a given node");
+		for (int i = 1; i < nodes.size(); i++) {
+			if (nodes.get(i).parentId != nodes.get(i - 1).id)
 				throw new IllegalStateException("Couldn't build entire path to root from a given node");
-			}
 		}
-		
-		Collections.reverse(nodes);
 		return nodes;
 	}
 
+	/**
+	 * @param withPayloads false to leave the payloads out, they are then read on first use
+	 * @return the node and all its descendants, read in one query, in no particular order
+	 */
+	public static ArrayList<OrgNode> getOrgNodeSubtree(long node_id, ContentResolver resolver,
+													   boolean withPayloads) {
+		Cursor cursor = resolver.query(OrgData.buildSubtreeUri(node_id),
+				withPayloads ? OrgData.DEFAULT_COLUMNS : OrgData.LIGHT_COLUMNS, null, null, null);
+		if (cursor == null)
+			return new ArrayList<OrgNode>();
+
+		ArrayList<OrgNode> result = orgDataCursorToArrayList(cursor);
+		cursor.close();
+		return result;
+	}
+
 
 	public static void clearDB(ContentResolver resolver) {
 		resolver.delete(OrgData.CONTENT_URI, null, null);
@@ -209,12 +254,41 @@ public class OrgProviderUtils {
 		return false;
 	}
 	
+	/**
+	 * Full text search of the headings, tags and payloads
+	 * @param query words typed by the user
+	 * @param resolver
+	 * @return the matching nodes, best first, with {@link Search#NAME_SNIPPET}
+	 * and {@link Search#SNIPPET}
+	 */
 	public static Cursor search(String query, ContentResolver resolver) {
-		Cursor cursor = resolver.query(OrgData.CONTENT_URI, OrgData.DEFAULT_COLUMNS,
-				OrgData.NAME + " LIKE ?", new String[] { query },
-				OrgData.DEFAULT_SORT);
-		
-		return cursor;
+		return resolver.query(Search.buildFullTextUri(query), null, null, null, null);
+	}
+
+	/**
+	 * @param query words typed by the user
+	 * @param resolver
+	 * @param signal cancels the search, can be null
+	 * @return the ids of the matching nodes, best first
+	 */
+	public static long[] searchIds(String query, ContentResolver resolver, CancellationSignal signal) {
+		Cursor cursor = resolver.query(Search.buildRankedIdsUri(query), null, null, null, null, signal);
+		if (cursor == null)
+			return new long[0];
+
+		long[] ids = new long[cursor.getCount()];
+		for (int i = 0; cursor.moveToNext(); i++)
+			ids[i] = cursor.getLong(0);
+		cursor.close();
+		return ids;
+	}
+
+	/**
+	 * Read a page of the results of {@link #searchIds(String, ContentResolver, CancellationSignal)}
+	 * @return these nodes in the same order, with {@link Search#NAME_SNIPPET} and {@link Search#SNIPPET}
+	 */
+	public static Cursor search(String query, long[] ids, ContentResolver resolver, CancellationSignal signal) {
+		return resolver.query(Search.buildFullTextUri(query, ids), null, null, null, null, signal);
 	}
 
 	public static ArrayList<OrgNode> getOrgNodeChildren(long nodeId, ContentResolver resolver) {
@@ -222,7 +296,7 @@ public class OrgProviderUtils {
 		String sort = nodeId == -1 ? OrgData.NAME_SORT : OrgData.POSITION_SORT;
 //		Log.v("sort", "sort : " + sort);
 		Cursor childCursor = resolver.query(OrgData.buildChildrenUri(nodeId),
-				OrgData.DEFAULT_COLUMNS, null, null, sort);
+				OrgData.LIGHT_COLUMNS, null, null, sort);
 
 		if(childCursor!=null) {
 			ArrayList<OrgNode> result = orgDataCursorToArrayList(childCursor);
@@ -247,4 +321,94 @@ public class OrgProviderUtils {
 		
 		return result;
 	}
+
+	/**
+	 * Read the payload of a node from the database
+	 * @param nodeId
+	 * @return the payload, empty if the node doesn't exist
+	 */
+	public static String getPayload(long nodeId) {
+		Cursor cursor = OrgDatabase.getInstance().getReadableDatabase().rawQuery(
+				"SELECT " + OrgData.PAYLOAD + " FROM " + Tables.ORGDATA + " WHERE " + OrgData.ID + "=?",
+				new String[]{Long.toString(nodeId)});
+		if (cursor == null)
+			return "";
+
+		String payload = cursor.moveToFirst() ? cursor.getString(0) : "";
+		cursor.close();
+		return payload;
+	}
+
+	/**
+	 * @return the {@link OrgData#ID}, {@link OrgData#NAME} and {@link OrgData#PAYLOAD} of the
+	 * nodes, in one query
+	 */
+	public static Cursor getNamesAndPayloads(Collection<Long> ids, ContentResolver resolver) {
+		// Ids are numbers, they can be inlined
+		return resolver.query(OrgData.CONTENT_URI, new String[]{OrgData.ID, OrgData.NAME, OrgData.PAYLOAD},
+				OrgData.ID + " IN (" + TextUtils.join(",", ids) + ")", null, null);
+	}
+
+	/**
+	 * @return the agenda entries from firstDay to lastDay included, by day and time, with
+	 * the {@link OrgData#LIGHT_COLUMNS} of their node
+	 */
+	public static Cursor getAgenda(long firstDay, long lastDay, ContentResolver resolver) {
+		return resolver.query(Agenda.buildDaysUri(firstDay, lastDay), Agenda.DEFAULT_COLUMNS,
+				null, null, Agenda.DEFAULT_SORT);
+	}
+
+	/**
+	 * @return the timestamps with a repeater or a warning period, with their node
+	 */
+	public static Cursor getAgendaRepeats(ContentResolver resolver) {
+		return resolver.query(AgendaRepeats.CONTENT_URI, AgendaRepeats.DEFAULT_COLUMNS, null, null, null);
+	}
+
+	/**
+	 * @return the first day from this one on with agenda entries, -1 if there is none
+	 */
+	public static long getNextAgendaDay(long day, ContentResolver resolver) {
+		return queryAgendaDay("MIN(" + Agenda.DAY + ")", Agenda.DAY + ">=?", day, resolver);
+	}
+
+	/**
+	 * @return the last day up to this one with agenda entries, -1 if there is none
+	 */
+	public static long getPreviousAgendaDay(long day, ContentResolver resolver) {
+		return queryAgendaDay("MAX(" + Agenda.DAY + ")", Agenda.DAY + "<=?", day, resolver);
+	}
+
+	private static long queryAgendaDay(String column, String selection, long day, ContentResolver resolver) {
+		Cursor cursor = resolver.query(Agenda.CONTENT_URI, new String[]{column}, selection,
+				new String[]{Long.toString(day)}, null);
+		if (cursor == null)
+			return -1;
+
+		long result = cursor.moveToFirst() && !cursor.isNull(0) ? cursor.getLong(0) : -1;
+		cursor.close();
+		return result;
+	}
+
+	public static void deleteTimestamp(Context context, long nodeId, String where){
+		Uri uri = Timestamps.buildIdUri(nodeId);
+		context.getContentResolver().delete(uri, where, null);
+	}
+
+	/**
+	 * Replace the stored timestamp of the same type as timeDate
+	 */
+	public static void updateTimestamp(Context context, OrgNodeTimeDate timeDate, long nodeId, long fileId) {
+		deleteTimestamp(context, nodeId, Timestamps.TYPE + "=" + timeDate.type.ordinal());
+		if (timeDate.getEpochTime() < 0) return;
+
+		ContentValues values = new ContentValues();
+		values.put(Timestamps.ALL_DAY, timeDate.isAllDay());
+		values.put(Timestamps.TIMESTAMP, timeDate.getEpochTime());
+		values.put(Timestamps.TYPE, timeDate.type.ordinal());
+		values.put(Timestamps.NODE_ID, nodeId);
+		values.put(Timestamps.FILE_ID, fileId);
+		context.getContentResolver().insert(Timestamps.buildIdUri(nodeId), values);
+		Log.v("OrgNodeTimeDate","update epoch : "+timeDate.getEpochTime() + " with type : "+timeDate.type);
+	}
 }
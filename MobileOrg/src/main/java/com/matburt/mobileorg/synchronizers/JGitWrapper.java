@@ -10,7 +10,7 @@ import android.os.AsyncTask;
 import android.widget.Toast;
 
 import com.matburt.mobileorg.orgdata.OrgFile;
-import com.matburt.mobileorg.orgdata.OrgFileParser;
+import com.matburt.mobileorg.orgdata.OrgParserPipeline;
 import com.matburt.mobileorg.orgdata.OrgProviderUtils;
 import com.matburt.mobileorg.OrgNodeListActivity;
 import com.matburt.mobileorg.R;
@@ -360,25 +360,15 @@ public class JGitWrapper {
             File f = new File(Synchronizer.getInstance().getAbsoluteFilesDir(context));
             File file[] = f.listFiles();
             if (file == null) return;
+            OrgParserPipeline pipeline = new OrgParserPipeline(context);
             for (int i=0; i < file.length; i++)
             {
                 String filename = file[i].getName();
                 if(filename.equals(".git")) continue;
                 OrgFile orgFile = new OrgFile(filename, filename);
-                FileReader fileReader = null;
-                try {
-                    fileReader = new FileReader(Synchronizer.getInstance().getAbsoluteFilesDir(context) + "/" + filename);
-                    BufferedReader bufferedReader = new BufferedReader(fileReader);
-
-
-                    OrgFileParser.parseFile(orgFile, bufferedReader, context);
-
-                } catch (FileNotFoundException e) {
-                    e.printStackTrace();
-                }
-
-
+                pipeline.add(orgFile, file[i]);
             }
+            pipeline.run();
         }
     }
 
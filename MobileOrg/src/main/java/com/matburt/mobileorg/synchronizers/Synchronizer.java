@@ -7,13 +7,11 @@ import android.text.TextUtils;
 import com.matburt.mobileorg.gui.SynchronizerNotification;
 import com.matburt.mobileorg.gui.SynchronizerNotificationCompat;
 import com.matburt.mobileorg.orgdata.OrgFile;
-import com.matburt.mobileorg.orgdata.OrgFileParser;
+import com.matburt.mobileorg.orgdata.OrgParserPipeline;
 import com.matburt.mobileorg.R;
 import com.matburt.mobileorg.util.OrgUtils;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.security.cert.CertificateException;
 import java.util.HashSet;
 
@@ -97,21 +95,25 @@ public abstract class Synchronizer {
                 orgFile.removeFile(context, true);
             }
 
-            for (String filename : pulledFiles.newFiles) {
-                OrgFile orgFile = new OrgFile(filename, filename);
-                FileReader fileReader = new FileReader(getAbsoluteFilesDir(context) + "/" + filename);
-                BufferedReader bufferedReader = new BufferedReader(fileReader);
+            OrgParserPipeline pipeline = new OrgParserPipeline(context);
+            pipeline.setListener(new OrgParserPipeline.Listener() {
+                @Override
+                public void onProgress(OrgFile orgFile, long bytes, long totalBytes) {
+                    announceProgressParse(orgFile.filename, bytes, totalBytes);
+                }
 
-                OrgFileParser.parseFile(orgFile, bufferedReader, context);
-            }
+                @Override
+                public void onFileWritten(OrgFile orgFile) {
+                    // The change notifier of the database tells the views
+                }
+            });
+            for (String filename : pulledFiles.newFiles)
+                pipeline.add(new OrgFile(filename, filename), new File(getAbsoluteFilesDir(context) + "/" + filename));
 
-            for (String filename : pulledFiles.changedFiles) {
-                OrgFile orgFile = new OrgFile(filename, filename);
-                FileReader fileReader = new FileReader(getAbsoluteFilesDir(context) + "/" + filename);
-                BufferedReader bufferedReader = new BufferedReader(fileReader);
+            for (String filename : pulledFiles.changedFiles)
+                pipeline.add(new OrgFile(filename, filename), new File(getAbsoluteFilesDir(context) + "/" + filename));
 
-                OrgFileParser.parseFile(orgFile, bufferedReader, context);
-            }
+            pipeline.run();
 
             announceSyncDone();
             return pulledFiles.changedFiles;
@@ -143,6 +145,14 @@ public abstract class Synchronizer {
         announceProgressUpdate(progress, message);
     }
 
+    private void announceProgressParse(String filename, long bytes, long totalBytes) {
+        int progress = 0;
+        if (totalBytes > 0)
+            progress = (int) (100 * bytes / totalBytes);
+        String message = context.getString(R.string.parsing) + " " + filename;
+        announceProgressUpdate(progress, message);
+    }
+
     private void showErrorNotification(Exception exception) {
         notify.finalizeNotification();
 
@@ -50,6 +50,26 @@ public class FileUtils {
 		return fileContents.toString();
 	}
 
+	/**
+	 * Read a whole file, as is
+	 */
+	public static byte[] readBytes(File file) throws IOException {
+		FileInputStream stream = new FileInputStream(file);
+		try {
+			byte[] data = new byte[(int) file.length()];
+			int read = 0;
+			while (read < data.length) {
+				int count = stream.read(data, read, data.length - read);
+				if (count < 0)
+					throw new IOException("Unexpected end of " + file.getName());
+				read += count;
+			}
+			return data;
+		} finally {
+			stream.close();
+		}
+	}
+
 	public static String read(Context context, String filename){
 		File file = new File(filename);
 		try {
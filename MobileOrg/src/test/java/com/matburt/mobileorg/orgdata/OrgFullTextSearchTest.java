@@ -0,0 +1,102 @@
+package com.matburt.mobileorg.orgdata;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OrgFullTextSearchTest {
+	private static final int NAME = 0;
+	private static final int TAGS = 1;
+	private static final int PAYLOAD = 2;
+
+	@Test
+	public void matchQueryOfWords() {
+		assertEquals("", OrgFullTextSearch.getMatchQuery(null));
+		assertEquals("", OrgFullTextSearch.getMatchQuery(""));
+		assertEquals("meeting*", OrgFullTextSearch.getMatchQuery("meeting"));
+		assertEquals("weekly* meeting*", OrgFullTextSearch.getMatchQuery("  weekly   meeting "));
+		assertEquals("réunion* été* 会议*", OrgFullTextSearch.getMatchQuery("réunion été 会议"));
+		assertEquals("v2* 2016*", OrgFullTextSearch.getMatchQuery("v2 2016"));
+	}
+
+	@Test
+	public void matchQueryEscapesQuotes() {
+		assertEquals("", OrgFullTextSearch.getMatchQuery("\"'\""));
+		assertEquals("weekly* meeting*", OrgFullTextSearch.getMatchQuery("\"weekly meeting\""));
+		assertEquals("O* Reilly* s*", OrgFullTextSearch.getMatchQuery("O'Reilly's"));
+		assertEquals("meeting*", OrgFullTextSearch.getMatchQuery("\"meeting"));
+	}
+
+	@Test
+	public void matchQueryEscapesOperators() {
+		assertEquals("a* and* b* or* not* c* near* d*",
+				OrgFullTextSearch.getMatchQuery("a AND b OR NOT c NEAR d"));
+		// FTS operators are upper case only
+		assertEquals("And* or*", OrgFullTextSearch.getMatchQuery("And or"));
+		assertEquals("name* meeting* draft* week* near* 3* plan*",
+				OrgFullTextSearch.getMatchQuery("name:meeting -draft ^week NEAR/3 (plan*)"));
+		assertEquals("", OrgFullTextSearch.getMatchQuery("* - ( ) : ^ /"));
+	}
+
+	/**
+	 * matchinfo() of a one phrase query, with the 'pcnalx' format
+	 * @param rows rows of the table
+	 * @param lengths tokens of the row in each column
+	 * @param hits hits of the phrase in each column of the row
+	 * @param documents rows with at least one hit, for each column
+	 */
+	private static byte[] matchinfo(int rows, int[] lengths, int[] hits, int[] documents) {
+		int columns = lengths.length;
+		ByteBuffer buffer = ByteBuffer.allocate(4 * (3 + 2 * columns + 3 * columns))
+				.order(ByteOrder.nativeOrder());
+		buffer.putInt(1).putInt(columns).putInt(rows);
+		for (int column = 0; column < columns; column++)
+			buffer.putInt(10);
+		for (int column = 0; column < columns; column++)
+			buffer.putInt(lengths[column]);
+		for (int column = 0; column < columns; column++)
+			buffer.putInt(hits[column]).putInt(hits[column]).putInt(documents[column]);
+		return buffer.array();
+	}
+
+	private static double scoreHit(int column, int hits, int length, int documents) {
+		int[] lengths = {10, 10, 10};
+		int[] columnHits = new int[3];
+		int[] columnDocuments = {1, 1, 1};
+		lengths[column] = length;
+		columnHits[column] = hits;
+		columnDocuments[column] = documents;
+		return OrgFullTextSearch.score(matchinfo(100, lengths, columnHits, columnDocuments));
+	}
+
+	@Test
+	public void headingWeighsMoreThanTagsAndPayload() {
+		double name = scoreHit(NAME, 1, 10, 1);
+		double tags = scoreHit(TAGS, 1, 10, 1);
+		double payload = scoreHit(PAYLOAD, 1, 10, 1);
+		assertTrue(name > tags);
+		assertTrue(tags > payload);
+		assertTrue(payload > 0);
+		assertEquals(0, scoreHit(PAYLOAD, 0, 10, 1), 0);
+	}
+
+	@Test
+	public void bm25Ordering() {
+		// More hits rank first, with diminishing returns
+		double one = scoreHit(PAYLOAD, 1, 10, 5);
+		double two = scoreHit(PAYLOAD, 2, 10, 5);
+		double four = scoreHit(PAYLOAD, 4, 10, 5);
+		assertTrue(two > one);
+		assertTrue(four - two < 2 * (two - one));
+		// Rare words rank first
+		assertTrue(scoreHit(PAYLOAD, 1, 10, 2) > scoreHit(PAYLOAD, 1, 10, 20));
+		// Shorter payloads rank first
+		assertTrue(scoreHit(PAYLOAD, 1, 5, 5) > scoreHit(PAYLOAD, 1, 50, 5));
+		// A word in most rows still counts a little
+		assertTrue(scoreHit(PAYLOAD, 1, 10, 90) > 0);
+	}
+}
@@ -0,0 +1,18 @@
+package com.matburt.mobileorg.benchmarks;
+
+import android.content.ContentResolver;
+import android.content.Context;
+
+import com.matburt.mobileorg.orgdata.OrgDatabase;
+
+/**
+ * Start {@link OrgDatabase} on the SQLite shim: its queries return no row, which is
+ * what the orgdata classes see on a new install.
+ */
+public class BenchmarkDatabase {
+	public static Context start(ContentResolver resolver) {
+		Context context = new Context(resolver);
+		OrgDatabase.startDB(context);
+		return context;
+	}
+}
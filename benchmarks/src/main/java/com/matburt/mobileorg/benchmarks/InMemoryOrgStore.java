@@ -0,0 +1,156 @@
+package com.matburt.mobileorg.benchmarks;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+
+import com.matburt.mobileorg.orgdata.OrgContract.OrgData;
+import com.matburt.mobileorg.orgdata.OrgFile;
+import com.matburt.mobileorg.orgdata.OrgFileParser;
+import com.matburt.mobileorg.orgdata.OrgHeading;
+import com.matburt.mobileorg.orgdata.OrgNodeTimeDate;
+import com.matburt.mobileorg.orgdata.OrgParsedNode;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Stands in for OrgProvider: keeps the nodes written by {@link OrgFileParser} in memory
+ * and answers the orgdata id, children and subtree queries that
+ * {@link OrgFile#toString(ContentResolver)} makes. Every other query returns null, as if the table was empty.
+ */
+public class InMemoryOrgStore extends ContentResolver implements OrgFileParser.Sink {
+	private final HashMap<Long, Row> rows = new HashMap<>();
+	private final HashMap<Long, ArrayList<Row>> children = new HashMap<>();
+	private final HashMap<Integer, Long> idsByIndex = new HashMap<>();
+	private OrgFile orgFile;
+	private long nextId = 1;
+
+	public int size() {
+		return rows.size();
+	}
+
+	public void clear() {
+		rows.clear();
+		children.clear();
+		idsByIndex.clear();
+		nextId = 1;
+	}
+
+	@Override
+	public void begin(OrgFile orgFile) {
+		this.orgFile = orgFile;
+		orgFile.id = nextId++;
+		orgFile.nodeId = nextId++;
+		idsByIndex.clear();
+	}
+
+	@Override
+	public void write(OrgParsedNode parsed) {
+		long id, parentId = -1;
+		if (parsed.isRoot()) {
+			id = orgFile.nodeId;
+		} else {
+			id = nextId++;
+			parentId = idsByIndex.get(parsed.parentIndex);
+		}
+		idsByIndex.put(parsed.index, id);
+
+		Row row = new Row(parsed, id, parentId, orgFile.id);
+		rows.put(id, row);
+		if (!parsed.isRoot()) {
+			ArrayList<Row> siblings = children.get(parentId);
+			if (siblings == null) {
+				siblings = new ArrayList<>();
+				children.put(parentId, siblings);
+			}
+			siblings.add(row);
+		}
+	}
+
+	@Override
+	public void addTodos(HashMap<String, Boolean> todos) {
+	}
+
+	@Override
+	public void end(boolean complete) {
+		orgFile = null;
+	}
+
+	@Override
+	public Cursor query(Uri uri, String[] projection, String selection,
+						String[] selectionArgs, String sortOrder) {
+		List<String> segments = uri.getPathSegments();
+		if (!OrgData.CONTENT_URI.getPathSegments().get(0).equals(segments.get(0)) || segments.size() < 2)
+			return null;
+
+		long id = Long.parseLong(segments.get(1));
+		MatrixCursor cursor = new MatrixCursor(projection);
+		if (segments.size() == 2) {
+			Row row = rows.get(id);
+			if (row != null)
+				cursor.addRow(row.get(projection));
+		} else if (segments.size() == 3 && segments.get(2).equals("children")) {
+			ArrayList<Row> nodeChildren = children.get(id);
+			if (nodeChildren != null) {
+				for (Row row : nodeChildren)
+					cursor.addRow(row.get(projection));
+			}
+		} else if (segments.size() == 3 && segments.get(2).equals("subtree")) {
+			addSubtree(cursor, id, projection);
+		}
+		return cursor;
+	}
+
+	private void addSubtree(MatrixCursor cursor, long id, String[] projection) {
+		Row row = rows.get(id);
+		if (row != null)
+			cursor.addRow(row.get(projection));
+
+		ArrayList<Row> nodeChildren = children.get(id);
+		if (nodeChildren != null) {
+			for (Row child : nodeChildren)
+				addSubtree(cursor, (Long) child.values.get(OrgData.ID), projection);
+		}
+	}
+
+	/**
+	 * An orgdata row
+	 */
+	private static class Row {
+		final HashMap<String, Object> values = new HashMap<>();
+
+		Row(OrgParsedNode parsed, long id, long parentId, long fileId) {
+			OrgHeading node = parsed.heading;
+			values.put(OrgData.ID, id);
+			values.put(OrgData.PARENT_ID, parentId);
+			values.put(OrgData.FILE_ID, fileId);
+			values.put(OrgData.LEVEL, node.level);
+			values.put(OrgData.NAME, node.name);
+			values.put(OrgData.TODO, node.todo);
+			values.put(OrgData.PRIORITY, node.priority);
+			values.put(OrgData.TAGS, node.tags);
+			values.put(OrgData.TAGS_INHERITED, node.tags_inherited);
+			values.put(OrgData.PAYLOAD, parsed.payload);
+			values.put(OrgData.POSITION, node.position);
+			putTimestamp(parsed.getTimestamp(OrgNodeTimeDate.TYPE.Scheduled),
+					OrgData.SCHEDULED, OrgData.SCHEDULED_DATE_ONLY);
+			putTimestamp(parsed.getTimestamp(OrgNodeTimeDate.TYPE.Deadline),
+					OrgData.DEADLINE, OrgData.DEADLINE_DATE_ONLY);
+		}
+
+		private void putTimestamp(OrgNodeTimeDate timeDate, String column, String dateOnlyColumn) {
+			values.put(column, timeDate == null ? -1 : timeDate.getEpochTime());
+			values.put(dateOnlyColumn, timeDate == null ? 0 : timeDate.isAllDay());
+		}
+
+		Object[] get(String[] projection) {
+			Object[] result = new Object[projection.length];
+			for (int i = 0; i < projection.length; i++)
+				result[i] = values.get(projection[i]);
+			return result;
+		}
+	}
+}
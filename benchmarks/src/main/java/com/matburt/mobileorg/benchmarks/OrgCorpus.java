@@ -0,0 +1,134 @@
+package com.matburt.mobileorg.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * A generated org file, the same for a given number of headings.
+ *
+ * Headings have 1 to 4 stars, a keyword, a priority and tags now and then. Bodies mix
+ * plain text, SCHEDULED/DEADLINE lines, property drawers, logbooks and a few non ASCII
+ * characters, roughly like an agenda file synchronized by MobileOrg.
+ */
+public class OrgCorpus {
+	public static final String[] TODOS = {"TODO", "NEXT", "WAITING", "DONE", "CANCELLED"};
+	private static final String[] WORDS = {"call", "review", "the", "budget", "meeting",
+			"notes", "for", "release", "write", "draft", "fix", "sync", "plan", "trip",
+			"café", "résumé", "backup", "server", "read", "chapter", "[[https://orgmode.org][link]]"};
+	private static final String[] TAGS = {"work", "home", "phone", "errand", "project", "read"};
+	private static final String[] DAYS = {"Mon", "Tue", "Wed", "Thu", "Fri", "Sat", "Sun"};
+
+	public final String content;
+	public final ArrayList<String> headings = new ArrayList<>();
+	public final ArrayList<Integer> levels = new ArrayList<>();
+	public final ArrayList<String> payloads = new ArrayList<>();
+	public final ArrayList<String> timestampLines = new ArrayList<>();
+
+	public OrgCorpus(int headingCount) {
+		Random random = new Random(headingCount);
+		StringBuilder file = new StringBuilder();
+		file.append("#+TITLE: Benchmark\n");
+		file.append("#+TODO: TODO NEXT WAITING | DONE CANCELLED\n\n");
+
+		int level = 1;
+		for (int i = 0; i < headingCount; i++) {
+			level = Math.max(1, Math.min(4, level + random.nextInt(3) - 1));
+			String heading = heading(random, level);
+			headings.add(heading);
+			levels.add(level);
+			file.append(heading).append('\n');
+
+			String payload = payload(random);
+			payloads.add(payload);
+			file.append(payload);
+		}
+		content = file.toString();
+	}
+
+	private String heading(Random random, int level) {
+		StringBuilder heading = new StringBuilder();
+		for (int i = 0; i < level; i++)
+			heading.append('*');
+		heading.append(' ');
+		if (random.nextInt(3) > 0)
+			heading.append(TODOS[random.nextInt(TODOS.length)]).append(' ');
+		if (random.nextInt(5) == 0)
+			heading.append("[#").append((char) ('A' + random.nextInt(3))).append("] ");
+		words(random, heading, 2 + random.nextInt(8));
+		if (random.nextInt(3) == 0) {
+			heading.append("    :");
+			for (int i = 1 + random.nextInt(3); i > 0; i--)
+				heading.append(TAGS[random.nextInt(TAGS.length)]).append(':');
+		}
+		return heading.toString();
+	}
+
+	private String payload(Random random) {
+		StringBuilder payload = new StringBuilder();
+		int kind = random.nextInt(4);
+		if (kind == 0 || kind == 1) {
+			String line = "   " + (kind == 0 ? "SCHEDULED: " : "DEADLINE: ") + timestamp(random);
+			timestampLines.add(line);
+			payload.append(line).append('\n');
+		}
+		if (random.nextInt(4) == 0) {
+			payload.append("   :PROPERTIES:\n");
+			payload.append("   :ID:       ").append(Long.toHexString(random.nextLong())).append('\n');
+			payload.append("   :END:\n");
+		}
+		if (random.nextInt(6) == 0) {
+			payload.append("   :LOGBOOK:\n");
+			payload.append("   CLOCK: [2016-03-0").append(1 + random.nextInt(9))
+					.append(" Tue 09:00]--[2016-03-01 Tue 10:30] =>  1:30\n");
+			payload.append("   :END:\n");
+		}
+		for (int i = random.nextInt(4); i > 0; i--) {
+			payload.append("   ");
+			words(random, payload, 4 + random.nextInt(12));
+			payload.append('\n');
+		}
+		return payload.toString();
+	}
+
+	private String timestamp(Random random) {
+		StringBuilder timestamp = new StringBuilder("<2016-");
+		int month = 1 + random.nextInt(12), day = 1 + random.nextInt(28);
+		timestamp.append(month < 10 ? "0" : "").append(month).append('-')
+				.append(day < 10 ? "0" : "").append(day).append(' ')
+				.append(DAYS[random.nextInt(DAYS.length)]);
+		if (random.nextBoolean()) {
+			int hour = random.nextInt(23);
+			timestamp.append(' ').append(hour < 10 ? "0" : "").append(hour).append(":30");
+			if (random.nextBoolean())
+				timestamp.append('-').append(hour + 1 < 10 ? "0" : "").append(hour + 1).append(":00");
+		}
+		return timestamp.append('>').toString();
+	}
+
+	private static void words(Random random, StringBuilder builder, int count) {
+		for (int i = 0; i < count; i++) {
+			if (i > 0) builder.append(' ');
+			builder.append(WORDS[random.nextInt(WORDS.length)]);
+		}
+	}
+
+	/**
+	 * Write the corpus to a temporary file, UTF-8 encoded, deleted on exit
+	 */
+	public File writeTempFile() throws IOException {
+		File file = File.createTempFile("corpus", ".org");
+		file.deleteOnExit();
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		try {
+			writer.write(content);
+		} finally {
+			writer.close();
+		}
+		return file;
+	}
+}
@@ -0,0 +1,96 @@
+package com.matburt.mobileorg.benchmarks;
+
+import android.content.ContentResolver;
+
+import com.matburt.mobileorg.orgdata.OrgFile;
+import com.matburt.mobileorg.orgdata.OrgFileParser;
+import com.matburt.mobileorg.orgdata.OrgLineReader;
+import com.matburt.mobileorg.orgdata.OrgParsedNode;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A whole file through {@link OrgFileParser}, read from disk as during a synchronization
+ * and from memory as for a decrypted file. The nodes go to a sink that drops them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class OrgFileParserBenchmark {
+	@Param({"1000", "10000", "100000"})
+	public int headings;
+
+	private OrgCorpus corpus;
+	private File file;
+	private OrgFileParser parser;
+
+	@Setup
+	public void setup() throws IOException {
+		corpus = new OrgCorpus(headings);
+		file = corpus.writeTempFile();
+		parser = new OrgFileParser(BenchmarkDatabase.start(new ContentResolver()));
+	}
+
+	@Benchmark
+	public void parseFile(Blackhole blackhole) throws IOException {
+		OrgLineReader reader = new OrgLineReader(file);
+		try {
+			parser.parse(new OrgFile(file.getName(), "corpus"), reader, new BlackholeSink(blackhole));
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Benchmark
+	public void parseString(Blackhole blackhole) {
+		BufferedReader reader = new BufferedReader(new StringReader(corpus.content));
+		parser.parse(new OrgFile("corpus.org", "corpus"), reader, new BlackholeSink(blackhole));
+	}
+
+	private static class BlackholeSink implements OrgFileParser.Sink {
+		private final Blackhole blackhole;
+
+		BlackholeSink(Blackhole blackhole) {
+			this.blackhole = blackhole;
+		}
+
+		@Override
+		public void begin(OrgFile orgFile) {
+		}
+
+		@Override
+		public void write(OrgParsedNode node) {
+			blackhole.consume(node);
+		}
+
+		@Override
+		public void addTodos(HashMap<String, Boolean> todos) {
+			blackhole.consume(todos);
+		}
+
+		@Override
+		public void end(boolean complete) {
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package com.matburt.mobileorg.benchmarks;
+
+import com.matburt.mobileorg.orgdata.OrgFile;
+import com.matburt.mobileorg.orgdata.OrgFileParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link OrgFile#toString(android.content.ContentResolver)}, the file rebuilt from its
+ * stored nodes as before an upload. The nodes are parsed once into an {@link InMemoryOrgStore}.
+ *
+ * toString() concatenates Strings, it is quadratic: 100000 headings take minutes per
+ * operation and are left out of the default parameters (-p headings=100000 runs them).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class OrgFileSerializationBenchmark {
+	@Param({"1000", "10000"})
+	public int headings;
+
+	private InMemoryOrgStore store;
+	private OrgFile orgFile;
+
+	@Setup
+	public void setup() {
+		store = new InMemoryOrgStore();
+		OrgFileParser parser = new OrgFileParser(BenchmarkDatabase.start(store));
+		orgFile = new OrgFile("corpus.org", "corpus");
+		OrgCorpus corpus = new OrgCorpus(headings);
+		parser.parse(orgFile, new BufferedReader(new StringReader(corpus.content)), store);
+	}
+
+	@Benchmark
+	public void serialize(Blackhole blackhole) {
+		blackhole.consume(orgFile.toString(store));
+	}
+}
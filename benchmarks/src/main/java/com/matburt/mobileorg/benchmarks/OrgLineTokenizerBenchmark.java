@@ -0,0 +1,107 @@
+package com.matburt.mobileorg.benchmarks;
+
+import com.matburt.mobileorg.orgdata.OrgLineTokenizer;
+import com.matburt.mobileorg.orgdata.OrgNodeTimeDate;
+import com.matburt.mobileorg.orgdata.OrgParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The classification of every line of the corpus and the sub-parsers it runs:
+ * {@link OrgLineTokenizer} as {@link OrgParser} uses it, next to the former parser,
+ * which matched a regex for the stars and tried the #+TODO and timestamp regexes on
+ * every other line.
+ *
+ *   ./gradlew :benchmarks:jmh -PjmhArgs="OrgLineTokenizerBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class OrgLineTokenizerBenchmark {
+	private static final Pattern starPattern = Pattern.compile("^(\\**)\\s");
+
+	@Param({"1000", "10000", "100000"})
+	public int headings;
+
+	private String[] lines;
+	private OrgLineTokenizer tokenizer;
+
+	@Setup
+	public void setup() {
+		lines = new OrgCorpus(headings).content.split("\n");
+		tokenizer = new OrgLineTokenizer();
+	}
+
+	@Benchmark
+	public void classifyLines(Blackhole blackhole) {
+		for (String line : lines) {
+			switch (tokenizer.tokenize(line)) {
+				case EMPTY:
+					continue;
+
+				case HEADING:
+					blackhole.consume(tokenizer.getLevel());
+					continue;
+
+				case KEYWORD:
+					if (tokenizer.isTodoKeyword())
+						blackhole.consume(OrgParser.parseTodos(line));
+					break;
+			}
+
+			if (tokenizer.hasScheduled())
+				blackhole.consume(new OrgNodeTimeDate(OrgNodeTimeDate.TYPE.Scheduled, line));
+			if (tokenizer.hasDeadline())
+				blackhole.consume(new OrgNodeTimeDate(OrgNodeTimeDate.TYPE.Deadline, line));
+		}
+	}
+
+	/**
+	 * The former OrgFileParser.parseLine, storage aside. It did parse the #+TODO
+	 * keywords twice.
+	 */
+	@Benchmark
+	public void classifyLinesWithRegex(Blackhole blackhole) {
+		for (String line : lines) {
+			if (line.isEmpty())
+				continue;
+
+			int stars = numberOfStars(line);
+			if (stars > 0) {
+				blackhole.consume(stars);
+				continue;
+			}
+
+			blackhole.consume(OrgParser.parseTodos(line));
+			blackhole.consume(OrgParser.parseTodos(line));
+			for (OrgNodeTimeDate.TYPE type : OrgNodeTimeDate.TYPE.values())
+				blackhole.consume(new OrgNodeTimeDate(type, line));
+		}
+	}
+
+	private static int numberOfStars(String line) {
+		Matcher matcher = starPattern.matcher(line);
+		if (matcher.find())
+			return matcher.end(1) - matcher.start(1);
+		else
+			return 0;
+	}
+}
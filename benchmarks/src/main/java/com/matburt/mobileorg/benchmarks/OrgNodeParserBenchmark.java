@@ -0,0 +1,172 @@
+package com.matburt.mobileorg.benchmarks;
+
+import com.matburt.mobileorg.orgdata.OrgHeading;
+import com.matburt.mobileorg.orgdata.OrgNodeParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * {@link OrgNodeParser#parseLine(String, int)} on every heading of the corpus, and on one
+ * heading of each kind that made the former title regex backtrack, next to that regex.
+ *
+ *   ./gradlew :benchmarks:jmh -PjmhArgs="OrgNodeParserBenchmark.parseHeadline"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class OrgNodeParserBenchmark {
+	@Param({"1000", "10000", "100000"})
+	public int headings;
+
+	private String[] lines;
+	private int[] levels;
+	private OrgNodeParser parser;
+
+	@Setup
+	public void setup() {
+		OrgCorpus corpus = new OrgCorpus(headings);
+		lines = corpus.headings.toArray(new String[0]);
+		levels = new int[lines.length];
+		for (int i = 0; i < levels.length; i++)
+			levels[i] = corpus.levels.get(i);
+		parser = new OrgNodeParser(new ArrayList<>(Arrays.asList(OrgCorpus.TODOS)));
+	}
+
+	@Benchmark
+	public void parseHeadings(Blackhole blackhole) {
+		for (int i = 0; i < lines.length; i++)
+			blackhole.consume(parser.parseLine(lines[i], levels[i]));
+	}
+
+	@Benchmark
+	public OrgHeading parseHeadline(Headline headline) {
+		return headline.parser.parseLine(headline.line, headline.level);
+	}
+
+	@Benchmark
+	public OrgHeading parseHeadlineWithRegex(Headline headline) {
+		return parseWithRegex(headline.pattern, headline.line, headline.level);
+	}
+
+	/**
+	 * The former OrgNodeParser: a regex with an alternation of the keywords
+	 */
+	private static Pattern compileRegex(ArrayList<String> todos) {
+		StringBuilder alternation = new StringBuilder();
+		for (String todo : todos) {
+			if (alternation.length() > 0)
+				alternation.append('|');
+			alternation.append(todo);
+		}
+		return Pattern.compile("^\\s?(?:(" + alternation + ")\\s)?"
+				+ "(?:\\[\\#([^]]+)\\]\\s)?" // Priority
+				+ "(.*?)" // Title
+				+ "\\s*" + "(?::([^\\s]+):)?" // Tags
+				+ "(?:\\s*[!\\*])*" // Habits
+				+ "(?:<before>.*</before>)?" // Before
+				+ "(?:<after>.*TITLE:(.*)</after>)?" // After
+				+ "$");
+	}
+
+	private static OrgHeading parseWithRegex(Pattern pattern, String line, int numberOfStars) {
+		OrgHeading node = new OrgHeading();
+		node.level = numberOfStars;
+		Matcher matcher = pattern.matcher(line);
+		matcher.region(numberOfStars + 1, line.length());
+		if (matcher.find()) {
+			if (matcher.group(1) != null)
+				node.todo = matcher.group(1);
+			node.name = matcher.group(3);
+			if (matcher.group(2) != null)
+				node.priority = matcher.group(2);
+			if (matcher.group(4) != null)
+				node.tags = matcher.group(4);
+			if (matcher.group(5) != null)
+				node.name = matcher.group(5).trim() + ">" + node.name.trim();
+		} else {
+			node.name = line;
+		}
+		return node;
+	}
+
+	/**
+	 * One heading of a kind, parsed with a set of 30 keywords
+	 */
+	@State(Scope.Benchmark)
+	public static class Headline {
+		private static final String[] TODOS = {"TODO", "NEXT", "STARTED", "WAITING", "HOLD",
+				"SOMEDAY", "MAYBE", "DELEGATED", "REVIEW", "DRAFT", "PLANNED", "BLOCKED",
+				"INPROGRESS", "TESTING", "DEPLOYED", "FEEDBACK", "IDEA", "PROJECT", "APPT",
+				"MEETING", "PHONE", "READ", "BUY", "CALL", "EMAIL", "DONE", "CANCELLED",
+				"DEFERRED", "FAILED", "ARCHIVED"};
+
+		/**
+		 * typical: keyword, priority and tags
+		 * colonTitle: an 800 characters title made of "a:b " words
+		 * colonRun: 400 consecutive colons, then a word
+		 * tagGroups: 100 ":tN:" groups in the title
+		 * agenda: the &lt;before&gt;/&lt;after&gt; markup of agendas.org
+		 */
+		@Param({"typical", "colonTitle", "colonRun", "tagGroups", "agenda"})
+		public String kind;
+
+		String line;
+		int level = 2;
+		OrgNodeParser parser;
+		Pattern pattern;
+
+		@Setup
+		public void setup() {
+			StringBuilder title = new StringBuilder();
+			switch (kind) {
+				case "typical":
+					title.append("TODO [#A] Review the budget notes for the release meeting    :work:project:");
+					break;
+				case "colonTitle":
+					for (int i = 0; i < 200; i++)
+						title.append("a:b ");
+					break;
+				case "colonRun":
+					for (int i = 0; i < 400; i++)
+						title.append(':');
+					title.append(" end");
+					break;
+				case "tagGroups":
+					for (int i = 0; i < 100; i++)
+						title.append(":t").append(i).append(": ");
+					title.append("end");
+					break;
+				case "agenda":
+					title.append("NEXT Call the bank :phone: <before>KEY</before><after>KEY TITLE: Agenda</after>");
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown headline kind " + kind);
+			}
+			line = "** " + title;
+
+			ArrayList<String> todos = new ArrayList<>(Arrays.asList(TODOS));
+			parser = new OrgNodeParser(todos);
+			pattern = compileRegex(todos);
+		}
+	}
+}
@@ -0,0 +1,46 @@
+package com.matburt.mobileorg.benchmarks;
+
+import com.matburt.mobileorg.orgdata.OrgNodePayload;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link OrgNodePayload#getCleanedPayload()} on the payload of every heading, as when
+ * the outline displays them
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class OrgNodePayloadBenchmark {
+	@Param({"1000", "10000", "100000"})
+	public int headings;
+
+	private String[] payloads;
+
+	@Setup
+	public void setup() {
+		payloads = new OrgCorpus(headings).payloads.toArray(new String[0]);
+	}
+
+	@Benchmark
+	public void cleanPayloads(Blackhole blackhole) {
+		for (String payload : payloads)
+			blackhole.consume(new OrgNodePayload(payload).getCleanedPayload());
+	}
+}
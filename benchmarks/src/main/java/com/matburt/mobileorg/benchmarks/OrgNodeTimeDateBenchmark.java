@@ -0,0 +1,54 @@
+package com.matburt.mobileorg.benchmarks;
+
+import com.matburt.mobileorg.orgdata.OrgNodeTimeDate;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link OrgNodeTimeDate#parseDate(String)} on the SCHEDULED and DEADLINE lines of the
+ * corpus, about half of its headings have one
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class OrgNodeTimeDateBenchmark {
+	@Param({"1000", "10000", "100000"})
+	public int headings;
+
+	private String[] lines;
+	private OrgNodeTimeDate.TYPE[] types;
+
+	@Setup
+	public void setup() {
+		lines = new OrgCorpus(headings).timestampLines.toArray(new String[0]);
+		types = new OrgNodeTimeDate.TYPE[lines.length];
+		for (int i = 0; i < lines.length; i++)
+			types[i] = lines[i].contains("DEADLINE") ? OrgNodeTimeDate.TYPE.Deadline
+					: OrgNodeTimeDate.TYPE.Scheduled;
+	}
+
+	@Benchmark
+	public void parseDates(Blackhole blackhole) {
+		for (int i = 0; i < lines.length; i++) {
+			OrgNodeTimeDate timeDate = new OrgNodeTimeDate(types[i]);
+			timeDate.parseDate(lines[i]);
+			blackhole.consume(timeDate);
+		}
+	}
+}
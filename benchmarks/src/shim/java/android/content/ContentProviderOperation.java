@@ -0,0 +1,30 @@
+package android.content;
+
+import android.net.Uri;
+
+/**
+ * Benchmark shim of the Android class, just what the orgdata code needs on a plain JVM.
+ */
+public class ContentProviderOperation {
+	public static Builder newInsert(Uri uri) {
+		return new Builder();
+	}
+
+	public static Builder newUpdate(Uri uri) {
+		return new Builder();
+	}
+
+	public static Builder newDelete(Uri uri) {
+		return new Builder();
+	}
+
+	public static class Builder {
+		public Builder withValue(String key, Object value) {
+			return this;
+		}
+
+		public ContentProviderOperation build() {
+			return new ContentProviderOperation();
+		}
+	}
+}
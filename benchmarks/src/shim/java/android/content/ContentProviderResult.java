@@ -0,0 +1,7 @@
+package android.content;
+
+/**
+ * Benchmark shim of the Android class, just what the orgdata code needs on a plain JVM.
+ */
+public class ContentProviderResult {
+}
@@ -0,0 +1,51 @@
+package android.content;
+
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.CancellationSignal;
+import android.os.RemoteException;
+
+import java.util.ArrayList;
+
+/**
+ * Benchmark shim of the Android class, just what the orgdata code needs on a plain JVM.
+ */
+/**
+ * Queries return null and writes do nothing, benchmarks override the calls they need.
+ */
+public class ContentResolver {
+	public Cursor query(Uri uri, String[] projection, String selection,
+						String[] selectionArgs, String sortOrder) {
+		return null;
+	}
+
+	public Cursor query(Uri uri, String[] projection, String selection,
+						String[] selectionArgs, String sortOrder, CancellationSignal signal) {
+		return query(uri, projection, selection, selectionArgs, sortOrder);
+	}
+
+	public Uri insert(Uri uri, ContentValues values) {
+		return null;
+	}
+
+	public int update(Uri uri, ContentValues values, String where, String[] selectionArgs) {
+		return 0;
+	}
+
+	public int delete(Uri uri, String where, String[] selectionArgs) {
+		return 0;
+	}
+
+	public void notifyChange(Uri uri, ContentObserver observer) {
+	}
+
+	public int bulkInsert(Uri uri, ContentValues[] values) {
+		return 0;
+	}
+
+	public ContentProviderResult[] applyBatch(String authority, ArrayList<ContentProviderOperation> operations)
+			throws RemoteException, OperationApplicationException {
+		return new ContentProviderResult[0];
+	}
+}
@@ -0,0 +1,40 @@
+package android.content;
+
+import java.util.HashMap;
+import java.util.Set;
+
+/**
+ * Benchmark shim of the Android class, just what the orgdata code needs on a plain JVM.
+ */
+public final class ContentValues {
+	private final HashMap<String, Object> values = new HashMap<>();
+
+	public void put(String key, String value) {
+		values.put(key, value);
+	}
+
+	public void put(String key, Integer value) {
+		values.put(key, value);
+	}
+
+	public void put(String key, Long value) {
+		values.put(key, value);
+	}
+
+	public void put(String key, Boolean value) {
+		values.put(key, value);
+	}
+
+	public Object get(String key) {
+		return values.get(key);
+	}
+
+	public String getAsString(String key) {
+		Object value = values.get(key);
+		return value != null ? value.toString() : null;
+	}
+
+	public Set<String> keySet() {
+		return values.keySet();
+	}
+}
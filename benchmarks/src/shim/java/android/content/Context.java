@@ -0,0 +1,39 @@
+package android.content;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+
+/**
+ * Benchmark shim of the Android class, just what the orgdata code needs on a plain JVM.
+ */
+public class Context {
+	public static final int MODE_PRIVATE = 0;
+	public static final int MODE_APPEND = 0x8000;
+
+	private final ContentResolver resolver;
+
+	public Context(ContentResolver resolver) {
+		this.resolver = resolver;
+	}
+
+	public ContentResolver getContentResolver() {
+		return resolver;
+	}
+
+	public File getFilesDir() {
+		return new File(System.getProperty("java.io.tmpdir"));
+	}
+
+	public FileInputStream openFileInput(String name) throws FileNotFoundException {
+		return new FileInputStream(new File(getFilesDir(), name));
+	}
+
+	public FileOutputStream openFileOutput(String name, int mode) throws FileNotFoundException {
+		return new FileOutputStream(new File(getFilesDir(), name), (mode & MODE_APPEND) != 0);
+	}
+
+	public void startActivity(Intent intent) {
+	}
+}
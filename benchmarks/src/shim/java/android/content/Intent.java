@@ -0,0 +1,23 @@
+package android.content;
+
+/**
+ * Benchmark shim of the Android class, just what the orgdata code needs on a plain JVM.
+ */
+public class Intent {
+	public static final int FLAG_ACTIVITY_NEW_TASK = 0x10000000;
+
+	public Intent(Context context, Class<?> cls) {
+	}
+
+	public Intent putExtra(String name, String value) {
+		return this;
+	}
+
+	public Intent putExtra(String name, byte[] value) {
+		return this;
+	}
+
+	public Intent addFlags(int flags) {
+		return this;
+	}
+}
@@ -0,0 +1,10 @@
+package android.content;
+
+/**
+ * Benchmark shim of the Android class, just what the orgdata code needs on a plain JVM.
+ */
+public interface SharedPreferences {
+	String getString(String key, String defValue);
+
+	boolean getBoolean(String key, boolean defValue);
+}
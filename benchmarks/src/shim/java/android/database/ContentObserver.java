@@ -0,0 +1,7 @@
+package android.database;
+
+/**
+ * Benchmark shim of the Android class, just what the orgdata code needs on a plain JVM.
+ */
+public abstract class ContentObserver {
+}
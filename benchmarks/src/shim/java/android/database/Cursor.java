@@ -0,0 +1,32 @@
+package android.database;
+
+/**
+ * Benchmark shim of the Android class, just what the orgdata code needs on a plain JVM.
+ */
+public interface Cursor {
+	int getCount();
+
+	int getPosition();
+
+	boolean moveToFirst();
+
+	boolean moveToNext();
+
+	boolean isBeforeFirst();
+
+	boolean isAfterLast();
+
+	int getColumnIndex(String columnName);
+
+	int getColumnIndexOrThrow(String columnName);
+
+	String getString(int columnIndex);
+
+	int getInt(int columnIndex);
+
+	long getLong(int columnIndex);
+
+	boolean isNull(int columnIndex);
+
+	void close();
+}
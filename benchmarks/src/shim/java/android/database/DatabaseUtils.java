@@ -0,0 +1,12 @@
+package android.database;
+
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * Benchmark shim of the Android class, just what the orgdata code needs on a plain JVM.
+ */
+public class DatabaseUtils {
+	public static long longForQuery(SQLiteDatabase db, String query, String[] selectionArgs) {
+		return 0;
+	}
+}
@@ -0,0 +1,101 @@
+package android.database;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Benchmark shim of the Android class, just what the orgdata code needs on a plain JVM.
+ */
+public class MatrixCursor implements Cursor {
+	private final String[] columnNames;
+	private final ArrayList<Object[]> rows = new ArrayList<>();
+	private int position = -1;
+
+	public MatrixCursor(String[] columnNames) {
+		this.columnNames = columnNames;
+	}
+
+	public void addRow(Object[] columnValues) {
+		rows.add(Arrays.copyOf(columnValues, columnNames.length));
+	}
+
+	@Override
+	public int getCount() {
+		return rows.size();
+	}
+
+	@Override
+	public int getPosition() {
+		return position;
+	}
+
+	@Override
+	public boolean moveToFirst() {
+		position = 0;
+		return !rows.isEmpty();
+	}
+
+	@Override
+	public boolean moveToNext() {
+		if (position < rows.size())
+			position++;
+		return position < rows.size();
+	}
+
+	@Override
+	public boolean isBeforeFirst() {
+		return rows.isEmpty() || position < 0;
+	}
+
+	@Override
+	public boolean isAfterLast() {
+		return rows.isEmpty() || position >= rows.size();
+	}
+
+	@Override
+	public int getColumnIndex(String columnName) {
+		for (int i = 0; i < columnNames.length; i++) {
+			if (columnNames[i].equals(columnName))
+				return i;
+		}
+		return -1;
+	}
+
+	@Override
+	public int getColumnIndexOrThrow(String columnName) {
+		int index = getColumnIndex(columnName);
+		if (index < 0)
+			throw new IllegalArgumentException("column '" + columnName + "' does not exist");
+		return index;
+	}
+
+	@Override
+	public String getString(int columnIndex) {
+		Object value = rows.get(position)[columnIndex];
+		return value != null ? value.toString() : null;
+	}
+
+	@Override
+	public boolean isNull(int columnIndex) {
+		return rows.get(position)[columnIndex] == null;
+	}
+
+	@Override
+	public int getInt(int columnIndex) {
+		return (int) getLong(columnIndex);
+	}
+
+	@Override
+	public long getLong(int columnIndex) {
+		Object value = rows.get(position)[columnIndex];
+		if (value == null)
+			return 0;
+		if (value instanceof Number)
+			return ((Number) value).longValue();
+		return Long.parseLong(value.toString());
+	}
+
+	@Override
+	public void close() {
+	}
+}
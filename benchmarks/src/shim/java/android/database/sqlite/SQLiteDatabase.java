@@ -0,0 +1,43 @@
+package android.database.sqlite;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+
+/**
+ * Benchmark shim of the Android class, just what the orgdata code needs on a plain JVM.
+ */
+/**
+ * An empty database: queries return no row and writes are dropped.
+ */
+public class SQLiteDatabase {
+	public Cursor rawQuery(String sql, String[] selectionArgs) {
+		return new MatrixCursor(new String[0]);
+	}
+
+	public SQLiteStatement compileStatement(String sql) {
+		return new SQLiteStatement();
+	}
+
+	public void execSQL(String sql) {
+	}
+
+	public void execSQL(String sql, Object[] bindArgs) {
+	}
+
+	public long insert(String table, String nullColumnHack, ContentValues values) {
+		return -1;
+	}
+
+	public void beginTransaction() {
+	}
+
+	public void beginTransactionNonExclusive() {
+	}
+
+	public void setTransactionSuccessful() {
+	}
+
+	public void endTransaction() {
+	}
+}
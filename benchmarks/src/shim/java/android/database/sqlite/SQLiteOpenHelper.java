@@ -0,0 +1,34 @@
+package android.database.sqlite;
+
+import android.content.Context;
+
+/**
+ * Benchmark shim of the Android class, just what the orgdata code needs on a plain JVM.
+ */
+public abstract class SQLiteOpenHelper {
+	private final SQLiteDatabase database = new SQLiteDatabase();
+
+	public SQLiteOpenHelper(Context context, String name, Object factory, int version) {
+	}
+
+	public void setWriteAheadLoggingEnabled(boolean enabled) {
+	}
+
+	public SQLiteDatabase getWritableDatabase() {
+		return database;
+	}
+
+	public SQLiteDatabase getReadableDatabase() {
+		return database;
+	}
+
+	public abstract void onCreate(SQLiteDatabase db);
+
+	public abstract void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion);
+
+	public void onOpen(SQLiteDatabase db) {
+	}
+
+	public synchronized void close() {
+	}
+}
@@ -0,0 +1,31 @@
+package android.database.sqlite;
+
+/**
+ * Benchmark shim of the Android class, just what the orgdata code needs on a plain JVM.
+ */
+public class SQLiteStatement {
+	private long lastId;
+
+	public void bindString(int index, String value) {
+	}
+
+	public void bindLong(int index, long value) {
+	}
+
+	public void bindNull(int index) {
+	}
+
+	public void execute() {
+	}
+
+	public long executeInsert() {
+		return ++lastId;
+	}
+
+	public long simpleQueryForLong() {
+		return -1;
+	}
+
+	public void close() {
+	}
+}
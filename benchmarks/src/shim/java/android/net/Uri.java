@@ -0,0 +1,105 @@
+package android.net;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Benchmark shim of the Android class, just what the orgdata code needs on a plain JVM.
+ */
+public class Uri {
+	private final String scheme;
+	private final String authority;
+	private final List<String> pathSegments;
+	private final Map<String, String> queryParameters;
+
+	private Uri(String scheme, String authority, List<String> pathSegments, Map<String, String> queryParameters) {
+		this.scheme = scheme;
+		this.authority = authority;
+		this.pathSegments = Collections.unmodifiableList(pathSegments);
+		this.queryParameters = Collections.unmodifiableMap(queryParameters);
+	}
+
+	/**
+	 * Only parses scheme://authority/segment/...
+	 */
+	public static Uri parse(String uriString) {
+		int schemeEnd = uriString.indexOf("://");
+		String scheme = uriString.substring(0, schemeEnd);
+		String rest = uriString.substring(schemeEnd + 3);
+		ArrayList<String> segments = new ArrayList<>();
+		String[] parts = rest.split("/");
+		for (int i = 1; i < parts.length; i++) {
+			if (!parts[i].isEmpty())
+				segments.add(parts[i]);
+		}
+		return new Uri(scheme, parts[0], segments, new LinkedHashMap<String, String>());
+	}
+
+	public List<String> getPathSegments() {
+		return pathSegments;
+	}
+
+	public String getLastPathSegment() {
+		return pathSegments.isEmpty() ? null : pathSegments.get(pathSegments.size() - 1);
+	}
+
+	public String getQueryParameter(String key) {
+		return queryParameters.get(key);
+	}
+
+	public Builder buildUpon() {
+		return new Builder(this);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder result = new StringBuilder(scheme).append("://").append(authority);
+		for (String segment : pathSegments)
+			result.append('/').append(segment);
+		char separator = '?';
+		for (Map.Entry<String, String> parameter : queryParameters.entrySet()) {
+			result.append(separator).append(parameter.getKey()).append('=').append(parameter.getValue());
+			separator = '&';
+		}
+		return result.toString();
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		return o instanceof Uri && toString().equals(o.toString());
+	}
+
+	@Override
+	public int hashCode() {
+		return toString().hashCode();
+	}
+
+	public static final class Builder {
+		private final Uri uri;
+		private final ArrayList<String> segments;
+		private final LinkedHashMap<String, String> queryParameters;
+
+		private Builder(Uri uri) {
+			this.uri = uri;
+			this.segments = new ArrayList<>(uri.pathSegments);
+			this.queryParameters = new LinkedHashMap<>(uri.queryParameters);
+		}
+
+		public Builder appendPath(String segment) {
+			segments.add(segment);
+			return this;
+		}
+
+		public Builder appendQueryParameter(String key, String value) {
+			queryParameters.put(key, value);
+			return this;
+		}
+
+		public Uri build() {
+			return new Uri(uri.scheme, uri.authority, segments, queryParameters);
+		}
+	}
+}
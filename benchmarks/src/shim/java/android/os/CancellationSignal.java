@@ -0,0 +1,21 @@
+package android.os;
+
+/**
+ * Benchmark shim of the Android class, just what the orgdata code needs on a plain JVM.
+ */
+public final class CancellationSignal {
+	private volatile boolean canceled;
+
+	public boolean isCanceled() {
+		return canceled;
+	}
+
+	public void cancel() {
+		canceled = true;
+	}
+
+	public void throwIfCanceled() {
+		if (canceled)
+			throw new OperationCanceledException();
+	}
+}
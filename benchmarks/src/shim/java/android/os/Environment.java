@@ -0,0 +1,12 @@
+package android.os;
+
+import java.io.File;
+
+/**
+ * Benchmark shim of the Android class, just what the orgdata code needs on a plain JVM.
+ */
+public class Environment {
+	public static File getExternalStorageDirectory() {
+		return new File(System.getProperty("java.io.tmpdir"));
+	}
+}
@@ -0,0 +1,16 @@
+package android.os;
+
+/**
+ * Benchmark shim of the Android class, just what the orgdata code needs on a plain JVM.
+ */
+/**
+ * There is no message loop: nothing posted is run.
+ */
+public class Handler {
+	public Handler(Looper looper) {
+	}
+
+	public boolean postDelayed(Runnable runnable, long delayMillis) {
+		return true;
+	}
+}
@@ -0,0 +1,10 @@
+package android.os;
+
+/**
+ * Benchmark shim of the Android class, just what the orgdata code needs on a plain JVM.
+ */
+public final class Looper {
+	public static Looper getMainLooper() {
+		return null;
+	}
+}
@@ -0,0 +1,7 @@
+package android.os;
+
+/**
+ * Benchmark shim of the Android class, just what the orgdata code needs on a plain JVM.
+ */
+public class OperationCanceledException extends RuntimeException {
+}
@@ -0,0 +1,26 @@
+package android.preference;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+/**
+ * Benchmark shim of the Android class, just what the orgdata code needs on a plain JVM.
+ */
+/**
+ * Every preference has its default value.
+ */
+public class PreferenceManager {
+	public static SharedPreferences getDefaultSharedPreferences(Context context) {
+		return new SharedPreferences() {
+			@Override
+			public String getString(String key, String defValue) {
+				return defValue;
+			}
+
+			@Override
+			public boolean getBoolean(String key, boolean defValue) {
+				return defValue;
+			}
+		};
+	}
+}
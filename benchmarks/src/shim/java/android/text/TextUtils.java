@@ -0,0 +1,22 @@
+package android.text;
+
+/**
+ * Benchmark shim of the Android class, just what the orgdata code needs on a plain JVM.
+ */
+public class TextUtils {
+	public static boolean isEmpty(CharSequence str) {
+		return str == null || str.length() == 0;
+	}
+
+	public static String join(CharSequence delimiter, Iterable tokens) {
+		StringBuilder result = new StringBuilder();
+		boolean first = true;
+		for (Object token : tokens) {
+			if (!first)
+				result.append(delimiter);
+			result.append(token);
+			first = false;
+		}
+		return result.toString();
+	}
+}
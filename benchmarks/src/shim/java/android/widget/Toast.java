@@ -0,0 +1,18 @@
+package android.widget;
+
+import android.content.Context;
+
+/**
+ * Benchmark shim of the Android class, just what the orgdata code needs on a plain JVM.
+ */
+public class Toast {
+	public static final int LENGTH_SHORT = 0;
+	public static final int LENGTH_LONG = 1;
+
+	public static Toast makeText(Context context, CharSequence text, int duration) {
+		return new Toast();
+	}
+
+	public void show() {
+	}
+}
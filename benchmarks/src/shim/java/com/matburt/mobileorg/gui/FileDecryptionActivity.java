@@ -0,0 +1,7 @@
+package com.matburt.mobileorg.gui;
+
+/**
+ * Benchmark shim of the app class, the real one depends on the Android UI.
+ */
+public class FileDecryptionActivity {
+}
@@ -0,0 +1,19 @@
+package com.matburt.mobileorg.orgdata;
+
+import android.content.ContentResolver;
+import android.content.Context;
+
+/**
+ * Benchmark shim of the app class, the real one depends on the Android UI.
+ */
+public class MobileOrgApplication {
+	private static Context context = new Context(new ContentResolver());
+
+	public static Context getContext() {
+		return context;
+	}
+
+	public static void setContext(Context context) {
+		MobileOrgApplication.context = context;
+	}
+}
@@ -0,0 +1,21 @@
+package com.matburt.mobileorg.synchronizers;
+
+import android.content.Context;
+
+/**
+ * Benchmark shim of the app class, the real one depends on the Android UI.
+ */
+public class Synchronizer {
+	private static final Synchronizer instance = new Synchronizer();
+
+	public static Synchronizer getInstance() {
+		return instance;
+	}
+
+	public String getAbsoluteFilesDir(Context context) {
+		return context.getFilesDir().getAbsolutePath();
+	}
+
+	public void addFile(String filename) {
+	}
+}
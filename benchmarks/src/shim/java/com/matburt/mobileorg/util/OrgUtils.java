@@ -0,0 +1,13 @@
+package com.matburt.mobileorg.util;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Benchmark shim of the app class, the real one depends on the Android UI.
+ */
+public class OrgUtils {
+	public static String getTimestamp() {
+		return new SimpleDateFormat("[yyyy-MM-dd EEE HH:mm]").format(new Date());
+	}
+}
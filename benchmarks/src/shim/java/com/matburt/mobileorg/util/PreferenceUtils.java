@@ -0,0 +1,12 @@
+package com.matburt.mobileorg.util;
+
+import java.util.HashSet;
+
+/**
+ * Benchmark shim of the app class, the real one depends on the Android UI.
+ */
+public class PreferenceUtils {
+	public static HashSet<String> getExcludedTags() {
+		return new HashSet<>();
+	}
+}
@@ -0,0 +1,16 @@
+package com.matburt.mobileorg.orgdata;
+
+/**
+ * The content of a heading line, as read by {@link OrgNodeParser}.
+ * OrgNode, in the app, adds what the database and the UI need on top of it.
+ */
+public class OrgHeading {
+	public long level = 0; // The headline level
+	public String priority = ""; // The priority tag
+	public String todo = "";    // The TODO state
+	public String tags = "";
+	public String tags_inherited = "";
+	public String name = "";
+    // The ordering of the same level siblings
+    public int position = 0;
+}
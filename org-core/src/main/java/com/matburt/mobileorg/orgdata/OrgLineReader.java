@@ -0,0 +1,195 @@
+package com.matburt.mobileorg.orgdata;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Line reader used by {@link OrgParser}.
+ *
+ * A file is memory mapped and its lines are decoded one at a time into a single
+ * {@link Line} buffer, reused for the whole file: reading does not allocate anything
+ * per line and the file content never lands on the heap. Lines end with \n, \r\n or \r,
+ * like {@link BufferedReader#readLine()}.
+ *
+ * A reader can also wrap a {@link BufferedReader}, for content that is not on disk
+ * such as decrypted files.
+ */
+public class OrgLineReader implements Closeable {
+	private static final int INITIAL_LINE_SIZE = 256;
+
+	private final Line line = new Line();
+	private FileInputStream stream;
+	private ByteBuffer bytes;
+	private CharsetDecoder decoder;
+	private BufferedReader reader;
+
+	/**
+	 * Map a file, UTF-8 encoded
+	 * @param file
+	 * @throws IOException
+	 */
+	public OrgLineReader(File file) throws IOException {
+		stream = new FileInputStream(file);
+		try {
+			FileChannel channel = stream.getChannel();
+			bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} catch (IOException e) {
+			stream.close();
+			throw e;
+		}
+		decoder = Charset.forName("UTF-8").newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+
+	public OrgLineReader(BufferedReader reader) {
+		this.reader = reader;
+	}
+
+	/**
+	 * @return the next line, without its terminator, or null at the end of the input.
+	 * The returned line is only valid until the next call.
+	 * @throws IOException
+	 */
+	public Line readLine() throws IOException {
+		if (reader != null) {
+			String next = reader.readLine();
+			if (next == null)
+				return null;
+			line.set(next);
+			return line;
+		}
+
+		if (!bytes.hasRemaining())
+			return null;
+
+		int start = bytes.position();
+		int limit = bytes.limit();
+		int end = start;
+		boolean ascii = true;
+		byte b = 0;
+		while (end < limit) {
+			b = bytes.get(end);
+			if (b == '\n' || b == '\r')
+				break;
+			if (b < 0)
+				ascii = false;
+			end++;
+		}
+
+		if (ascii) {
+			line.setAscii(bytes, start, end);
+		} else {
+			decode(start, end);
+			bytes.limit(limit);
+		}
+
+		// Skip the terminator
+		int next = end;
+		if (end < limit) {
+			next++;
+			if (b == '\r' && next < limit && bytes.get(next) == '\n')
+				next++;
+		}
+		bytes.position(next);
+
+		return line;
+	}
+
+	/**
+	 * @return the number of bytes of the file read so far, or -1 when reading
+	 * from a {@link BufferedReader}
+	 */
+	public long getPosition() {
+		if (reader != null)
+			return -1;
+		return bytes != null ? bytes.position() : 0;
+	}
+
+	private void decode(int start, int end) {
+		bytes.limit(end);
+		bytes.position(start);
+		line.ensureCapacity(end - start);
+
+		decoder.reset();
+		CharBuffer out = CharBuffer.wrap(line.chars);
+		CoderResult result = decoder.decode(bytes, out, true);
+		if (!result.isOverflow())
+			result = decoder.flush(out);
+		// UTF-8 never needs more chars than bytes, overflow is not expected
+		line.length = out.position();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (stream != null)
+			stream.close();
+		if (reader != null)
+			reader.close();
+		bytes = null;
+	}
+
+	/**
+	 * A mutable line of text. Callers only turn it into a String when they keep it.
+	 */
+	public static final class Line implements CharSequence {
+		private char[] chars = new char[INITIAL_LINE_SIZE];
+		private int length;
+
+		private void ensureCapacity(int capacity) {
+			if (chars.length < capacity)
+				chars = new char[Math.max(capacity, chars.length * 2)];
+		}
+
+		private void set(String string) {
+			length = string.length();
+			ensureCapacity(length);
+			string.getChars(0, length, chars, 0);
+		}
+
+		private void setAscii(ByteBuffer bytes, int start, int end) {
+			length = end - start;
+			ensureCapacity(length);
+			for (int i = 0; i < length; i++)
+				chars[i] = (char) bytes.get(start + i);
+		}
+
+		/**
+		 * Append the line to a builder without an intermediate String
+		 * @param builder
+		 */
+		public void appendTo(StringBuilder builder) {
+			builder.append(chars, 0, length);
+		}
+
+		@Override
+		public int length() {
+			return length;
+		}
+
+		@Override
+		public char charAt(int index) {
+			return chars[index];
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			return new String(chars, start, end - start);
+		}
+
+		@Override
+		public String toString() {
+			return new String(chars, 0, length);
+		}
+	}
+}
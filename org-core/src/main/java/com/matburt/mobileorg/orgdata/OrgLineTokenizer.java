@@ -0,0 +1,126 @@
+package com.matburt.mobileorg.orgdata;
+
+/**
+ * Hand written line classifier used by {@link OrgParser}.
+ * A line is scanned once, character by character, and classified so that the
+ * parser only runs the sub-parser (heading, #+TODO, timestamps) it actually needs.
+ * An instance is reused for every line of a file and is not thread safe.
+ */
+public class OrgLineTokenizer {
+	private static final String KEYWORD_PREFIX = "#+";
+	private static final String TODO_KEYWORD = "#+TODO:";
+	private static final String SCHEDULED = "SCHEDULED:";
+	private static final String DEADLINE = "DEADLINE:";
+
+	private Type type = Type.EMPTY;
+	private int level;
+	private boolean todoKeyword;
+	private boolean scheduled;
+	private boolean deadline;
+
+	/**
+	 * Same definition of white space as the regex class \s
+	 */
+	static boolean isWhitespace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+	}
+
+	private static boolean matchesAt(CharSequence line, int start, String token) {
+		int end = start + token.length();
+		if (end > line.length())
+			return false;
+		for (int i = 0; i < token.length(); i++) {
+			if (line.charAt(start + i) != token.charAt(i))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Classify a line
+	 * @param line a line of an org file, without its line terminator
+	 * @return the type of the line
+	 */
+	public Type tokenize(CharSequence line) {
+		level = 0;
+		todoKeyword = false;
+		scheduled = false;
+		deadline = false;
+
+		final int length = line.length();
+		if (length == 0)
+			return type = Type.EMPTY;
+
+		int stars = 0;
+		while (stars < length && line.charAt(stars) == '*') stars++;
+		if (stars > 0) {
+			if (stars < length && isWhitespace(line.charAt(stars))) {
+				level = stars;
+				return type = Type.HEADING;
+			}
+		}
+
+		int firstNonBlank = -1;
+		for (int i = 0; i < length; i++) {
+			char c = line.charAt(i);
+			if (c == ' ' || c == '\t')
+				continue;
+
+			if (firstNonBlank < 0) firstNonBlank = i;
+
+			if (c == 'S' && !scheduled)
+				scheduled = matchesAt(line, i, SCHEDULED);
+			else if (c == 'D' && !deadline)
+				deadline = matchesAt(line, i, DEADLINE);
+		}
+
+		if (firstNonBlank < 0)
+			return type = Type.TEXT;
+
+		if (matchesAt(line, firstNonBlank, KEYWORD_PREFIX)) {
+			todoKeyword = matchesAt(line, firstNonBlank, TODO_KEYWORD);
+			return type = Type.KEYWORD;
+		}
+
+		return type = Type.TEXT;
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	/**
+	 * @return the number of stars of a heading, 0 for any other line
+	 */
+	public int getLevel() {
+		return level;
+	}
+
+	/**
+	 * @return true if the line is a "#+TODO:" in-buffer setting
+	 */
+	public boolean isTodoKeyword() {
+		return todoKeyword;
+	}
+
+	/**
+	 * @return true if the line contains "SCHEDULED:", whatever its type but a heading
+	 */
+	public boolean hasScheduled() {
+		return scheduled;
+	}
+
+	/**
+	 * @return true if the line contains "DEADLINE:", whatever its type but a heading
+	 */
+	public boolean hasDeadline() {
+		return deadline;
+	}
+
+	public enum Type {
+		EMPTY,
+		HEADING,
+		KEYWORD,
+		TEXT
+	}
+}
@@ -1,14 +1,15 @@
 package com.matburt.mobileorg.orgdata;
 
-import android.text.format.DateUtils;
-
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class OrgNodeDate {
+	private static final long DAY_IN_MILLIS = TimeUnit.DAYS.toMillis(1);
+	private static final long HOUR_IN_MILLIS = TimeUnit.HOURS.toMillis(1);
 
 	private static final SimpleDateFormat dateTimeformatter = new SimpleDateFormat("yyyy-MM-dd HH:mm");
 	private static final SimpleDateFormat dateformatter = new SimpleDateFormat("yyyy-MM-dd");
@@ -35,7 +36,7 @@ public class OrgNodeDate {
 				if (schedule.group(BEGIN_TIME) == null) { // event is an entire day event
 					this.beginTime = dateformatter.parse(schedule.group(DATE)).getTime();
 
-					this.endTime = this.beginTime + DateUtils.DAY_IN_MILLIS;
+					this.endTime = this.beginTime + DAY_IN_MILLIS;
 					this.allDay = 1;
 				} else if (schedule.group(BEGIN_TIME) != null && schedule.group(END_TIME) != null) {
 					this.beginTime = dateTimeformatter.parse(schedule.group(DATE) + " " + schedule.group(BEGIN_TIME)).getTime();
@@ -43,7 +44,7 @@ public class OrgNodeDate {
 					this.allDay = 0;
 				} else if (schedule.group(BEGIN_TIME) != null) {
 					this.beginTime = dateTimeformatter.parse(schedule.group(DATE) + " " + schedule.group(BEGIN_TIME)).getTime();
-					this.endTime = beginTime + DateUtils.HOUR_IN_MILLIS;
+					this.endTime = beginTime + HOUR_IN_MILLIS;
 					this.allDay = 0;
 				}
 
@@ -66,7 +67,7 @@ public class OrgNodeDate {
 		if (dtEnd > 0 && dtStart != dtEnd) {
 			long timeDiff = dtEnd - dtStart;
 
-			if (timeDiff <= DateUtils.DAY_IN_MILLIS) {
+			if (timeDiff <= DAY_IN_MILLIS) {
 				SimpleDateFormat timeformatter = new SimpleDateFormat("HH:mm");
 				String endTime = timeformatter.format(new Date(dtEnd));
 
@@ -93,7 +94,7 @@ public class OrgNodeDate {
 	 * sometime in the future.
 	 */
 	public boolean isInPast() {
-		return System.currentTimeMillis() - DateUtils.DAY_IN_MILLIS >= endTime;
+		return System.currentTimeMillis() - DAY_IN_MILLIS >= endTime;
 	}
 	
 	public String getTitle() {
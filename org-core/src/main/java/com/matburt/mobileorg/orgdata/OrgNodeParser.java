@@ -0,0 +1,328 @@
+package com.matburt.mobileorg.orgdata;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Heading parser.
+ *
+ * The TODO keyword is matched with a prefix trie, the priority is read right after it.
+ * The end of the heading (tags, habit markers, agenda <before>/<after> markup) is scanned
+ * once from the end of the line, which gives for every position whether the heading can
+ * end there. The title is then everything up to the first such position. The result is the
+ * same as the one of the former regex:
+ *
+ * ^\s?(?:(TODO|DONE|...)\s)?(?:\[\#([^]]+)\]\s)?(.*?)\s*(?::([^\s]+):)?(?:\s*[!\*])*
+ * (?:<before>.*</before>)?(?:<after>.*TITLE:(.*)</after>)?$
+ *
+ * without its backtracking, which was quadratic on long titles full of colons.
+ * Keywords are matched literally. The rare headings holding a character that the regex .
+ * does not match (\r, \u2028...) still go through the regex.
+ * An instance keeps scratch buffers and is not thread safe.
+ */
+public class OrgNodeParser {
+	private static final String PRIORITY_START = "[#";
+	private static final String BEFORE_START = "<before>";
+	private static final String BEFORE_END = "</before>";
+	private static final String AFTER_START = "<after>";
+	private static final String AFTER_END = "</after>";
+	private static final String AFTER_TITLE = "TITLE:";
+	private static final int TODO_GROUP = 1;
+	private static final int PRIORITY_GROUP = 2;
+	private static final int NAME_GROUP = 3;
+	private static final int TAGS_GROUP = 4;
+	private static final int AFTER_GROUP = 5;
+	private static final String patternStart = "^\\s?";
+	private static final String patternEnd = "(?:\\[\\#([^]]+)\\]\\s)?" + // Priority
+			"(.*?)" + // Title
+			"\\s*" + "(?::([^\\s]+):)?" + // Tags (without trailing spaces)
+			"(?:\\s*[!\\*])*" + // Habits
+			"(?:<before>.*</before>)?" + // Before
+			"(?:<after>.*TITLE:(.*)</after>)?" + // After
+			"$"; // End of line
+
+	private final ArrayList<String> todoList;
+	private final TrieNode todos;
+	private final boolean noTodos;
+	private Pattern pattern;
+
+	// Scratch arrays, see parseEnd()
+	private boolean[] canEnd = new boolean[0];
+	private boolean[] habitsOk = new boolean[0];
+	private int[] lastTagEnd = new int[0];
+
+	public OrgNodeParser(ArrayList<String> todos) {
+		this.todoList = new ArrayList<>(todos);
+		this.todos = new TrieNode();
+		for (String todo : todos)
+			this.todos.add(todo);
+		// An empty keyword list used to give an empty alternation, that matches an empty keyword
+		this.noTodos = todos.isEmpty();
+	}
+
+	private static boolean isWhitespace(char c) {
+		return OrgLineTokenizer.isWhitespace(c);
+	}
+
+	/**
+	 * Characters that the regex . does not match
+	 */
+	private static boolean isLineTerminator(char c) {
+		return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+	}
+
+	private static boolean startsAt(String line, int start, int end, String token) {
+		return start + token.length() <= end && line.startsWith(token, start);
+	}
+
+	private static String getTodoRegex(ArrayList<String> todos) {
+		if (todos.isEmpty())
+			return "";
+
+		StringBuilder result = new StringBuilder();
+		for (String todo : todos){
+			result.append(todo).append("|");
+		}
+
+		result.deleteCharAt(result.length() - 1);
+
+		return result.toString();
+	}
+
+	public OrgHeading parseLine(final String line, int numberOfStars) {
+		final int end = line.length();
+		for (int i = numberOfStars + 1; i < end; i++) {
+			if (isLineTerminator(line.charAt(i)))
+				return parseLineWithRegex(line, numberOfStars);
+		}
+
+		OrgHeading node = new OrgHeading();
+		node.level = numberOfStars;
+
+		int pos = numberOfStars + 1;
+		if (pos < end && isWhitespace(line.charAt(pos)))
+			pos++;
+
+		int todoEnd = matchTodo(line, pos, end);
+		if (todoEnd >= 0) {
+			node.todo = line.substring(pos, todoEnd);
+			pos = todoEnd + 1;
+		}
+
+		if (startsAt(line, pos, end, PRIORITY_START)) {
+			int close = line.indexOf(']', pos + PRIORITY_START.length());
+			if (close > pos + PRIORITY_START.length() && close + 1 < end
+					&& isWhitespace(line.charAt(close + 1))) {
+				node.priority = line.substring(pos + PRIORITY_START.length(), close);
+				pos = close + 2;
+			}
+		}
+
+		parseEnd(line, pos, end, node);
+		return node;
+	}
+
+	/**
+	 * @return the end of the keyword starting at pos, or -1. The keyword has to be
+	 * followed by a white space.
+	 */
+	private int matchTodo(String line, int pos, int end) {
+		if (noTodos)
+			return (pos < end && isWhitespace(line.charAt(pos))) ? pos : -1;
+
+		TrieNode trieNode = todos;
+		for (int i = pos; i < end; i++) {
+			trieNode = trieNode.get(line.charAt(i));
+			if (trieNode == null)
+				return -1;
+			if (trieNode.isKeyword && i + 1 < end && isWhitespace(line.charAt(i + 1)))
+				return i + 1;
+		}
+		return -1;
+	}
+
+	/**
+	 * Split line[start, end) into title, tags and agenda title.
+	 *
+	 * From right to left, canEnd[p] tells whether line[p, end) is a valid end of heading:
+	 * white spaces, optional :tags:, habit markers, optional <before> and <after> blocks.
+	 */
+	private void parseEnd(String line, int start, int end, OrgHeading node) {
+		final int length = end - start;
+		if (canEnd.length < length + 2) {
+			int size = Math.max(length + 2, canEnd.length * 2);
+			canEnd = new boolean[size];
+			habitsOk = new boolean[size];
+			lastTagEnd = new int[size];
+		}
+
+		// <after>.*TITLE:(.*)</after>$
+		int afterTitle = -1;
+		if (end - start >= AFTER_END.length() && line.startsWith(AFTER_END, end - AFTER_END.length()))
+			afterTitle = line.lastIndexOf(AFTER_TITLE, end - AFTER_END.length() - AFTER_TITLE.length());
+
+		// </before> closing a block that the end of the line can follow, the last one
+		int beforeEnd = -1;
+		for (int i = line.lastIndexOf(BEFORE_END, end - BEFORE_END.length()); i >= start;
+				 i = line.lastIndexOf(BEFORE_END, i - 1)) {
+			if (afterOk(line, i + BEFORE_END.length(), end, afterTitle)) {
+				beforeEnd = i;
+				break;
+			}
+		}
+
+		// Right to left: habit markers, then tags
+		int nextNonBlank = end;
+		for (int p = end; p >= start; p--) {
+			int i = p - start;
+			if (p < end && !isWhitespace(line.charAt(p)))
+				nextNonBlank = p;
+
+			boolean blocksOk = blocksOk(line, p, end, afterTitle, beforeEnd);
+			boolean habit = nextNonBlank < end && isHabit(line.charAt(nextNonBlank))
+					&& habitsOk[nextNonBlank + 1 - start];
+			habitsOk[i] = blocksOk || habit;
+
+			// Last ':' of the run of non blank characters starting at p that can close the tags
+			lastTagEnd[i] = -1;
+			if (p < end && !isWhitespace(line.charAt(p))) {
+				if (p + 1 < end && !isWhitespace(line.charAt(p + 1)))
+					lastTagEnd[i] = lastTagEnd[i + 1];
+				if (lastTagEnd[i] < 0 && line.charAt(p) == ':' && habitsOk[i + 1])
+					lastTagEnd[i] = p;
+			}
+
+			canEnd[i] = habitsOk[nextNonBlank - start] || getTagsEnd(line, nextNonBlank, start, end) >= 0;
+		}
+
+		int titleEnd = start;
+		while (!canEnd[titleEnd - start]) titleEnd++;
+		node.name = line.substring(start, titleEnd);
+
+		int pos = titleEnd;
+		while (pos < end && isWhitespace(line.charAt(pos))) pos++;
+		int tagsEnd = getTagsEnd(line, pos, start, end);
+		if (tagsEnd >= 0) {
+			node.tags = line.substring(pos + 1, tagsEnd);
+			pos = tagsEnd + 1;
+		}
+
+		// Habit markers, as many as possible
+		int blocksStart = blocksOk(line, pos, end, afterTitle, beforeEnd) ? pos : -1;
+		while (true) {
+			int next = pos;
+			while (next < end && isWhitespace(line.charAt(next))) next++;
+			if (next >= end || !isHabit(line.charAt(next)) || !habitsOk[next + 1 - start])
+				break;
+			pos = next + 1;
+			if (blocksOk(line, pos, end, afterTitle, beforeEnd))
+				blocksStart = pos;
+		}
+
+		int afterStart = blocksStart;
+		if (startsAt(line, blocksStart, end, BEFORE_START) && beforeEnd >= blocksStart + BEFORE_START.length())
+			afterStart = beforeEnd + BEFORE_END.length();
+		if (afterStart < end) {
+			String after = line.substring(afterTitle + AFTER_TITLE.length(), end - AFTER_END.length());
+			node.name = after.trim() + ">" + node.name.trim();
+		}
+	}
+
+	private OrgHeading parseLineWithRegex(final String line, int numberOfStars) {
+		if (pattern == null) {
+			final String patternString = patternStart + "(?:("
+					+ getTodoRegex(todoList) + ")\\s)?" + patternEnd;
+			pattern = Pattern.compile(patternString);
+		}
+
+		OrgHeading node = new OrgHeading();
+		node.level = numberOfStars;
+
+		Matcher matcher = pattern.matcher(line);
+		matcher.region(numberOfStars + 1, line.length());
+		if (matcher.find()) {
+			if (matcher.group(TODO_GROUP) != null)
+				node.todo = matcher.group(TODO_GROUP);
+
+			node.name = matcher.group(NAME_GROUP);
+
+			if (matcher.group(PRIORITY_GROUP) != null)
+				node.priority = matcher.group(PRIORITY_GROUP);
+
+			if (matcher.group(TAGS_GROUP) != null)
+				node.tags = matcher.group(TAGS_GROUP);
+
+			if (matcher.group(AFTER_GROUP) != null)
+				node.name = matcher.group(AFTER_GROUP).trim()
+						+ ">" + node.name.trim();
+
+		} else {
+//			Log.w("MobileOrg", "Title not matched: " + line);
+			node.name = line;
+		}
+
+		return node;
+	}
+
+	private static boolean isHabit(char c) {
+		return c == '!' || c == '*';
+	}
+
+	/**
+	 * @return true if line[p, end) is an optional <after> block, up to the end of the line
+	 */
+	private static boolean afterOk(String line, int p, int end, int afterTitle) {
+		return p == end || (startsAt(line, p, end, AFTER_START) && afterTitle >= p + AFTER_START.length());
+	}
+
+	/**
+	 * @return true if line[p, end) is an optional <before> block then an optional <after> block
+	 */
+	private static boolean blocksOk(String line, int p, int end, int afterTitle, int beforeEnd) {
+		return afterOk(line, p, end, afterTitle)
+				|| (startsAt(line, p, end, BEFORE_START) && beforeEnd >= p + BEFORE_START.length());
+	}
+
+	/**
+	 * @return the position of the ':' closing tags that start at pos, or -1
+	 */
+	private int getTagsEnd(String line, int pos, int start, int end) {
+		if (pos + 2 >= end || line.charAt(pos) != ':' || isWhitespace(line.charAt(pos + 1)))
+			return -1;
+		return lastTagEnd[pos + 2 - start];
+	}
+
+	private static class TrieNode {
+		private char[] keys = new char[0];
+		private TrieNode[] children = new TrieNode[0];
+		private boolean isKeyword;
+
+		void add(String keyword) {
+			if (keyword.isEmpty())
+				return;
+			TrieNode node = this;
+			for (int i = 0; i < keyword.length(); i++) {
+				TrieNode child = node.get(keyword.charAt(i));
+				if (child == null) {
+					child = new TrieNode();
+					node.keys = Arrays.copyOf(node.keys, node.keys.length + 1);
+					node.children = Arrays.copyOf(node.children, node.children.length + 1);
+					node.keys[node.keys.length - 1] = keyword.charAt(i);
+					node.children[node.children.length - 1] = child;
+				}
+				node = child;
+			}
+			node.isKeyword = true;
+		}
+
+		TrieNode get(char c) {
+			for (int i = 0; i < keys.length; i++) {
+				if (keys[i] == c)
+					return children[i];
+			}
+			return null;
+		}
+	}
+}
@@ -1,15 +1,5 @@
 package com.matburt.mobileorg.orgdata;
 
-import android.content.ContentValues;
-import android.content.Context;
-import android.database.Cursor;
-import android.net.Uri;
-import android.text.TextUtils;
-import android.util.Log;
-
-import com.matburt.mobileorg.orgdata.OrgContract.Timestamps;
-import com.matburt.mobileorg.orgdata.OrgDatabase.Tables;
-
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
@@ -22,8 +12,11 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class OrgNodeTimeDate {
-	private static final String timestampPattern = "<((\\d{4})-(\\d{1,2})-(\\d{1,2}))(?:[^\\d]*)"
-			+ "((\\d{1,2})\\:(\\d{2}))?(-((\\d{1,2})\\:(\\d{2})))?[^>]*>";
+	// The day name is optional and can't start like a repeater or a warning period, which
+	// are left with the rest in the last group
+	private static final String timestampPattern = "<((\\d{4})-(\\d{1,2})-(\\d{1,2}))"
+			+ "(?:\\s+[^\\d\\s>+.\\-][^\\d\\s>]*)?\\s*"
+			+ "((\\d{1,2})\\:(\\d{2}))?(-((\\d{1,2})\\:(\\d{2})))?([^>]*)>";
 	// Trick for the initialization of a static map
 	private static final Map<TYPE, Pattern> patterns;
 
@@ -43,6 +36,9 @@ public class OrgNodeTimeDate {
 	public int endTimeOfDay = -1;
 	public int endMinute = -1;
 	public int matchStart = -1, matchEnd = -1;
+	// As written in the timestamp, empty if there is none, see OrgRepeater
+	public String repeater = "";
+	public String warning = "";
 	public OrgNodeTimeDate(TYPE type) {
 		this.type = type;
 	}
@@ -67,28 +63,6 @@ public class OrgNodeTimeDate {
         setEpochTime(epochTimeInSec, false);
     }
 
-	/**
-	 * OrgNodeTimeDate ctor from the database
-	 * @param type
-	 * @param nodeId The OrgNode ID associated with this timestamp
-     */
-	public OrgNodeTimeDate(TYPE type, long nodeId){
-
-		String todoQuery = "SELECT " +
-				OrgContract.formatColumns(
-						Tables.TIMESTAMPS,
-						Timestamps.DEFAULT_COLUMNS ) +
-				" FROM " + Tables.TIMESTAMPS +
-				" WHERE " + Timestamps.NODE_ID + " = " + nodeId +
-				"   AND " + Timestamps.TYPE+ " = " + type.ordinal() +
-				" ORDER BY " + Timestamps.TIMESTAMP;
-
-		this.type = type;
-
-		Cursor cursor = OrgDatabase.getInstance().getReadableDatabase().rawQuery(todoQuery, null);
-		set(cursor);
-	}
-
 	public static String typeToFormated(TYPE type) {
 		switch (type) {
 			case Scheduled:
@@ -103,7 +77,7 @@ public class OrgNodeTimeDate {
 	}
 
 	public static String formatDate(TYPE type, String timestamp) {
-		if (TextUtils.isEmpty(timestamp))
+		if (timestamp == null || timestamp.isEmpty())
 			return "";
 		else {
 			return OrgNodeTimeDate.typeToFormated(type) + "<" + timestamp + ">";
@@ -124,26 +98,12 @@ public class OrgNodeTimeDate {
 		return Pattern.compile(pattern);
 	}
 
-	public void set(Cursor cursor) {
-
-		if (cursor != null && cursor.getCount() > 0) {
-			if(cursor.isBeforeFirst() || cursor.isAfterLast())
-				cursor.moveToFirst();
-
-			long epochTime = cursor.getLong(cursor.getColumnIndexOrThrow(Timestamps.TIMESTAMP));
-
-			boolean allDay = cursor.getLong(cursor.getColumnIndexOrThrow(Timestamps.ALL_DAY)) == 1;
-
-            setEpochTime(epochTime, allDay);
-		}
-	}
-
     /**
      * Reset the OrgNodeTimeDate with this epochTime is seconds
      * @param epochTimeInSec
      * @param allDay
      */
-    void setEpochTime(long epochTimeInSec, boolean allDay){
+    public void setEpochTime(long epochTimeInSec, boolean allDay){
         Calendar calendar = Calendar.getInstance();
         calendar.setTimeZone(TimeZone.getTimeZone("GMT0"));
         calendar.setTimeInMillis(epochTimeInSec * 1000L);
@@ -196,6 +156,9 @@ public class OrgNodeTimeDate {
 					startMinute = Integer.parseInt(propm.group(7));
 				}
 
+				repeater = OrgRepeater.findRepeater(propm.group(12));
+				warning = OrgRepeater.findWarning(propm.group(12));
+
 				endTimeOfDay = Integer.parseInt(propm.group(10));
 				endMinute = Integer.parseInt(propm.group(11));
 			} catch (NumberFormatException e) {}
@@ -260,7 +223,7 @@ public class OrgNodeTimeDate {
 		String time = getStartTime().toString();
 
 		if (startTimeOfDay == -1
-				|| startMinute == -1 || TextUtils.isEmpty(time))
+				|| startMinute == -1 || time.isEmpty())
 			return "";
 		else
 			return " " + time;
@@ -270,37 +233,12 @@ public class OrgNodeTimeDate {
 		String time = getEndTime().toString();
 
 		if (endTimeOfDay == -1
-				|| endMinute == -1 || TextUtils.isEmpty(time))
+				|| endMinute == -1 || time.isEmpty())
 			return "";
 		else
 			return "-" + time;
 	}
 
-    static public void deleteTimestamp(Context context, long nodeId, String where){
-        Uri uri = OrgContract.Timestamps.buildIdUri(nodeId);
-        context.getContentResolver().delete(uri, where, null);
-    }
-
-	public void update(Context context, long nodeId, long fileId) {
-        deleteTimestamp(context, nodeId, Timestamps.TYPE + "="+type.ordinal());
-		if (getEpochTime() < 0) return;
-		context.getContentResolver().
-				insert(
-                        OrgContract.Timestamps.buildIdUri(nodeId),
-						getContentValues(nodeId, fileId));
-		Log.v("OrgNodeTimeDate","update epoch : "+getEpochTime() + " with type : "+type);
-	}
-
-	private ContentValues getContentValues(long nodeId, long fileId) {
-		ContentValues values = new ContentValues();
-		values.put(Timestamps.ALL_DAY, isAllDay());
-		values.put(Timestamps.TIMESTAMP, getEpochTime());
-		values.put(Timestamps.TYPE, type.ordinal());
-		values.put(Timestamps.NODE_ID, nodeId);
-		values.put(Timestamps.FILE_ID, fileId);
-		return values;
-	}
-
 	public enum TYPE {
 		Scheduled,
 		Deadline,
@@ -0,0 +1,57 @@
+package com.matburt.mobileorg.orgdata;
+
+import java.util.ArrayList;
+
+/**
+ * A node produced by {@link OrgParser}, before it is given an id by the app's OrgFileWriter.
+ * Nodes are produced in file order, a parent always comes before its children.
+ * The text preceding the first heading belongs to the file node, whose index is {@link #ROOT_INDEX}.
+ */
+public class OrgParsedNode {
+	public static final int ROOT_INDEX = 0;
+
+	public final int index;
+	public final int parentIndex;
+	public final OrgHeading heading;
+	public final ArrayList<OrgNodeTimeDate> timestamps = new ArrayList<>();
+	public String payload = "";
+	private String cleanedPayload;
+
+	public OrgParsedNode(int index, int parentIndex, OrgHeading heading) {
+		this.index = index;
+		this.parentIndex = parentIndex;
+		this.heading = heading;
+	}
+
+	public boolean isRoot() {
+		return index == ROOT_INDEX;
+	}
+
+	/**
+	 * @return the payload without its timestamps, properties and file settings, as shown
+	 * to the user. Computed once: call it on the parsing thread to spare the writer.
+	 */
+	public String getCleanedPayload() {
+		if (cleanedPayload == null)
+			cleanedPayload = new OrgNodePayload(payload).getCleanedPayload();
+		return cleanedPayload;
+	}
+
+	/**
+	 * @return the earliest valid timestamp of this type, null if there is none
+	 */
+	public OrgNodeTimeDate getTimestamp(OrgNodeTimeDate.TYPE type) {
+		OrgNodeTimeDate result = null;
+		long resultTime = -1;
+		for (OrgNodeTimeDate timeDate : timestamps) {
+			if (timeDate.type != type)
+				continue;
+			long epochTime = timeDate.getEpochTime();
+			if (epochTime >= 0 && (result == null || epochTime < resultTime)) {
+				result = timeDate;
+				resultTime = epochTime;
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,278 @@
+package com.matburt.mobileorg.orgdata;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Stack;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Org file parser, without any Android dependency.
+ *
+ * A file is read line by line and turned into {@link OrgParsedNode}s, handed over to a
+ * {@link Sink} in file order. The parser itself does not touch any storage: the TODO
+ * keywords and the excluded tags are given at construction time, several parsers can
+ * run concurrently. A parser instance must only be used by one thread at a time.
+ */
+public class OrgParser {
+	private static final Pattern getTodos = Pattern
+			.compile("#\\+TODO:([^\\|]+)(\\| (.*))*");
+    private ParseStack parseStack;
+	private StringBuilder payload;
+	private OrgTodoRegistry todoRegistry;
+	private OrgLineTokenizer tokenizer;
+	private Sink sink;
+	private OrgParsedNode currentNode;
+	private int nodeCount;
+	private HashSet<String> excludedTags;
+    private HashMap<Integer, Integer> position;
+
+	/**
+	 * @param todos the TODO keywords known before parsing, #+TODO lines add to them
+	 * @param excludedTags tags that are not inherited, may be null
+	 */
+	public OrgParser(ArrayList<String> todos, HashSet<String> excludedTags) {
+		this.tokenizer = new OrgLineTokenizer();
+		this.excludedTags = excludedTags;
+		this.todoRegistry = new OrgTodoRegistry(todos);
+	}
+
+	public static HashMap<String, Boolean> parseTodos(String line) {
+		HashMap<String, Boolean> result = null;
+
+		Matcher m = getTodos.matcher(line);
+		if (m.find()) {
+			result = new HashMap<>();
+			String lastTodo = "";
+			Boolean isDone = false;
+			for (int idx = 1; idx <= m.groupCount(); idx++) {
+				if (m.group(idx) != null && m.group(idx).trim().length() > 0) {
+					if (m.group(idx).contains("|")) {
+						isDone = true;
+						continue;
+					}
+					String[] grouping = m.group(idx).trim().split("\\s+");
+					for (String group : grouping) {
+						lastTodo = group.trim();
+						result.put(group.trim(), isDone);
+					}
+				}
+			}
+			if (!isDone) {
+				result.put(lastTodo, true);
+			}
+		}
+		return result;
+	}
+
+	private static boolean isEmpty(CharSequence text) {
+		return text == null || text.length() == 0;
+	}
+
+	private void init(String title, Sink sink) {
+		this.sink = sink;
+
+		OrgHeading root = new OrgHeading();
+		root.name = title;
+		this.currentNode = new OrgParsedNode(OrgParsedNode.ROOT_INDEX, -1, root);
+		this.nodeCount = OrgParsedNode.ROOT_INDEX;
+
+		this.parseStack = new ParseStack();
+		this.parseStack.add(0, OrgParsedNode.ROOT_INDEX, "");
+
+		this.payload = new StringBuilder();
+
+        this.position = new HashMap<>();
+
+		this.todoRegistry.reset();
+	}
+
+	/**
+	 * Parse content that is not on disk, such as a decrypted file
+	 */
+	public void parse(String title, BufferedReader breader, Sink sink) {
+		parse(title, new OrgLineReader(breader), sink);
+	}
+
+	/**
+	 * Parse a file and hand its nodes over to the sink, in file order.
+	 * Only the headings, the payloads and the lines holding a keyword or a
+	 * timestamp are turned into Strings.
+	 * @param title the name of the root node
+	 * @param reader
+	 * @param sink
+	 */
+	public void parse(String title, OrgLineReader reader, Sink sink) {
+//		Log.v("parse","parsing : "+title);
+		init(title, sink);
+
+		boolean complete = false;
+		try {
+			OrgLineReader.Line currentLine;
+			while ((currentLine = reader.readLine()) != null) parseLine(currentLine);
+
+			// Write the final node
+			writeCurrentNode();
+			complete = true;
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			HashMap<String, Boolean> todos = todoRegistry.getDeclaredTodos();
+			if (!todos.isEmpty())
+				sink.addTodos(todos);
+			sink.end(complete);
+			this.sink = null;
+			this.currentNode = null;
+		}
+	}
+
+	private void parseLine(OrgLineReader.Line line) {
+		switch (tokenizer.tokenize(line)) {
+			case EMPTY:
+				return;
+
+			case HEADING: // new node
+				writeCurrentNode();
+				this.payload.setLength(0);
+				parseHeading(line.toString(), tokenizer.getLevel());
+				return;
+
+			case KEYWORD:
+				if (tokenizer.isTodoKeyword())
+					todoRegistry.add(parseTodos(line.toString()));
+				break;
+		}
+
+		// continuing previous node
+		if (tokenizer.hasScheduled() || tokenizer.hasDeadline())
+			parseTimestamps(line.toString());
+		line.appendTo(payload);
+		payload.append('\n');
+	}
+
+	private void parseHeading(String thisLine, int numstars) {
+        int currentLevel = parseStack.getCurrentLevel();
+
+        if(position.get(numstars-1) == null) position.put(numstars-1, 0);
+        if (numstars <= currentLevel) {
+            int value = position.get(numstars-1);
+            position.put(numstars-1, value+1);
+		} else {
+            position.put(numstars-1, 0);
+        }
+
+		while (numstars <= parseStack.getCurrentLevel()){
+            parseStack.pop();
+        }
+
+		OrgHeading node = todoRegistry.getNodeParser().parseLine(thisLine, numstars);
+		node.tags_inherited = parseStack.getCurrentTags();
+        node.position = position.get(numstars-1);
+
+		currentNode = new OrgParsedNode(++nodeCount, parseStack.getCurrentIndex(), node);
+		parseStack.add(numstars, currentNode.index, node.tags);
+    }
+
+	/**
+	 * The payload of the current node is complete, hand it over to the writer
+	 */
+	private void writeCurrentNode() {
+		currentNode.payload = this.payload.toString();
+		sink.write(currentNode);
+	}
+
+	/**
+	 * Parse the line for SCHEDULED and DEADLINE timestamps. Only the types
+	 * spotted by the tokenizer are matched against their regex.
+	 * @param line
+	 */
+	private void parseTimestamps(String line){
+		if (tokenizer.hasScheduled())
+			currentNode.timestamps.add(
+					new OrgNodeTimeDate(OrgNodeTimeDate.TYPE.Scheduled, line));
+		if (tokenizer.hasDeadline())
+			currentNode.timestamps.add(
+					new OrgNodeTimeDate(OrgNodeTimeDate.TYPE.Deadline, line));
+	}
+
+	/**
+	 * Receives the output of the parser
+	 */
+	public interface Sink {
+		void write(OrgParsedNode node);
+
+		/**
+		 * Called once per file, before {@link #end(boolean)}, with the keywords
+		 * declared by its #+TODO lines
+		 */
+		void addTodos(HashMap<String, Boolean> todos);
+
+		/**
+		 * @param complete false if the file could not be read until the end
+		 */
+		void end(boolean complete);
+	}
+
+	private class ParseStack {
+		private Stack<Item> stack;
+
+		public ParseStack() {
+			this.stack = new Stack<>();
+		}
+
+		public void add(int level, int index, String tags) {
+			stack.push(new Item(level, index, stripTags(tags)));
+		}
+
+		private String stripTags(String tags) {
+			if (excludedTags == null || isEmpty(tags))
+				return tags;
+
+			StringBuilder result = new StringBuilder();
+			for (String tag: tags.split(":")) {
+				if (!excludedTags.contains(tag)) {
+					result.append(tag);
+					result.append(":");
+				}
+			}
+
+			if(!isEmpty(result))
+				result.deleteCharAt(result.lastIndexOf(":"));
+
+			return result.toString();
+		}
+
+		public void pop() {
+			this.stack.pop();
+		}
+
+		public int getCurrentLevel() {
+			return stack.peek().level;
+		}
+
+		public int getCurrentIndex() {
+			return stack.peek().index;
+		}
+
+		public String getCurrentTags() {
+			return stack.peek().tag;
+		}
+
+		private class Item {
+			int level;
+			int index;
+			String tag;
+
+			public Item(int level, int index, String tags) {
+				this.level = level;
+				this.index = index;
+				this.tag = tags;
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,273 @@
+package com.matburt.mobileorg.orgdata;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The agenda entries of a scheduled or deadline timestamp with a repeater (+1w, .+1d, ++1m)
+ * or a warning period (-3d), besides the one on its own day:
+ * <ul>
+ * <li>each repetition, on its day. The three kinds of repeaters only differ when the entry
+ * is marked done, so they have the same repetitions.</li>
+ * <li>for a habit, only the repetitions after today, and one entry today if it is due</li>
+ * <li>for a deadline with a warning period, one entry today when the next deadline is
+ * close enough</li>
+ * </ul>
+ * The series is never built: each repetition is computed from the first one, and only the
+ * days asked for are expanded, at most {@link #MAX_OCCURRENCES} at a time.
+ *
+ * Times are epoch times in seconds of the GMT calendar, like
+ * {@link OrgNodeTimeDate#getEpochTime()}, and days are counted from the epoch. Today is
+ * the local day of now counted the same way, see {@link #getLocalDay}.
+ */
+public class OrgRepeater {
+	public static final long SECONDS_PER_DAY = 24 * 3600;
+	// A repeater shorter than a day would fill the days asked for otherwise
+	static final int MAX_OCCURRENCES = 100;
+	private static final Pattern repeaterPattern =
+			Pattern.compile("(?:\\.\\+|\\+\\+|\\+)(\\d+)([hdwmy])(?:/\\d+[hdwmy])?");
+	private static final Pattern warningPattern = Pattern.compile("--?(\\d+)([hdwmy])");
+	private static final TimeZone gmt = TimeZone.getTimeZone("GMT0");
+
+	public final OrgNodeTimeDate.TYPE type;
+	// The first occurrence
+	public final long time;
+	public final String repeater;
+	public final String warning;
+	public final boolean habit;
+	// 0 if there is no repeater or no warning period
+	private int repeatCount = 0, warningCount = 0;
+	private char repeatUnit, warningUnit;
+
+	public OrgRepeater(OrgNodeTimeDate.TYPE type, long time, String repeater, String warning, boolean habit) {
+		this.type = type;
+		this.time = time;
+		this.repeater = repeater == null ? "" : repeater;
+		this.warning = warning == null ? "" : warning;
+		this.habit = habit;
+
+		Matcher matcher = repeaterPattern.matcher(this.repeater);
+		if (matcher.find()) {
+			repeatCount = Integer.parseInt(matcher.group(1));
+			repeatUnit = matcher.group(2).charAt(0);
+		}
+		matcher = warningPattern.matcher(this.warning);
+		if (matcher.find()) {
+			warningCount = Integer.parseInt(matcher.group(1));
+			warningUnit = matcher.group(2).charAt(0);
+		}
+	}
+
+	/**
+	 * @return the repeater of a timestamp, as written in it, empty if there is none
+	 */
+	public static String findRepeater(String text) {
+		return find(repeaterPattern, text);
+	}
+
+	/**
+	 * @return the warning period of a timestamp, as written in it, empty if there is none
+	 */
+	public static String findWarning(String text) {
+		return find(warningPattern, text);
+	}
+
+	private static String find(Pattern pattern, String text) {
+		if (text == null)
+			return "";
+		Matcher matcher = pattern.matcher(text);
+		return matcher.find() ? matcher.group() : "";
+	}
+
+	public static long getDay(long epochTime) {
+		return epochTime / SECONDS_PER_DAY;
+	}
+
+	/**
+	 * @param millis an instant, in milliseconds since the epoch
+	 * @return the day of the instant in the time zone. The timestamps hold their local
+	 * time as if it was GMT, so the instant is shifted by the offset of the zone.
+	 */
+	public static long getLocalDay(long millis, TimeZone zone) {
+		return getDay((millis + zone.getOffset(millis)) / 1000);
+	}
+
+	/**
+	 * @return true if the timestamp has other entries than the one on its own day
+	 */
+	public boolean hasEntries() {
+		return repeatCount > 0 || (warningCount > 0 && type == OrgNodeTimeDate.TYPE.Deadline);
+	}
+
+	/**
+	 * @return the same repeater as this one, written in the same way
+	 */
+	public boolean isSame(OrgNodeTimeDate.TYPE type, long time, String repeater, String warning, boolean habit) {
+		return this.type == type && this.time == time && this.repeater.equals(repeater)
+				&& this.warning.equals(warning) && this.habit == habit;
+	}
+
+	/**
+	 * An entry, on a day that is not the day of the timestamp
+	 */
+	public static class Occurrence {
+		public final long day;
+		// The time of the repetition, or of the deadline a warning is about
+		public final long time;
+
+		Occurrence(long day, long time) {
+			this.day = day;
+			this.time = time;
+		}
+	}
+
+	/**
+	 * Add the entries from firstDay to lastDay included to result, in order
+	 */
+	public void addOccurrences(long firstDay, long lastDay, long today, ArrayList<Occurrence> result) {
+		long todayTime = firstDay <= today && today <= lastDay ? getTodayTime(today) : -1;
+		if (repeatCount > 0) {
+			long from = habit ? Math.max(firstDay, today + 1) : firstDay;
+			long index = Math.max(1, getIndexFrom(from * SECONDS_PER_DAY));
+			for (int count = 0; count < MAX_OCCURRENCES; count++, index++) {
+				long occurrence = getOccurrence(index);
+				long day = getDay(occurrence);
+				if (day > lastDay)
+					break;
+				if (todayTime >= 0 && day >= today) {
+					result.add(new Occurrence(today, todayTime));
+					todayTime = -1;
+				}
+				result.add(new Occurrence(day, occurrence));
+			}
+		}
+		if (todayTime >= 0)
+			result.add(new Occurrence(today, todayTime));
+	}
+
+	/**
+	 * @return the first day from fromDay on with an entry, -1 if there is none
+	 */
+	public long getNextDay(long fromDay, long today) {
+		long result = -1;
+		if (repeatCount > 0) {
+			long from = habit ? Math.max(fromDay, today + 1) : fromDay;
+			result = getDay(getOccurrence(Math.max(1, getIndexFrom(from * SECONDS_PER_DAY))));
+		}
+		if (fromDay <= today && (result < 0 || today < result) && getTodayTime(today) >= 0)
+			result = today;
+		return result;
+	}
+
+	/**
+	 * @return the last day up to toDay with an entry, -1 if there is none
+	 */
+	public long getPreviousDay(long toDay, long today) {
+		long result = -1;
+		if (repeatCount > 0) {
+			long index = getIndexFrom((toDay + 1) * SECONDS_PER_DAY) - 1;
+			if (index >= 1) {
+				long day = getDay(getOccurrence(index));
+				if (!habit || day > today)
+					result = day;
+			}
+		}
+		if (today <= toDay && today > result && getTodayTime(today) >= 0)
+			result = today;
+		return result;
+	}
+
+	/**
+	 * @return the time of the entry shown today besides the repetitions: the one of a habit
+	 * past due, or the next deadline of a warning period. -1 if there is none.
+	 */
+	private long getTodayTime(long today) {
+		if (habit && repeatCount > 0 && getDay(time) < today)
+			return time;
+		if (warningCount > 0 && type == OrgNodeTimeDate.TYPE.Deadline) {
+			long index = getIndexFrom((today + 1) * SECONDS_PER_DAY);
+			if (index < 0)
+				return -1;
+			long deadline = getOccurrence(index);
+			if (getDay(add(deadline, -warningCount, warningUnit)) <= today)
+				return deadline;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the index of the first occurrence at or after the time, the timestamp itself
+	 * being the occurrence 0. -1 if there is none.
+	 */
+	long getIndexFrom(long from) {
+		if (from <= time)
+			return 0;
+		if (repeatCount <= 0)
+			return -1;
+
+		switch (repeatUnit) {
+			case 'h':
+			case 'd':
+			case 'w':
+				long step = getStep();
+				return (from - time + step - 1) / step;
+			default:
+				// Repetitions are in months, the one of the same month as from comes
+				// at most one step before it
+				Calendar first = getCalendar(time);
+				Calendar last = getCalendar(from);
+				long months = (last.get(Calendar.YEAR) - first.get(Calendar.YEAR)) * 12L
+						+ last.get(Calendar.MONTH) - first.get(Calendar.MONTH);
+				long index = months / (repeatUnit == 'y' ? 12L * repeatCount : repeatCount);
+				while (getOccurrence(index) < from)
+					index++;
+				return index;
+		}
+	}
+
+	/**
+	 * @return the time of an occurrence, computed from the first one so that the
+	 * day of the month does not drift
+	 */
+	long getOccurrence(long index) {
+		if (repeatUnit == 'm' || repeatUnit == 'y')
+			return add(time, index * repeatCount, repeatUnit);
+		return time + index * getStep();
+	}
+
+	private long getStep() {
+		switch (repeatUnit) {
+			case 'h':
+				return repeatCount * 3600L;
+			case 'w':
+				return repeatCount * 7 * SECONDS_PER_DAY;
+			default:
+				return repeatCount * SECONDS_PER_DAY;
+		}
+	}
+
+	private static long add(long time, long count, char unit) {
+		switch (unit) {
+			case 'h':
+				return time + count * 3600;
+			case 'd':
+				return time + count * SECONDS_PER_DAY;
+			case 'w':
+				return time + count * 7 * SECONDS_PER_DAY;
+			default:
+				Calendar calendar = getCalendar(time);
+				calendar.add(unit == 'y' ? Calendar.YEAR : Calendar.MONTH, (int) count);
+				return calendar.getTimeInMillis() / 1000L;
+		}
+	}
+
+	private static Calendar getCalendar(long time) {
+		Calendar calendar = new GregorianCalendar(gmt);
+		calendar.setTimeInMillis(time * 1000L);
+		return calendar;
+	}
+}
@@ -0,0 +1,80 @@
+package com.matburt.mobileorg.orgdata;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+
+/**
+ * TODO keywords known while parsing a file: the keywords stored in the database, plus
+ * the ones declared by the #+TODO lines met so far in the file.
+ *
+ * Declared keywords are only kept in memory. The heading parser is rebuilt when a line
+ * declares a new keyword, and {@link OrgParser} hands all the declared keywords
+ * over to its sink once, at the end of the file.
+ */
+public class OrgTodoRegistry {
+	private final ArrayList<String> storedTodos;
+	private final OrgNodeParser storedParser;
+	private final ArrayList<String> todos = new ArrayList<>();
+	private final HashSet<String> knownTodos = new HashSet<>();
+	private final LinkedHashMap<String, Boolean> declaredTodos = new LinkedHashMap<>();
+	private OrgNodeParser nodeParser;
+
+	public OrgTodoRegistry(ArrayList<String> storedTodos) {
+		this.storedTodos = storedTodos;
+		this.storedParser = new OrgNodeParser(storedTodos);
+		reset();
+	}
+
+	/**
+	 * Forget the keywords declared by the previous file
+	 */
+	public void reset() {
+		todos.clear();
+		todos.addAll(storedTodos);
+		knownTodos.clear();
+		knownTodos.addAll(storedTodos);
+		declaredTodos.clear();
+		nodeParser = storedParser;
+	}
+
+	/**
+	 * Register the keywords of a #+TODO line
+	 * @param lineTodos the result of {@link OrgParser#parseTodos(String)}, may be null
+	 * @return true if a new keyword was added and the heading parser rebuilt
+	 */
+	public boolean add(HashMap<String, Boolean> lineTodos) {
+		if (lineTodos == null)
+			return false;
+
+		boolean changed = false;
+		for (String todo : lineTodos.keySet()) {
+			if (todo.isEmpty())
+				continue;
+			declaredTodos.put(todo, lineTodos.get(todo));
+			if (!knownTodos.add(todo))
+				continue;
+			todos.add(todo);
+			changed = true;
+		}
+
+		if (changed)
+			nodeParser = new OrgNodeParser(todos);
+		return changed;
+	}
+
+	/**
+	 * @return a heading parser matching all the keywords known so far
+	 */
+	public OrgNodeParser getNodeParser() {
+		return nodeParser;
+	}
+
+	/**
+	 * @return the keywords declared in the file, and whether they are done states
+	 */
+	public HashMap<String, Boolean> getDeclaredTodos() {
+		return declaredTodos;
+	}
+}
@@ -0,0 +1,131 @@
+package com.matburt.mobileorg.orgdata;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * The mapped reader must read the same lines as {@link BufferedReader#readLine()}.
+ */
+public class OrgLineReaderTest {
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private File file;
+
+	@After
+	public void deleteFile() {
+		if (file != null)
+			file.delete();
+	}
+
+	private ArrayList<String> readMapped(String content) throws IOException {
+		file = File.createTempFile("reader", ".org");
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(content.getBytes(UTF_8));
+		out.close();
+
+		OrgLineReader reader = new OrgLineReader(file);
+		try {
+			return readAll(reader);
+		} finally {
+			reader.close();
+		}
+	}
+
+	private static ArrayList<String> readAll(OrgLineReader reader) throws IOException {
+		ArrayList<String> result = new ArrayList<>();
+		OrgLineReader.Line line;
+		while ((line = reader.readLine()) != null)
+			result.add(line.toString());
+		assertNull(reader.readLine());
+		return result;
+	}
+
+	private static ArrayList<String> readBuffered(String content) throws IOException {
+		BufferedReader reader = new BufferedReader(new StringReader(content));
+		ArrayList<String> result = new ArrayList<>();
+		String line;
+		while ((line = reader.readLine()) != null)
+			result.add(line);
+		return result;
+	}
+
+	private void assertSameLines(String content) throws IOException {
+		ArrayList<String> expected = readBuffered(content);
+		assertEquals(expected, readMapped(content));
+		assertEquals(expected, readAll(new OrgLineReader(new BufferedReader(new StringReader(content)))));
+	}
+
+	@Test
+	public void lineTerminators() throws IOException {
+		assertSameLines("* a\nb\n");
+		assertSameLines("* a\r\nb\r\n");
+		assertSameLines("* a\rb\r");
+		assertSameLines("* a\r\n\r\n\rb\n\n");
+		assertEquals(Arrays.asList("* a", "", "b"), readMapped("* a\r\n\r\nb\r\n"));
+	}
+
+	@Test
+	public void missingFinalNewline() throws IOException {
+		assertSameLines("* a\nb");
+		assertSameLines("* a\r\nb");
+		assertSameLines("b");
+		assertEquals(Collections.singletonList("b"), readMapped("b"));
+	}
+
+	@Test
+	public void emptyFile() throws IOException {
+		assertSameLines("");
+		assertEquals(0, readMapped("").size());
+	}
+
+	@Test
+	public void multibyteLinesLongerThanTheLineBuffer() throws IOException {
+		// Lines of 2 and 3 bytes characters longer than the initial line buffer,
+		// so that the buffer grows in the middle of a file, between ascii lines
+		StringBuilder content = new StringBuilder();
+		for (int length = 250; length < 270; length++) {
+			StringBuilder line = new StringBuilder("** ");
+			for (int i = 0; i < length; i++)
+				line.append(i % 3 == 0 ? 'é' : (i % 3 == 1 ? '会' : 'a'));
+			content.append(line).append(length % 2 == 0 ? "\r\n" : "\n");
+			content.append("ascii line\n");
+		}
+		content.append("last é");
+		assertSameLines(content.toString());
+	}
+
+	@Test
+	public void supplementaryCharacters() throws IOException {
+		StringBuilder line = new StringBuilder();
+		for (int i = 0; i < 200; i++)
+			line.append("😀");
+		assertSameLines("* " + line + "\r\n" + line);
+	}
+
+	@Test
+	public void positionCountsBytes() throws IOException {
+		file = File.createTempFile("reader", ".org");
+		FileOutputStream out = new FileOutputStream(file);
+		out.write("é\r\nb".getBytes(UTF_8));
+		out.close();
+
+		OrgLineReader reader = new OrgLineReader(file);
+		reader.readLine();
+		assertEquals(4, reader.getPosition());
+		reader.readLine();
+		assertEquals(5, reader.getPosition());
+		reader.close();
+	}
+}
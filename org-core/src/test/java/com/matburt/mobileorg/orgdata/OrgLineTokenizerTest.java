@@ -0,0 +1,74 @@
+package com.matburt.mobileorg.orgdata;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class OrgLineTokenizerTest {
+	private final OrgLineTokenizer tokenizer = new OrgLineTokenizer();
+
+	private ArrayList<OrgLineTokenizer.Type> tokenize(String content) throws IOException {
+		ArrayList<OrgLineTokenizer.Type> result = new ArrayList<>();
+		OrgLineReader reader = new OrgLineReader(new BufferedReader(new StringReader(content)));
+		OrgLineReader.Line line;
+		while ((line = reader.readLine()) != null)
+			result.add(tokenizer.tokenize(line));
+		reader.close();
+		return result;
+	}
+
+	@Test
+	public void classifiesLines() {
+		assertEquals(OrgLineTokenizer.Type.EMPTY, tokenizer.tokenize(""));
+		assertEquals(OrgLineTokenizer.Type.TEXT, tokenizer.tokenize("   "));
+		assertEquals(OrgLineTokenizer.Type.HEADING, tokenizer.tokenize("** TODO [#A] Title :tag:"));
+		assertEquals(2, tokenizer.getLevel());
+		assertEquals(OrgLineTokenizer.Type.TEXT, tokenizer.tokenize("**bold** text"));
+		assertEquals(0, tokenizer.getLevel());
+		assertEquals(OrgLineTokenizer.Type.KEYWORD, tokenizer.tokenize("#+TODO: TODO | DONE"));
+		assertTrue(tokenizer.isTodoKeyword());
+		assertEquals(OrgLineTokenizer.Type.KEYWORD, tokenizer.tokenize("#+TITLE: Notes"));
+		assertFalse(tokenizer.isTodoKeyword());
+		assertEquals(OrgLineTokenizer.Type.TEXT,
+				tokenizer.tokenize("  SCHEDULED: <2016-07-01 Fri> DEADLINE: <2016-07-03 Sun>"));
+		assertTrue(tokenizer.hasScheduled());
+		assertTrue(tokenizer.hasDeadline());
+		assertEquals(OrgLineTokenizer.Type.TEXT, tokenizer.tokenize("  :PROPERTIES:"));
+		assertFalse(tokenizer.hasScheduled());
+		assertFalse(tokenizer.hasDeadline());
+		assertEquals(OrgLineTokenizer.Type.KEYWORD, tokenizer.tokenize("#+TITLE: DEADLINE: today"));
+		assertTrue(tokenizer.hasDeadline());
+	}
+
+	@Test
+	public void crlfLinesAreClassifiedLikeLfLines() throws IOException {
+		String content = "* Heading\n  :LOGBOOK:\n  :END:\nSCHEDULED: <2016-07-01 Fri>\n#+TODO: A | B\n\ntext\n";
+		ArrayList<OrgLineTokenizer.Type> lf = tokenize(content);
+		assertEquals(7, lf.size());
+		assertEquals(lf, tokenize(content.replace("\n", "\r\n")));
+		assertEquals(lf, tokenize(content.replace("\n", "\r")));
+	}
+
+	@Test
+	public void lastLineWithoutNewline() throws IOException {
+		ArrayList<OrgLineTokenizer.Type> types = tokenize("text\n* Heading");
+		assertEquals(2, types.size());
+		assertEquals(OrgLineTokenizer.Type.HEADING, types.get(1));
+		assertEquals(1, tokenizer.getLevel());
+	}
+
+	@Test
+	public void multibyteLines() {
+		assertEquals(OrgLineTokenizer.Type.HEADING, tokenizer.tokenize("*** Réunion équipe 会议"));
+		assertEquals(3, tokenizer.getLevel());
+		assertEquals(OrgLineTokenizer.Type.TEXT, tokenizer.tokenize("ÉSCHEDULED: ☃"));
+		assertTrue(tokenizer.hasScheduled());
+	}
+}
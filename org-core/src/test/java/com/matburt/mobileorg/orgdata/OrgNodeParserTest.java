@@ -0,0 +1,150 @@
+package com.matburt.mobileorg.orgdata;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * {@link OrgNodeParser} must read headings the way the former title regex did.
+ */
+public class OrgNodeParserTest {
+	private static final ArrayList<String> TODOS = new ArrayList<>(Arrays.asList("TODO", "DONE", "TO", "WAITING"));
+
+	/**
+	 * The title regex of the former parser, with its groups
+	 */
+	private static final Pattern titlePattern = Pattern.compile("^\\s?(?:(TODO|DONE|TO|WAITING)\\s)?"
+			+ "(?:\\[\\#([^]]+)\\]\\s)?"
+			+ "(.*?)"
+			+ "\\s*" + "(?::([^\\s]+):)?"
+			+ "(?:\\s*[!\\*])*"
+			+ "(?:<before>.*</before>)?"
+			+ "(?:<after>.*TITLE:(.*)</after>)?"
+			+ "$");
+
+	private final OrgNodeParser parser = new OrgNodeParser(TODOS);
+
+	private static OrgHeading parseWithRegex(String line, int numberOfStars) {
+		OrgHeading node = new OrgHeading();
+		node.level = numberOfStars;
+		Matcher matcher = titlePattern.matcher(line);
+		matcher.region(numberOfStars + 1, line.length());
+		if (matcher.find()) {
+			if (matcher.group(1) != null)
+				node.todo = matcher.group(1);
+			node.name = matcher.group(3);
+			if (matcher.group(2) != null)
+				node.priority = matcher.group(2);
+			if (matcher.group(4) != null)
+				node.tags = matcher.group(4);
+			if (matcher.group(5) != null)
+				node.name = matcher.group(5).trim() + ">" + node.name.trim();
+		} else {
+			node.name = line;
+		}
+		return node;
+	}
+
+	private static int countStars(String line) {
+		int result = 0;
+		while (result < line.length() && line.charAt(result) == '*')
+			result++;
+		return result;
+	}
+
+	private void assertSameHeading(String line) {
+		int stars = countStars(line);
+		OrgHeading expected = parseWithRegex(line, stars);
+		OrgHeading actual = parser.parseLine(line, stars);
+		assertEquals(line, expected.level, actual.level);
+		assertEquals(line, expected.todo, actual.todo);
+		assertEquals(line, expected.priority, actual.priority);
+		assertEquals(line, expected.name, actual.name);
+		assertEquals(line, expected.tags, actual.tags);
+	}
+
+	@Test
+	public void todoKeywords() {
+		assertSameHeading("* TODO Title");
+		assertSameHeading("** DONE Title");
+		assertSameHeading("* TO Title");
+		assertSameHeading("* TODOS Title");
+		assertSameHeading("* TODO");
+		assertSameHeading("* TODO ");
+		assertSameHeading("*  TODO Title");
+		assertSameHeading("* todo Title");
+		assertSameHeading("* WAITING\tTitle");
+		assertEquals("TODO", parser.parseLine("* TODO Title", 1).todo);
+		assertEquals("", parser.parseLine("* TODOS Title", 1).todo);
+	}
+
+	@Test
+	public void priorities() {
+		assertSameHeading("* [#A] Title");
+		assertSameHeading("* TODO [#B] Title");
+		assertSameHeading("* [#A]Title");
+		assertSameHeading("* [#] Title");
+		assertSameHeading("* [#AB] Title");
+		assertSameHeading("* [#A] [#B] Title");
+		assertSameHeading("* [#A");
+		assertEquals("A", parser.parseLine("* TODO [#A] Title", 1).priority);
+	}
+
+	@Test
+	public void tags() {
+		assertSameHeading("* Title :tag:");
+		assertSameHeading("* Title :a:b:c:");
+		assertSameHeading("* Title   :a:b:   ");
+		assertSameHeading("* Title :a b:");
+		assertSameHeading("* Title ::");
+		assertSameHeading("* :tag:");
+		assertSameHeading("* Title :a: :b:");
+		assertSameHeading("* Title:a:");
+		assertSameHeading("* Title :a:b: !*");
+		assertEquals("a:b", parser.parseLine("* TODO Title :a:b:", 1).tags);
+	}
+
+	@Test
+	public void agendaMarkup() {
+		assertSameHeading("* Title <before>x</before>");
+		assertSameHeading("* Title :tag: <after>KEYS TITLE: Agenda</after>");
+		assertSameHeading("* Title <before>x</before><after>TITLE:a</after>");
+		assertSameHeading("* Title <after>no title</after>");
+		assertSameHeading("* Title </before><before>");
+	}
+
+	@Test
+	public void malformedHeadings() {
+		assertSameHeading("* ");
+		assertSameHeading("**   ");
+		assertSameHeading("* :::::::::");
+		assertSameHeading("* Title : :");
+		assertSameHeading("* Title\r");
+		assertSameHeading("* TODO Title :tag:");
+		assertSameHeading("* [#A] TODO Title");
+		assertSameHeading("* Title <before>");
+		assertSameHeading("* Title </after>");
+	}
+
+	@Test
+	public void randomHeadings() {
+		String[] tokens = {"TODO", "DONE", "TO", "[#A]", "[#", "]", ":", ":a:", "a", "Title", " ", " ", "\t",
+				"!", "*", "<before>", "</before>", "<after>", "TITLE:", "</after>", "é"};
+		Random random = new Random(42);
+		for (int i = 0; i < 20000; i++) {
+			StringBuilder line = new StringBuilder("*");
+			for (int stars = random.nextInt(3); stars > 0; stars--)
+				line.append('*');
+			line.append(' ');
+			for (int count = random.nextInt(12); count > 0; count--)
+				line.append(tokens[random.nextInt(tokens.length)]);
+			assertSameHeading(line.toString());
+		}
+	}
+}
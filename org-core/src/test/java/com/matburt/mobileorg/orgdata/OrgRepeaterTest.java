@@ -0,0 +1,134 @@
+package com.matburt.mobileorg.orgdata;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Entries of repeaters and warning periods around the local midnight.
+ */
+public class OrgRepeaterTest {
+	private static final TimeZone PARIS = TimeZone.getTimeZone("Europe/Paris");
+	private static final TimeZone NEW_YORK = TimeZone.getTimeZone("America/New_York");
+
+	/**
+	 * @return the time of a timestamp, local time written as GMT
+	 */
+	private static long time(int year, int month, int day, int hour, int minute) {
+		Calendar calendar = new GregorianCalendar(TimeZone.getTimeZone("GMT0"));
+		calendar.clear();
+		calendar.set(year, month - 1, day, hour, minute);
+		return calendar.getTimeInMillis() / 1000;
+	}
+
+	private static long day(int year, int month, int day) {
+		return OrgRepeater.getDay(time(year, month, day, 0, 0));
+	}
+
+	/**
+	 * @return today, at a local time in the time zone
+	 */
+	private static long today(TimeZone zone, int year, int month, int day, int hour, int minute) {
+		Calendar calendar = new GregorianCalendar(zone);
+		calendar.clear();
+		calendar.set(year, month - 1, day, hour, minute);
+		return OrgRepeater.getLocalDay(calendar.getTimeInMillis(), zone);
+	}
+
+	private static String format(ArrayList<OrgRepeater.Occurrence> occurrences) {
+		StringBuilder result = new StringBuilder();
+		for (OrgRepeater.Occurrence occurrence : occurrences)
+			result.append(occurrence.day).append('@').append(occurrence.time).append(' ');
+		return result.toString();
+	}
+
+	private static String occurrences(OrgRepeater repeater, long firstDay, long lastDay, long today) {
+		ArrayList<OrgRepeater.Occurrence> result = new ArrayList<>();
+		repeater.addOccurrences(firstDay, lastDay, today, result);
+		return format(result);
+	}
+
+	private static String expected(long... dayAndTimes) {
+		StringBuilder result = new StringBuilder();
+		for (int i = 0; i < dayAndTimes.length; i += 2)
+			result.append(dayAndTimes[i]).append('@').append(dayAndTimes[i + 1]).append(' ');
+		return result.toString();
+	}
+
+	@Test
+	public void localDay() {
+		// 00:30 in Paris is still the previous day in UTC
+		assertEquals(day(2016, 7, 8), today(PARIS, 2016, 7, 8, 0, 30));
+		assertEquals(day(2016, 7, 7), today(PARIS, 2016, 7, 7, 23, 30));
+		// 21:00 in New York is already the next day in UTC
+		assertEquals(day(2016, 7, 7), today(NEW_YORK, 2016, 7, 7, 21, 0));
+		assertEquals(day(2016, 7, 8), today(NEW_YORK, 2016, 7, 8, 0, 0));
+		// Winter time
+		assertEquals(day(2016, 12, 25), today(PARIS, 2016, 12, 25, 0, 30));
+	}
+
+	@Test
+	public void weeklyRepeaterLateInTheDay() {
+		long first = time(2016, 7, 1, 23, 30);
+		OrgRepeater repeater = new OrgRepeater(OrgNodeTimeDate.TYPE.Scheduled, first, "+1w", "", false);
+		long today = today(PARIS, 2016, 7, 8, 0, 30);
+
+		assertEquals(expected(day(2016, 7, 8), time(2016, 7, 8, 23, 30), day(2016, 7, 15), time(2016, 7, 15, 23, 30)),
+				occurrences(repeater, day(2016, 7, 1), day(2016, 7, 15), today));
+		assertEquals(expected(day(2016, 7, 8), time(2016, 7, 8, 23, 30)),
+				occurrences(repeater, today, today, today));
+		assertEquals("", occurrences(repeater, day(2016, 7, 9), day(2016, 7, 14), today));
+		assertEquals(day(2016, 7, 15), repeater.getNextDay(day(2016, 7, 9), today));
+		assertEquals(day(2016, 7, 8), repeater.getPreviousDay(day(2016, 7, 14), today));
+	}
+
+	@Test
+	public void weeklyHabitAroundMidnight() {
+		long first = time(2016, 7, 1, 23, 30);
+		OrgRepeater repeater = new OrgRepeater(OrgNodeTimeDate.TYPE.Scheduled, first, "+1w", "", true);
+
+		// Before the local midnight, the habit is not past due yet
+		long today = today(PARIS, 2016, 7, 1, 23, 45);
+		assertEquals(expected(day(2016, 7, 8), time(2016, 7, 8, 23, 30)),
+				occurrences(repeater, day(2016, 7, 1), day(2016, 7, 8), today));
+
+		// After it, it is, although the UTC day did not change
+		today = today(PARIS, 2016, 7, 2, 0, 15);
+		assertEquals(expected(day(2016, 7, 2), first, day(2016, 7, 8), time(2016, 7, 8, 23, 30)),
+				occurrences(repeater, day(2016, 7, 1), day(2016, 7, 8), today));
+		assertEquals(today, repeater.getNextDay(day(2016, 7, 1), today));
+	}
+
+	@Test
+	public void deadlineWarningAroundMidnight() {
+		// Deadlines on the 4th, 11th, 18th, warned of 3 days before
+		long first = time(2016, 7, 4, 0, 0);
+		OrgRepeater repeater = new OrgRepeater(OrgNodeTimeDate.TYPE.Deadline, first, "+1w", "-3d", false);
+		long next = time(2016, 7, 11, 0, 0);
+
+		long today = today(PARIS, 2016, 7, 7, 23, 30);
+		assertEquals("", occurrences(repeater, today, today, today));
+		assertEquals(day(2016, 7, 11), repeater.getNextDay(today, today));
+
+		// The warning starts at the local midnight, while it is still the 7th in UTC
+		today = today(PARIS, 2016, 7, 8, 0, 30);
+		assertEquals(expected(today, next), occurrences(repeater, today, today, today));
+		assertEquals(today, repeater.getNextDay(today, today));
+		assertEquals(today, repeater.getPreviousDay(day(2016, 7, 10), today));
+		assertEquals(expected(today, next, day(2016, 7, 11), next),
+				occurrences(repeater, day(2016, 7, 5), day(2016, 7, 11), today));
+
+		// And not before the local midnight west of UTC, while it is already the 8th in UTC
+		today = today(NEW_YORK, 2016, 7, 7, 21, 0);
+		assertEquals("", occurrences(repeater, today, today, today));
+
+		// On the day of the deadline, its own entry is the repetition, the next one is too far
+		today = day(2016, 7, 11);
+		assertEquals(expected(today, next), occurrences(repeater, today, today, today));
+	}
+}